@@ -0,0 +1,457 @@
+package de.jaberu.test;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.FrameworkMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * Expands a test class with 100 test methods for 100 publications into its 10000 children.
+ */
+@State(Scope.Benchmark)
+public class ChildrenBenchmark {
+
+    private EnvironmentTestRunner runner;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder publications = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            publications.append(i > 0 ? "," : "").append("publication").append(i);
+        }
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PUBLICATION, publications.toString());
+        runner = new EnvironmentTestRunner(WideTest.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty(Environment.STAGE);
+        System.clearProperty(Environment.PUBLICATION);
+    }
+
+    @Benchmark
+    public List<FrameworkMethod> getChildren() {
+        return runner.getChildren();
+    }
+
+    /**
+     * @return the description of a new runner, what expands and describes all children
+     */
+    @Benchmark
+    public Description describe() throws Exception {
+        return new EnvironmentTestRunner(WideTest.class).getDescription();
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("bench")
+    public static class WideTest {
+
+        @Test
+        public void test0() {
+        }
+
+        @Test
+        public void test1() {
+        }
+
+        @Test
+        public void test2() {
+        }
+
+        @Test
+        public void test3() {
+        }
+
+        @Test
+        public void test4() {
+        }
+
+        @Test
+        public void test5() {
+        }
+
+        @Test
+        public void test6() {
+        }
+
+        @Test
+        public void test7() {
+        }
+
+        @Test
+        public void test8() {
+        }
+
+        @Test
+        public void test9() {
+        }
+
+        @Test
+        public void test10() {
+        }
+
+        @Test
+        public void test11() {
+        }
+
+        @Test
+        public void test12() {
+        }
+
+        @Test
+        public void test13() {
+        }
+
+        @Test
+        public void test14() {
+        }
+
+        @Test
+        public void test15() {
+        }
+
+        @Test
+        public void test16() {
+        }
+
+        @Test
+        public void test17() {
+        }
+
+        @Test
+        public void test18() {
+        }
+
+        @Test
+        public void test19() {
+        }
+
+        @Test
+        public void test20() {
+        }
+
+        @Test
+        public void test21() {
+        }
+
+        @Test
+        public void test22() {
+        }
+
+        @Test
+        public void test23() {
+        }
+
+        @Test
+        public void test24() {
+        }
+
+        @Test
+        public void test25() {
+        }
+
+        @Test
+        public void test26() {
+        }
+
+        @Test
+        public void test27() {
+        }
+
+        @Test
+        public void test28() {
+        }
+
+        @Test
+        public void test29() {
+        }
+
+        @Test
+        public void test30() {
+        }
+
+        @Test
+        public void test31() {
+        }
+
+        @Test
+        public void test32() {
+        }
+
+        @Test
+        public void test33() {
+        }
+
+        @Test
+        public void test34() {
+        }
+
+        @Test
+        public void test35() {
+        }
+
+        @Test
+        public void test36() {
+        }
+
+        @Test
+        public void test37() {
+        }
+
+        @Test
+        public void test38() {
+        }
+
+        @Test
+        public void test39() {
+        }
+
+        @Test
+        public void test40() {
+        }
+
+        @Test
+        public void test41() {
+        }
+
+        @Test
+        public void test42() {
+        }
+
+        @Test
+        public void test43() {
+        }
+
+        @Test
+        public void test44() {
+        }
+
+        @Test
+        public void test45() {
+        }
+
+        @Test
+        public void test46() {
+        }
+
+        @Test
+        public void test47() {
+        }
+
+        @Test
+        public void test48() {
+        }
+
+        @Test
+        public void test49() {
+        }
+
+        @Test
+        public void test50() {
+        }
+
+        @Test
+        public void test51() {
+        }
+
+        @Test
+        public void test52() {
+        }
+
+        @Test
+        public void test53() {
+        }
+
+        @Test
+        public void test54() {
+        }
+
+        @Test
+        public void test55() {
+        }
+
+        @Test
+        public void test56() {
+        }
+
+        @Test
+        public void test57() {
+        }
+
+        @Test
+        public void test58() {
+        }
+
+        @Test
+        public void test59() {
+        }
+
+        @Test
+        public void test60() {
+        }
+
+        @Test
+        public void test61() {
+        }
+
+        @Test
+        public void test62() {
+        }
+
+        @Test
+        public void test63() {
+        }
+
+        @Test
+        public void test64() {
+        }
+
+        @Test
+        public void test65() {
+        }
+
+        @Test
+        public void test66() {
+        }
+
+        @Test
+        public void test67() {
+        }
+
+        @Test
+        public void test68() {
+        }
+
+        @Test
+        public void test69() {
+        }
+
+        @Test
+        public void test70() {
+        }
+
+        @Test
+        public void test71() {
+        }
+
+        @Test
+        public void test72() {
+        }
+
+        @Test
+        public void test73() {
+        }
+
+        @Test
+        public void test74() {
+        }
+
+        @Test
+        public void test75() {
+        }
+
+        @Test
+        public void test76() {
+        }
+
+        @Test
+        public void test77() {
+        }
+
+        @Test
+        public void test78() {
+        }
+
+        @Test
+        public void test79() {
+        }
+
+        @Test
+        public void test80() {
+        }
+
+        @Test
+        public void test81() {
+        }
+
+        @Test
+        public void test82() {
+        }
+
+        @Test
+        public void test83() {
+        }
+
+        @Test
+        public void test84() {
+        }
+
+        @Test
+        public void test85() {
+        }
+
+        @Test
+        public void test86() {
+        }
+
+        @Test
+        public void test87() {
+        }
+
+        @Test
+        public void test88() {
+        }
+
+        @Test
+        public void test89() {
+        }
+
+        @Test
+        public void test90() {
+        }
+
+        @Test
+        public void test91() {
+        }
+
+        @Test
+        public void test92() {
+        }
+
+        @Test
+        public void test93() {
+        }
+
+        @Test
+        public void test94() {
+        }
+
+        @Test
+        public void test95() {
+        }
+
+        @Test
+        public void test96() {
+        }
+
+        @Test
+        public void test97() {
+        }
+
+        @Test
+        public void test98() {
+        }
+
+        @Test
+        public void test99() {
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package de.jaberu.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Injects a test class with 60 fields, spread over a hierarchy of three classes, from a resolved configuration.
+ * The configuration is resolved once in the setup, {@link #resolve()} measures the resolution itself.
+ */
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+
+    private InjectionPlan plan;
+    private ResolvedConfiguration configuration;
+    private final EnvironmentContext context = new EnvironmentContext("dev", null);
+
+    @Setup
+    public void setUp() throws Exception {
+        plan = InjectionPlan.forClass(Leaf.class);
+        configuration = ResolvedConfiguration.resolve(
+                PropertySources.resolve(Leaf.class, context, plan.getKeys()), PropertyCache.getGeneration());
+    }
+
+    @Benchmark
+    public Object inject() throws Throwable {
+        Leaf test = new Leaf();
+        plan.inject(test, configuration, context);
+        return test;
+    }
+
+    /**
+     * @return the configuration of the test class, with the bundles served from cache
+     */
+    @Benchmark
+    public ResolvedConfiguration resolve() throws Exception {
+        return ResolvedConfiguration.resolve(PropertySources.resolve(Leaf.class, context, plan.getKeys()),
+                PropertyCache.getGeneration());
+    }
+
+    @ResourceBundle("bench")
+    public static class Base {
+
+        @PropertyValue("bench.base.int0")
+        int int0;
+
+        @PropertyValue("bench.base.long1")
+        long long1;
+
+        @PropertyValue("bench.base.boolean2")
+        boolean boolean2;
+
+        @PropertyValue("bench.base.double3")
+        double double3;
+
+        @PropertyValue("bench.base.string4")
+        String string4;
+
+        @PropertyValue("bench.base.list5")
+        List<Integer> list5;
+
+        @PropertyValue("bench.base.duration6")
+        Duration duration6;
+
+        @PropertyValue("bench.base.unit7")
+        TimeUnit unit7;
+
+        @PropertyValue("bench.base.uri8")
+        URI uri8;
+
+        @PropertyValue("bench.base.decimal9")
+        BigDecimal decimal9;
+
+        @PropertyValue("bench.base.int10")
+        int int10;
+
+        @PropertyValue("bench.base.long11")
+        long long11;
+
+        @PropertyValue("bench.base.boolean12")
+        boolean boolean12;
+
+        @PropertyValue("bench.base.double13")
+        double double13;
+
+        @PropertyValue("bench.base.string14")
+        String string14;
+
+        @PropertyValue("bench.base.list15")
+        List<Integer> list15;
+
+        @PropertyValue("bench.base.duration16")
+        Duration duration16;
+
+        @PropertyValue("bench.base.unit17")
+        TimeUnit unit17;
+
+        @PropertyValue("bench.base.uri18")
+        URI uri18;
+
+        @PropertyValue("bench.base.decimal19")
+        BigDecimal decimal19;
+    }
+
+    public static class Middle extends Base {
+
+        @PropertyValue("bench.middle.int0")
+        int int0;
+
+        @PropertyValue("bench.middle.long1")
+        long long1;
+
+        @PropertyValue("bench.middle.boolean2")
+        boolean boolean2;
+
+        @PropertyValue("bench.middle.double3")
+        double double3;
+
+        @PropertyValue("bench.middle.string4")
+        String string4;
+
+        @PropertyValue("bench.middle.list5")
+        List<Integer> list5;
+
+        @PropertyValue("bench.middle.duration6")
+        Duration duration6;
+
+        @PropertyValue("bench.middle.unit7")
+        TimeUnit unit7;
+
+        @PropertyValue("bench.middle.uri8")
+        URI uri8;
+
+        @PropertyValue("bench.middle.decimal9")
+        BigDecimal decimal9;
+
+        @PropertyValue("bench.middle.int10")
+        int int10;
+
+        @PropertyValue("bench.middle.long11")
+        long long11;
+
+        @PropertyValue("bench.middle.boolean12")
+        boolean boolean12;
+
+        @PropertyValue("bench.middle.double13")
+        double double13;
+
+        @PropertyValue("bench.middle.string14")
+        String string14;
+
+        @PropertyValue("bench.middle.list15")
+        List<Integer> list15;
+
+        @PropertyValue("bench.middle.duration16")
+        Duration duration16;
+
+        @PropertyValue("bench.middle.unit17")
+        TimeUnit unit17;
+
+        @PropertyValue("bench.middle.uri18")
+        URI uri18;
+
+        @PropertyValue("bench.middle.decimal19")
+        BigDecimal decimal19;
+    }
+
+    public static class Leaf extends Middle {
+
+        @PropertyValue("bench.leaf.int0")
+        int int0;
+
+        @PropertyValue("bench.leaf.long1")
+        long long1;
+
+        @PropertyValue("bench.leaf.boolean2")
+        boolean boolean2;
+
+        @PropertyValue("bench.leaf.double3")
+        double double3;
+
+        @PropertyValue("bench.leaf.string4")
+        String string4;
+
+        @PropertyValue("bench.leaf.list5")
+        List<Integer> list5;
+
+        @PropertyValue("bench.leaf.duration6")
+        Duration duration6;
+
+        @PropertyValue("bench.leaf.unit7")
+        TimeUnit unit7;
+
+        @PropertyValue("bench.leaf.uri8")
+        URI uri8;
+
+        @PropertyValue("bench.leaf.decimal9")
+        BigDecimal decimal9;
+
+        @PropertyValue("bench.leaf.int10")
+        int int10;
+
+        @PropertyValue("bench.leaf.long11")
+        long long11;
+
+        @PropertyValue("bench.leaf.boolean12")
+        boolean boolean12;
+
+        @PropertyValue("bench.leaf.double13")
+        double double13;
+
+        @PropertyValue("bench.leaf.string14")
+        String string14;
+
+        @PropertyValue("bench.leaf.list15")
+        List<Integer> list15;
+
+        @PropertyValue("bench.leaf.duration16")
+        Duration duration16;
+
+        @PropertyValue("bench.leaf.unit17")
+        TimeUnit unit17;
+
+        @PropertyValue("bench.leaf.uri18")
+        URI uri18;
+
+        @PropertyValue("bench.leaf.decimal19")
+        BigDecimal decimal19;
+    }
+}
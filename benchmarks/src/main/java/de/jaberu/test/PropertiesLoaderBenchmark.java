@@ -0,0 +1,75 @@
+package de.jaberu.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads the bundle of the injection benchmark (300 keys) by the {@link PropertiesLoader} and by
+ * {@link Properties#load(InputStream)}. The <code>parse</code> benchmarks compare the parsers on the same
+ * bytes, the <code>load</code> benchmarks include reading the resource from the benchmark jar.
+ */
+@State(Scope.Benchmark)
+public class PropertiesLoaderBenchmark {
+
+    private URL url;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws Exception {
+        url = PropertiesLoaderBenchmark.class.getResource("/bench.properties");
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            data = out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> parseLoader() {
+        Map<String, String> values = new HashMap<String, String>();
+        PropertiesLoader.parse(data, values);
+        return values;
+    }
+
+    @Benchmark
+    public Properties parseProperties() throws Exception {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(data));
+        return properties;
+    }
+
+    @Benchmark
+    public Map<String, String> loadLoader() throws Exception {
+        Map<String, String> values = new HashMap<String, String>();
+        PropertiesLoader.load(url, values);
+        return values;
+    }
+
+    @Benchmark
+    public Properties loadProperties() throws Exception {
+        Properties properties = new Properties();
+        InputStream in = url.openStream();
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,57 @@
+package de.jaberu.test;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Gets a bundle of 300 keys with stage layer from the {@link PropertyCache}, served from cache or loaded.
+ * <p>
+ * To miss every time, the cache is limited to {@value #CACHE_SIZE} bundles and the publications are
+ * cycled through four times as many, so the least recently used bundle is always evicted before it is
+ * requested again. The publication layers do not exist, like for most publications of real projects.
+ */
+@State(Scope.Benchmark)
+public class PropertyCacheBenchmark {
+
+    private static final int CACHE_SIZE = 16;
+
+    private final String[] publications = new String[CACHE_SIZE * 4];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(Environment.PROPERTY_CACHE_SIZE, String.valueOf(CACHE_SIZE));
+        for (int i = 0; i < publications.length; i++) {
+            publications[i] = "publication" + i;
+        }
+        PropertyCache.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty(Environment.PROPERTY_CACHE_SIZE);
+    }
+
+    @Benchmark
+    public Map<String, String> hit() throws Exception {
+        return PropertyCache.getBundle(PropertyCacheBenchmark.class, "bench", "dev", null);
+    }
+
+    @Benchmark
+    public Properties hitProperties() throws Exception {
+        return PropertyCache.getProperties(PropertyCacheBenchmark.class, "bench", "dev", null);
+    }
+
+    @Benchmark
+    public Map<String, String> miss() throws Exception {
+        String publication = publications[next];
+        next = (next + 1) % publications.length;
+        return PropertyCache.getBundle(PropertyCacheBenchmark.class, "bench", "dev", publication);
+    }
+}
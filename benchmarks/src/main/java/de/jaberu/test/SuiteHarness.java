@@ -0,0 +1,389 @@
+package de.jaberu.test;
+
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the end-to-end overhead of the runner on a generated suite. The suite consists of test classes
+ * with empty test methods, each extending a deep hierarchy of base classes with their own bundles and
+ * property fields, run for a list of publications. Since the test methods do nothing, all time of the
+ * run is overhead of the runner.
+ * <p>
+ * The suite is generated and compiled once, then run several times, each time by a new class loader, so the
+ * first run shows the cold costs. Reported are the time per child (test method and publication), the time until
+ * the first test method started and the peak heap usage. With <code>--out=&lt;file&gt;</code> the results are
+ * written as properties, which a later run compares with <code>--baseline=&lt;file&gt;</code>, e.g. to compare
+ * two commits on the same machine.
+ * <pre>
+ * java -cp target/benchmarks.jar de.jaberu.test.SuiteHarness --classes=1000 --depth=5 --out=before.properties
+ * </pre>
+ */
+public final class SuiteHarness {
+
+    private static final String PACKAGE = "suite";
+
+    private final Map<String, Integer> parameters = new LinkedHashMap<String, Integer>();
+
+    private SuiteHarness() {
+        parameters.put("classes", 1000);
+        parameters.put("depth", 5);
+        parameters.put("fields", 10);
+        parameters.put("methods", 5);
+        parameters.put("publications", 10);
+        parameters.put("keys", 200);
+        parameters.put("runs", 3);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SuiteHarness harness = new SuiteHarness();
+        String out = null;
+        String baseline = null;
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator > 2 && arg.startsWith("--") ? arg.substring(2, separator) : null;
+            if ("out".equals(name)) {
+                out = arg.substring(separator + 1);
+            } else if ("baseline".equals(name)) {
+                baseline = arg.substring(separator + 1);
+            } else if (name != null && harness.parameters.containsKey(name)) {
+                harness.parameters.put(name, Integer.valueOf(arg.substring(separator + 1)));
+            } else {
+                System.err.println("usage: SuiteHarness [--classes=n] [--depth=n] [--fields=n] [--methods=n] "
+                        + "[--publications=n] [--keys=n] [--runs=n] [--out=file] [--baseline=file]");
+                System.exit(2);
+            }
+        }
+        Properties results = harness.run();
+        for (String key : new TreeSet<String>(results.stringPropertyNames())) {
+            System.out.println(key + "=" + results.getProperty(key));
+        }
+        if (baseline != null) {
+            compare(load(baseline), results);
+        }
+        if (out != null) {
+            store(results, out);
+        }
+    }
+
+    private Properties run() throws Exception {
+        File directory = Files.createTempDirectory("suite").toFile();
+        try {
+            return run(directory);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private Properties run(File directory) throws Exception {
+        File classes = new File(directory, "classes");
+        System.out.println("generating " + parameters + " in " + directory);
+        List<File> sources = generate(new File(directory, "src"), classes);
+        compile(sources, classes);
+
+        Properties results = new Properties();
+        for (Map.Entry<String, Integer> parameter : parameters.entrySet()) {
+            results.setProperty("parameter." + parameter.getKey(), String.valueOf(parameter.getValue()));
+        }
+        results.setProperty("java.version", System.getProperty("java.version"));
+
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PUBLICATION, getPublications());
+        int runs = parameters.get("runs");
+        List<Double> perChild = new ArrayList<Double>();
+        List<Double> firstTest = new ArrayList<Double>();
+        List<Double> peakHeap = new ArrayList<Double>();
+        for (int run = 0; run < runs; run++) {
+            Properties measured = runSuite(classes);
+            System.out.println("run " + run + ": " + measured);
+            for (String key : measured.stringPropertyNames()) {
+                results.setProperty("run" + run + "." + key, measured.getProperty(key));
+            }
+            perChild.add(Double.valueOf(measured.getProperty("perChildMicros")));
+            firstTest.add(Double.valueOf(measured.getProperty("timeToFirstTestMillis")));
+            peakHeap.add(Double.valueOf(measured.getProperty("peakHeapMegabytes")));
+        }
+        // the first run is cold, the median of the others shows the warm overhead
+        results.setProperty("cold.perChildMicros", format(perChild.get(0)));
+        results.setProperty("cold.timeToFirstTestMillis", format(firstTest.get(0)));
+        results.setProperty("cold.peakHeapMegabytes", format(peakHeap.get(0)));
+        if (runs > 1) {
+            results.setProperty("warm.perChildMicros", format(median(perChild.subList(1, runs))));
+            results.setProperty("warm.timeToFirstTestMillis", format(median(firstTest.subList(1, runs))));
+            results.setProperty("warm.peakHeapMegabytes", format(median(peakHeap.subList(1, runs))));
+        }
+        return results;
+    }
+
+    /**
+     * Runs all test classes of the suite in a new class loader.
+     */
+    private Properties runSuite(File classes) throws Exception {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long gcCount = getGcCount();
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, SuiteHarness.class.getClassLoader());
+        try {
+            final long start = System.nanoTime();
+            final AtomicLong firstTest = new AtomicLong();
+            Class<?>[] testClasses = new Class<?>[parameters.get("classes")];
+            for (int i = 0; i < testClasses.length; i++) {
+                testClasses[i] = loader.loadClass(PACKAGE + ".Test" + i);
+            }
+            JUnitCore core = new JUnitCore();
+            core.addListener(new RunListener() {
+                @Override
+                public void testStarted(Description description) {
+                    firstTest.compareAndSet(0, System.nanoTime());
+                }
+            });
+            Result result = core.run(testClasses);
+            long duration = System.nanoTime() - start;
+            if (!result.wasSuccessful()) {
+                throw new IllegalStateException("suite failed: " + result.getFailures().subList(0,
+                        Math.min(5, result.getFailureCount())));
+            }
+
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heapPools) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            Properties measured = new Properties();
+            measured.setProperty("children", String.valueOf(result.getRunCount()));
+            measured.setProperty("totalMillis", format(duration / 1e6));
+            measured.setProperty("perChildMicros", format(duration / 1e3 / result.getRunCount()));
+            measured.setProperty("timeToFirstTestMillis", format((firstTest.get() - start) / 1e6));
+            measured.setProperty("peakHeapMegabytes", format(peak / 1024.0 / 1024.0));
+            measured.setProperty("gcCount", String.valueOf(getGcCount() - gcCount));
+            return measured;
+        } finally {
+            loader.close();
+            PropertyCache.clear();
+        }
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private String getPublications() {
+        StringBuilder publications = new StringBuilder();
+        for (int i = 0; i < parameters.get("publications"); i++) {
+            publications.append(i > 0 ? "," : "").append("publication").append(i);
+        }
+        return publications.toString();
+    }
+
+    /**
+     * Generates the base classes <code>Base0</code> (the root) to <code>Base{depth-2}</code> and the test classes
+     * extending the last one. Each class has its own bundle with a stage layer, every other publication has a
+     * layer for the test classes too.
+     *
+     * @return the source files
+     */
+    private List<File> generate(File sourceDirectory, File resourceDirectory) throws IOException {
+        File packageDirectory = new File(sourceDirectory, PACKAGE);
+        if (!packageDirectory.mkdirs() || !resourceDirectory.mkdirs()) {
+            throw new IOException("cannot create " + packageDirectory + " and " + resourceDirectory);
+        }
+        List<File> sources = new ArrayList<File>();
+        int depth = parameters.get("depth");
+        String parent = null;
+        for (int level = 0; level < depth - 1; level++) {
+            String name = "Base" + level;
+            sources.add(writeClass(packageDirectory, name, parent, "abstract ", 0));
+            writeBundles(resourceDirectory, name.toLowerCase(), false);
+            parent = name;
+        }
+        for (int i = 0; i < parameters.get("classes"); i++) {
+            String name = "Test" + i;
+            sources.add(writeClass(packageDirectory, name, parent, "", parameters.get("methods")));
+            writeBundles(resourceDirectory, name.toLowerCase(), true);
+        }
+        return sources;
+    }
+
+    private File writeClass(File packageDirectory, String name, String parent, String modifier, int methods) throws IOException {
+        String bundle = name.toLowerCase();
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n");
+        source.append("@org.junit.runner.RunWith(de.jaberu.test.EnvironmentTestRunner.class)\n");
+        source.append("@de.jaberu.test.ResourceBundle(\"").append(bundle).append("\")\n");
+        source.append("public ").append(modifier).append("class ").append(name);
+        if (parent != null) {
+            source.append(" extends ").append(parent);
+        }
+        source.append(" {\n");
+        for (int i = 0; i < parameters.get("fields"); i++) {
+            source.append("    @de.jaberu.test.PropertyValue(\"").append(bundle).append(".key").append(i).append("\")\n");
+            source.append("    protected ").append(i % 2 == 0 ? "String" : "int").append(" ").append(bundle)
+                    .append("Field").append(i).append(";\n");
+        }
+        for (int i = 0; i < methods; i++) {
+            source.append("    @org.junit.Test\n    public void test").append(i).append("() {\n    }\n");
+        }
+        source.append("}\n");
+        File file = new File(packageDirectory, name + ".java");
+        write(file, source.toString());
+        return file;
+    }
+
+    private void writeBundles(File resourceDirectory, String bundle, boolean publicationLayers) throws IOException {
+        StringBuilder base = new StringBuilder();
+        for (int i = 0; i < parameters.get("keys"); i++) {
+            base.append(bundle).append(".key").append(i).append('=').append(i).append('\n');
+        }
+        write(new File(resourceDirectory, bundle + ".properties"), base.toString());
+        File stage = new File(resourceDirectory, "dev");
+        write(new File(stage, bundle + ".properties"), bundle + ".key0=dev\n");
+        if (publicationLayers) {
+            for (int i = 0; i < parameters.get("publications"); i += 2) {
+                write(new File(stage, "publication" + i + "/" + bundle + ".properties"), bundle + ".key1=" + i + "\n");
+            }
+        }
+    }
+
+    private static void compile(List<File> sources, File output) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("the harness needs a JDK to compile the suite");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", output.getPath(),
+                            "-proc:none"),
+                    null, fileManager.getJavaFileObjectsFromFiles(sources));
+            if (!task.call()) {
+                throw new IllegalStateException("compiling the suite failed: " + diagnostics.getDiagnostics());
+            }
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * Prints the change of all numeric results also found in the baseline.
+     */
+    private static void compare(Properties baseline, Properties results) {
+        System.out.println();
+        System.out.printf("%-36s %14s %14s %9s%n", "result", "baseline", "current", "change");
+        for (String key : new TreeSet<String>(results.stringPropertyNames())) {
+            String before = baseline.getProperty(key);
+            if (before == null || key.startsWith("parameter.")) {
+                continue;
+            }
+            if (!before.equals(results.getProperty(key)) && key.startsWith("java.")) {
+                System.out.println("warning: " + key + " differs, " + before + " and " + results.getProperty(key));
+                continue;
+            }
+            try {
+                double old = Double.parseDouble(before);
+                double current = Double.parseDouble(results.getProperty(key));
+                System.out.printf("%-36s %14s %14s %+8.1f%%%n", key, before, results.getProperty(key),
+                        old != 0 ? (current - old) * 100 / old : 0.0);
+            } catch (NumberFormatException nfe) {
+                // not a measurement
+            }
+        }
+        for (String key : new TreeSet<String>(results.stringPropertyNames())) {
+            if (key.startsWith("parameter.") && !results.getProperty(key).equals(baseline.getProperty(key))) {
+                System.out.println("warning: " + key + " differs from baseline, results are not comparable");
+            }
+        }
+    }
+
+    private static double median(List<Double> values) {
+        List<Double> sorted = new ArrayList<Double>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static Properties load(String file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static void store(Properties results, String file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            results.store(writer, "runner overhead of a generated suite");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+
+    /**
+     * Deletes the generated suite, what can be thousands of files.
+     */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete()) {
+            System.err.println("cannot delete " + file);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.MultipleFailureException;
+import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.hierarchical.Node;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A container of the {@link EnvironmentTestEngine}: the test class, a stage of the test class or a publication
+ * of a stage. The container bound to a stage and publication resolves the configuration for its test methods
+ * once, the same way as the {@link EnvironmentTestRunner} does. Without publications the stage is bound,
+ * without stage and publication the test class.
+ */
+final class EnvironmentContainerDescriptor extends AbstractTestDescriptor implements Node<EnvironmentEngineContext> {
+
+    static final String CLASS_SEGMENT = "class";
+    static final String STAGE_SEGMENT = "stage";
+    static final String PUBLICATION_SEGMENT = "publication";
+
+    private final TestClass testClass;
+
+    /**
+     * stage and publication of the test methods, null if the container only groups other containers
+     */
+    private final EnvironmentContext context;
+
+    private final boolean concurrent;
+
+    private final boolean classLevel;
+
+    /**
+     * test methods of the context that did not finish yet, while using the fixtures of the context
+     */
+    private final AtomicInteger pendingFixtures = new AtomicInteger();
+
+    private EnvironmentContainerDescriptor(UniqueId uniqueId, String displayName, TestClass testClass,
+                                           EnvironmentContext context, boolean concurrent, boolean classLevel) {
+        super(uniqueId, displayName, ClassSource.from(testClass.getJavaClass()));
+        this.testClass = testClass;
+        this.context = context;
+        this.concurrent = concurrent;
+        this.classLevel = classLevel;
+    }
+
+    /**
+     * Creates the container of a test class with the containers of all its stages and publications given by
+     * system properties. Test methods ignored or not selected for a stage and publication are not created.
+     *
+     * @param parentId the id of the engine
+     * @param javaClass the test class
+     * @param methods  the methods to create, null for all
+     * @param filter   the filter of the test methods, can be null
+     * @return the container, without children if no test method is left
+     */
+    static EnvironmentContainerDescriptor forClass(UniqueId parentId, Class<?> javaClass, Collection<Method> methods,
+                                                   MatrixFilter filter) {
+        TestClass testClass = new TestClass(javaClass);
+        List<EnvironmentContext> contexts = EnvironmentMatrix.getContexts(javaClass);
+        if (contexts == null) {
+            contexts = new ArrayList<EnvironmentContext>();
+            contexts.add(EnvironmentContext.fromSystemProperties());
+        }
+        Map<String, List<EnvironmentContext>> stages = new LinkedHashMap<String, List<EnvironmentContext>>();
+        for (EnvironmentContext context : contexts) {
+            List<EnvironmentContext> publications = stages.get(context.getStage());
+            if (publications == null) {
+                publications = new ArrayList<EnvironmentContext>();
+                stages.put(context.getStage(), publications);
+            }
+            publications.add(context);
+        }
+        boolean concurrent = isConcurrent(javaClass);
+        UniqueId classId = parentId.append(CLASS_SEGMENT, javaClass.getName());
+        EnvironmentContainerDescriptor root;
+        if (stages.size() == 1 && stages.containsKey(null) && contexts.size() == 1 && contexts.get(0).getPublication() == null) {
+            // neither stage nor publication, the test class is bound to the empty context
+            root = new EnvironmentContainerDescriptor(classId, javaClass.getSimpleName(), testClass, contexts.get(0), concurrent, true);
+            root.addMethods(methods, filter);
+            return root;
+        }
+        root = new EnvironmentContainerDescriptor(classId, javaClass.getSimpleName(), testClass, null, true, true);
+        for (Map.Entry<String, List<EnvironmentContext>> stage : stages.entrySet()) {
+            TestDescriptor stageParent = root;
+            List<EnvironmentContext> publications = stage.getValue();
+            if (stage.getKey() != null) {
+                EnvironmentContext stageContext = publications.size() == 1 && publications.get(0).getPublication() == null
+                        ? publications.get(0) : null;
+                EnvironmentContainerDescriptor stageContainer = new EnvironmentContainerDescriptor(
+                        classId.append(STAGE_SEGMENT, stage.getKey()), "stage " + stage.getKey(), testClass,
+                        stageContext, concurrent, false);
+                if (stageContext != null) {
+                    stageContainer.addMethods(methods, filter);
+                    addIfNotEmpty(root, stageContainer);
+                    continue;
+                }
+                stageParent = stageContainer;
+            }
+            for (EnvironmentContext publication : publications) {
+                String name = publication.getPublication() != null ? publication.getPublication() : "";
+                EnvironmentContainerDescriptor publicationContainer = new EnvironmentContainerDescriptor(
+                        stageParent.getUniqueId().append(PUBLICATION_SEGMENT, name), "publication " + name, testClass,
+                        publication, concurrent, false);
+                publicationContainer.addMethods(methods, filter);
+                addIfNotEmpty(stageParent, publicationContainer);
+            }
+            if (stageParent != root) {
+                addIfNotEmpty(root, stageParent);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Removes the test methods of the other shards. The split is the one of the {@link EnvironmentTestRunner}, so
+     * the engine and the runner run the same test methods in a shard.
+     *
+     * @param shard   the shard to run
+     * @param history the durations of earlier runs, only read
+     */
+    void retainShard(Shard shard, TimingHistory history) {
+        List<EnvironmentMethodDescriptor> methods = new ArrayList<EnvironmentMethodDescriptor>();
+        collectMethods(this, methods);
+        // the runner orders by test method first, then by stage and publication
+        final List<FrameworkMethod> order = testClass.getAnnotatedMethods(Test.class);
+        Collections.sort(methods, new Comparator<EnvironmentMethodDescriptor>() {
+            public int compare(EnvironmentMethodDescriptor a, EnvironmentMethodDescriptor b) {
+                return order.indexOf(a.getMethod()) - order.indexOf(b.getMethod());
+            }
+        });
+        List<FrameworkMethod> children = new ArrayList<FrameworkMethod>();
+        for (EnvironmentMethodDescriptor method : methods) {
+            children.add(method.getEnvironmentMethod());
+        }
+        Set<FrameworkMethod> selected = new HashSet<FrameworkMethod>(shard.select(testClass.getJavaClass(), children, history));
+        for (EnvironmentMethodDescriptor method : methods) {
+            if (selected.contains(method.getEnvironmentMethod())) {
+                continue;
+            }
+            TestDescriptor parent = method.getParent().orElse(null);
+            method.removeFromHierarchy();
+            // containers without test methods are left out, like when discovering
+            while (parent != null && parent != this && parent.getChildren().isEmpty()) {
+                TestDescriptor next = parent.getParent().orElse(null);
+                parent.removeFromHierarchy();
+                parent = next;
+            }
+        }
+    }
+
+    private static void collectMethods(TestDescriptor descriptor, List<EnvironmentMethodDescriptor> methods) {
+        for (TestDescriptor child : descriptor.getChildren()) {
+            if (child instanceof EnvironmentMethodDescriptor) {
+                methods.add((EnvironmentMethodDescriptor) child);
+            } else {
+                collectMethods(child, methods);
+            }
+        }
+    }
+
+    private static void addIfNotEmpty(TestDescriptor parent, TestDescriptor child) {
+        if (!child.getChildren().isEmpty()) {
+            parent.addChild(child);
+        }
+    }
+
+    private void addMethods(Collection<Method> methods, MatrixFilter filter) {
+        Class<?> javaClass = testClass.getJavaClass();
+        for (FrameworkMethod method : testClass.getAnnotatedMethods(Test.class)) {
+            if (methods != null && !methods.contains(method.getMethod())) {
+                continue;
+            }
+            if (ReflectionUtils.getIgnored(method.getMethod()).matches(context)
+                    || ReflectionUtils.getIgnored(javaClass).matches(context)) {
+                continue;
+            }
+            if (filter != null && !filter.matches(javaClass, method.getName(), context)) {
+                continue;
+            }
+            addChild(new EnvironmentMethodDescriptor(getUniqueId().append(EnvironmentMethodDescriptor.SEGMENT, method.getName()),
+                    testClass, method, context, concurrent));
+        }
+    }
+
+    /**
+     * Like the runner, the test methods of a class run concurrently only if it is annotated by {@link Parallel}
+     * or the {@value Environment#THREADS} system property is set.
+     */
+    private static boolean isConcurrent(Class<?> javaClass) {
+        return javaClass.isAnnotationPresent(Parallel.class) || System.getProperty(Environment.THREADS) != null;
+    }
+
+    public Type getType() {
+        return Type.CONTAINER;
+    }
+
+    /**
+     * The test classes always run concurrently if the execution is parallel, the stages and publications only
+     * if their test methods do.
+     */
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return classLevel || concurrent ? ExecutionMode.CONCURRENT : ExecutionMode.SAME_THREAD;
+    }
+
+    /**
+     * Runs the container of the test class inside of the {@link ClassRule}s, so they enclose the before and after
+     * class methods like by the JUnit 4 runner.
+     */
+    @Override
+    public void around(final EnvironmentEngineContext engineContext, final Invocation<EnvironmentEngineContext> invocation) throws Exception {
+        List<TestRule> classRules = classLevel ? getClassRules() : Collections.<TestRule>emptyList();
+        if (classRules.isEmpty()) {
+            invocation.invoke(engineContext);
+            return;
+        }
+        Statement statement = new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                invocation.invoke(engineContext);
+            }
+        };
+        Description description = Description.createSuiteDescription(testClass.getJavaClass());
+        for (TestRule rule : classRules) {
+            statement = rule.apply(statement, description);
+        }
+        try {
+            statement.evaluate();
+        } catch (Exception e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private List<TestRule> getClassRules() {
+        List<TestRule> rules = new ArrayList<TestRule>(testClass.getAnnotatedFieldValues(null, ClassRule.class, TestRule.class));
+        rules.addAll(testClass.getAnnotatedMethodValues(null, ClassRule.class, TestRule.class));
+        return rules;
+    }
+
+    @Override
+    public EnvironmentEngineContext before(EnvironmentEngineContext engineContext) throws Exception {
+        if (classLevel) {
+            invokeStatic(BeforeClass.class, true);
+        }
+        if (context == null) {
+            return engineContext;
+        }
+        if (InjectionPlan.forClass(testClass.getJavaClass()).hasFixtures()) {
+            int children = getChildren().size();
+            pendingFixtures.set(children);
+            Fixtures.announce(context, children);
+        }
+        long start = System.nanoTime();
+        ResolvedConfiguration configuration = ResolvedConfiguration.load(testClass.getJavaClass(), context);
+        if (PhaseRecorder.isEnabled() && !getChildren().isEmpty()) {
+            // recorded for the first test method, like by the runner for the method loading the configuration
+            EnvironmentMethodDescriptor first = (EnvironmentMethodDescriptor) getChildren().iterator().next();
+            PhaseRecorder.record(Phase.LOAD_PROPERTIES, testClass.getJavaClass(), first.getEnvironmentMethod(), start);
+        }
+        return new EnvironmentEngineContext(configuration);
+    }
+
+    @Override
+    public void after(EnvironmentEngineContext engineContext) throws Exception {
+        if (context != null) {
+            // test methods skipped or not run since the container failed
+            int remaining = pendingFixtures.getAndSet(0);
+            if (remaining > 0) {
+                Fixtures.release(context, remaining);
+            }
+        }
+        if (classLevel) {
+            invokeStatic(AfterClass.class, false);
+        }
+    }
+
+    /**
+     * Releases the fixtures of the context for a finished test method.
+     */
+    void releaseFixtures() {
+        if (pendingFixtures.getAndDecrement() > 0) {
+            Fixtures.release(context, 1);
+        }
+    }
+
+    private void invokeStatic(Class<? extends Annotation> annotation, boolean failFast) throws Exception {
+        try {
+            invokeAll(testClass.getAnnotatedMethods(annotation), failFast);
+        } catch (Exception e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * @param failFast true to stop on the first failure, otherwise all methods are invoked
+     */
+    private static void invokeAll(List<FrameworkMethod> methods, boolean failFast) throws Throwable {
+        List<Throwable> errors = new ArrayList<Throwable>();
+        for (FrameworkMethod method : methods) {
+            try {
+                method.invokeExplosively(null);
+            } catch (Throwable t) {
+                errors.add(t);
+                if (failFast) {
+                    break;
+                }
+            }
+        }
+        MultipleFailureException.assertEmpty(errors);
+    }
+}
@@ -0,0 +1,23 @@
+package de.jaberu.test;
+
+import org.junit.platform.engine.support.hierarchical.EngineExecutionContext;
+
+/**
+ * State passed down the descriptors of the {@link EnvironmentTestEngine} while executing, what is the
+ * configuration resolved for the stage and publication of the container.
+ */
+final class EnvironmentEngineContext implements EngineExecutionContext {
+
+    private final ResolvedConfiguration configuration;
+
+    EnvironmentEngineContext(ResolvedConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return the configuration of the stage and publication, null above the containers of the variants
+     */
+    ResolvedConfiguration getConfiguration() {
+        return configuration;
+    }
+}
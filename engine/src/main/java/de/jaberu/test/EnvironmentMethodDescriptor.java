@@ -0,0 +1,160 @@
+package de.jaberu.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.internal.runners.statements.ExpectException;
+import org.junit.internal.runners.statements.FailOnTimeout;
+import org.junit.internal.runners.statements.InvokeMethod;
+import org.junit.internal.runners.statements.RunAfters;
+import org.junit.internal.runners.statements.RunBefores;
+import org.junit.rules.MethodRule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+import org.junit.runners.model.TestClass;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.engine.support.hierarchical.Node;
+import org.opentest4j.TestAbortedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A test method of the {@link EnvironmentTestEngine} for one stage and publication. The method gets a new test
+ * instance, injected like by the {@link EnvironmentTestRunner}, and runs with the before and after methods, the
+ * rules, the expected exception and the timeout of JUnit 4. The phases are recorded by the {@link PhaseRecorder}
+ * like by the runner.
+ */
+final class EnvironmentMethodDescriptor extends AbstractTestDescriptor implements Node<EnvironmentEngineContext> {
+
+    static final String SEGMENT = "method";
+
+    private final TestClass testClass;
+    private final FrameworkMethod method;
+    private final EnvironmentContext context;
+    private final boolean concurrent;
+
+    EnvironmentMethodDescriptor(UniqueId uniqueId, TestClass testClass, FrameworkMethod method,
+                                EnvironmentContext context, boolean concurrent) {
+        super(uniqueId, method.getName(), MethodSource.from(testClass.getJavaClass(), method.getMethod()));
+        this.testClass = testClass;
+        this.method = method;
+        this.context = context;
+        this.concurrent = concurrent;
+    }
+
+    FrameworkMethod getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the test method with its stage and publication, like the children of the runner
+     */
+    EnvironmentFrameworkMethod getEnvironmentMethod() {
+        return new EnvironmentFrameworkMethod(method, context);
+    }
+
+    public Type getType() {
+        return Type.TEST;
+    }
+
+    @Override
+    public ExecutionMode getExecutionMode() {
+        return concurrent ? ExecutionMode.CONCURRENT : ExecutionMode.SAME_THREAD;
+    }
+
+    @Override
+    public SkipResult shouldBeSkipped(EnvironmentEngineContext engineContext) {
+        org.junit.Ignore ignore = method.getAnnotation(org.junit.Ignore.class);
+        if (ignore == null) {
+            ignore = testClass.getJavaClass().getAnnotation(org.junit.Ignore.class);
+        }
+        return ignore != null ? SkipResult.skip(ignore.value()) : SkipResult.doNotSkip();
+    }
+
+    @Override
+    public EnvironmentEngineContext execute(EnvironmentEngineContext engineContext, DynamicTestExecutor dynamicTestExecutor) throws Exception {
+        try {
+            Object test = testClass.getOnlyConstructor().newInstance();
+            EnvironmentFrameworkMethod envMethod = PhaseRecorder.isEnabled() ? getEnvironmentMethod() : null;
+            long start = System.nanoTime();
+            InjectionPlan.forClass(testClass.getJavaClass()).inject(test, engineContext.getConfiguration(), context);
+            if (envMethod != null) {
+                PhaseRecorder.record(Phase.INJECTION, testClass.getJavaClass(), envMethod, start);
+            }
+            createStatement(test, envMethod).evaluate();
+        } catch (AssumptionViolatedException ave) {
+            throw new TestAbortedException(ave.getMessage(), ave);
+        } catch (Exception e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+        return engineContext;
+    }
+
+    @Override
+    public void after(EnvironmentEngineContext engineContext) {
+        ((EnvironmentContainerDescriptor) getParent().get()).releaseFixtures();
+    }
+
+    /**
+     * @param envMethod the test method to record the phases for, null if they are not recorded
+     * @return the statement running the method like the JUnit 4 runner does
+     */
+    private Statement createStatement(Object test, EnvironmentFrameworkMethod envMethod) {
+        Statement statement = new InvokeMethod(method, test);
+        Test annotation = method.getAnnotation(Test.class);
+        if (annotation.expected() != Test.None.class) {
+            statement = new ExpectException(statement, annotation.expected());
+        }
+        if (annotation.timeout() > 0) {
+            statement = FailOnTimeout.builder().withTimeout(annotation.timeout(), TimeUnit.MILLISECONDS).build(statement);
+        }
+        // the timeout runs the test in another thread, so the test phase is recorded outside of it
+        statement = timed(Phase.TEST, envMethod, statement);
+        List<FrameworkMethod> befores = testClass.getAnnotatedMethods(Before.class);
+        if (!befores.isEmpty()) {
+            statement = timed(Phase.BEFORE, envMethod, new RunBefores(statement, befores, test));
+        }
+        List<FrameworkMethod> afters = testClass.getAnnotatedMethods(After.class);
+        if (!afters.isEmpty()) {
+            statement = timed(Phase.AFTER, envMethod, new RunAfters(statement, afters, test));
+        }
+        Statement withoutRules = statement;
+        List<TestRule> testRules = new ArrayList<TestRule>(testClass.getAnnotatedFieldValues(test, Rule.class, TestRule.class));
+        testRules.addAll(testClass.getAnnotatedMethodValues(test, Rule.class, TestRule.class));
+        List<MethodRule> methodRules = new ArrayList<MethodRule>(testClass.getAnnotatedFieldValues(test, Rule.class, MethodRule.class));
+        methodRules.addAll(testClass.getAnnotatedMethodValues(test, Rule.class, MethodRule.class));
+        for (MethodRule rule : methodRules) {
+            // a rule being both is only applied as test rule, like by JUnit
+            if (!testRules.contains(rule)) {
+                statement = rule.apply(statement, method, test);
+            }
+        }
+        if (!testRules.isEmpty()) {
+            Description description = Description.createTestDescription(testClass.getJavaClass(), method.getName(),
+                    method.getAnnotations());
+            for (TestRule rule : testRules) {
+                statement = rule.apply(statement, description);
+            }
+        }
+        return statement == withoutRules ? statement : timed(Phase.RULES, envMethod, statement);
+    }
+
+    /**
+     * @return the statement, timed as the phase by the {@link PhaseRecorder} if the phases are recorded
+     */
+    private Statement timed(Phase phase, EnvironmentFrameworkMethod envMethod, Statement statement) {
+        return envMethod != null ? PhaseRecorder.timed(phase, testClass.getJavaClass(), envMethod, statement) : statement;
+    }
+}
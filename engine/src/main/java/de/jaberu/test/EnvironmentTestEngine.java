@@ -0,0 +1,321 @@
+package de.jaberu.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+import org.junit.platform.commons.support.ReflectionSupport;
+import org.junit.platform.engine.ConfigurationParameters;
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.EngineDiscoveryRequest;
+import org.junit.platform.engine.ExecutionRequest;
+import org.junit.platform.engine.Filter;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.discovery.ClassNameFilter;
+import org.junit.platform.engine.discovery.ClassSelector;
+import org.junit.platform.engine.discovery.ClasspathRootSelector;
+import org.junit.platform.engine.discovery.MethodSelector;
+import org.junit.platform.engine.discovery.PackageNameFilter;
+import org.junit.platform.engine.discovery.PackageSelector;
+import org.junit.platform.engine.discovery.UniqueIdSelector;
+import org.junit.platform.engine.support.config.PrefixedConfigurationParameters;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.hierarchical.ForkJoinPoolHierarchicalTestExecutorService;
+import org.junit.platform.engine.support.hierarchical.HierarchicalTestEngine;
+import org.junit.platform.engine.support.hierarchical.HierarchicalTestExecutorService;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * JUnit Platform engine running the test classes of the {@link EnvironmentTestRunner} without it. The stages
+ * and publications given by system properties are expanded into containers when discovering the tests: the
+ * test class contains a container per stage, the stage one per publication and that the test methods. So the
+ * variants show up in the tree of the IDE and build tools and can be selected and filtered like any test.
+ * <p>
+ * Discovered are classes with JUnit 4 {@link Test} methods and a {@link ResourceBundle} or {@link PropertyValue}
+ * fields. Classes annotated by {@link RunWith} are left to the vintage engine. The configuration of each
+ * stage and publication is resolved once from the same {@link PropertySources} and {@link PropertyCache}
+ * as by the runner.
+ * <p>
+ * With the configuration parameter {@value #PARALLEL_ENABLED} (or the {@value Environment#THREADS} system
+ * property) the variants run on the work-stealing pool of the platform, configured by the parameters starting
+ * with {@value #PARALLEL_CONFIG_PREFIX}, e.g. <code>de.jaberu.test.parallel.config.strategy=fixed</code>.
+ * Test classes always run concurrently then, their test methods only if the class is annotated by
+ * {@link Parallel} or the {@value Environment#THREADS} system property is set.
+ * <p>
+ * The shards of the {@value Environment#SHARD_INDEX} and {@value Environment#SHARD_COUNT} system properties are
+ * split like by the runner, by the durations of the {@value Environment#TIMINGS} directory if given, and the phases
+ * are recorded by the {@link PhaseRecorder}. The circuit breaker, the result cache, the maximum per stage and
+ * recording the timings are only supported by the runner, their system properties and annotations are rejected.
+ */
+public final class EnvironmentTestEngine extends HierarchicalTestEngine<EnvironmentEngineContext> {
+
+    public static final String ENGINE_ID = "environment-test-runner";
+
+    /**
+     * configuration parameter enabling the parallel execution
+     */
+    public static final String PARALLEL_ENABLED = "de.jaberu.test.parallel.enabled";
+
+    /**
+     * prefix of the configuration parameters of the parallel execution, as known from Jupiter
+     */
+    public static final String PARALLEL_CONFIG_PREFIX = "de.jaberu.test.parallel.config.";
+
+    public String getId() {
+        return ENGINE_ID;
+    }
+
+    public TestDescriptor discover(EngineDiscoveryRequest request, UniqueId uniqueId) {
+        EngineDescriptor engine = new EngineDescriptor(uniqueId, "Environment Test Runner");
+        final Predicate<String> classNames = Filter.composeFilters(request.getFiltersByType(ClassNameFilter.class)).toPredicate();
+        final Predicate<String> packageNames = Filter.composeFilters(request.getFiltersByType(PackageNameFilter.class)).toPredicate();
+        Predicate<Class<?>> candidates = new Predicate<Class<?>>() {
+            public boolean test(Class<?> type) {
+                return isTestClass(type) && packageNames.test(type.getPackage() != null ? type.getPackage().getName() : "");
+            }
+        };
+
+        // the selected methods by class, null for all methods
+        Map<Class<?>, Set<Method>> selected = new LinkedHashMap<Class<?>, Set<Method>>();
+        // the selected unique ids by class, null if the class is selected in all stages and publications
+        Map<Class<?>, List<UniqueId>> variants = new HashMap<Class<?>, List<UniqueId>>();
+        for (DiscoverySelector selector : request.getSelectorsByType(DiscoverySelector.class)) {
+            if (selector instanceof ClassSelector) {
+                select(selected, variants, ((ClassSelector) selector).getJavaClass(), null, null);
+            } else if (selector instanceof MethodSelector) {
+                MethodSelector methodSelector = (MethodSelector) selector;
+                select(selected, variants, methodSelector.getJavaClass(), methodSelector.getJavaMethod(), null);
+            } else if (selector instanceof PackageSelector) {
+                for (Class<?> type : ReflectionSupport.findAllClassesInPackage(((PackageSelector) selector).getPackageName(), candidates, classNames)) {
+                    select(selected, variants, type, null, null);
+                }
+            } else if (selector instanceof ClasspathRootSelector) {
+                for (Class<?> type : ReflectionSupport.findAllClassesInClasspathRoot(((ClasspathRootSelector) selector).getClasspathRoot(), candidates, classNames)) {
+                    select(selected, variants, type, null, null);
+                }
+            } else if (selector instanceof UniqueIdSelector) {
+                selectUniqueId(selected, variants, ((UniqueIdSelector) selector).getUniqueId(), uniqueId);
+            }
+        }
+
+        MatrixFilter filter = getMatrixFilter();
+        Shard shard = Shard.fromSystemProperties();
+        checkUnsupported(shard != null);
+        String timings = System.getProperty(Environment.TIMINGS);
+        for (Map.Entry<Class<?>, Set<Method>> entry : selected.entrySet()) {
+            Class<?> testClass = entry.getKey();
+            if (!candidates.test(testClass) || !classNames.test(testClass.getName())) {
+                continue;
+            }
+            checkUnsupported(testClass);
+            EnvironmentContainerDescriptor container = EnvironmentContainerDescriptor.forClass(uniqueId, testClass, entry.getValue(), filter);
+            List<UniqueId> ids = variants.get(testClass);
+            if (ids != null) {
+                retainVariants(container, ids);
+            }
+            if (shard != null) {
+                container.retainShard(shard, TimingHistory.load(timings != null ? new File(timings) : null, testClass));
+            }
+            if (!container.getChildren().isEmpty()) {
+                engine.addChild(container);
+            }
+        }
+        return engine;
+    }
+
+    @Override
+    protected HierarchicalTestExecutorService createExecutorService(ExecutionRequest request) {
+        ConfigurationParameters parameters = request.getConfigurationParameters();
+        if (parameters.getBoolean(PARALLEL_ENABLED).orElse(Boolean.FALSE) || System.getProperty(Environment.THREADS) != null) {
+            return new ForkJoinPoolHierarchicalTestExecutorService(new PrefixedConfigurationParameters(parameters, PARALLEL_CONFIG_PREFIX));
+        }
+        return super.createExecutorService(request);
+    }
+
+    @Override
+    protected EnvironmentEngineContext createExecutionContext(ExecutionRequest request) {
+        return new EnvironmentEngineContext(null);
+    }
+
+    /**
+     * @param type a class
+     * @return true if the class is a test class of this engine
+     */
+    static boolean isTestClass(Class<?> type) {
+        if (type.isAnnotationPresent(RunWith.class) || Modifier.isAbstract(type.getModifiers())
+                || !Modifier.isPublic(type.getModifiers()) || type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) {
+            return false;
+        }
+        boolean hasTests = false;
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(Test.class)) {
+                hasTests = true;
+                break;
+            }
+        }
+        if (!hasTests) {
+            return false;
+        }
+        if (!ReflectionUtils.getBundles(type).isEmpty()) {
+            return true;
+        }
+        try {
+            return !InjectionPlan.forClass(type).getKeys().isEmpty();
+        } catch (RuntimeException re) {
+            // invalid injection, reported when the test methods run
+            return true;
+        }
+    }
+
+    /**
+     * @param id the unique id selecting the class or method, null if selected in all stages and publications
+     */
+    private static void select(Map<Class<?>, Set<Method>> selected, Map<Class<?>, List<UniqueId>> variants,
+                               Class<?> testClass, Method method, UniqueId id) {
+        if (id == null) {
+            variants.put(testClass, null);
+        } else if (!variants.containsKey(testClass)) {
+            variants.put(testClass, new ArrayList<UniqueId>());
+        }
+        List<UniqueId> ids = variants.get(testClass);
+        if (ids != null) {
+            ids.add(id);
+        }
+        if (!selected.containsKey(testClass)) {
+            selected.put(testClass, method != null ? new LinkedHashSet<Method>() : null);
+        }
+        Set<Method> methods = selected.get(testClass);
+        if (methods != null) {
+            if (method != null) {
+                methods.add(method);
+            } else {
+                // the whole class is selected too
+                selected.put(testClass, null);
+            }
+        }
+    }
+
+    /**
+     * Selects the class or method of a unique id created by this engine, e.g. to run a single variant again.
+     * The stages and publications are given by the system properties, the stage and publication segments of
+     * the id restrict them to the variant of the id, see {@link #retainVariants(TestDescriptor, List)}.
+     */
+    private static void selectUniqueId(Map<Class<?>, Set<Method>> selected, Map<Class<?>, List<UniqueId>> variants,
+                                       UniqueId id, UniqueId engineId) {
+        if (!id.hasPrefix(engineId)) {
+            return;
+        }
+        Class<?> testClass = null;
+        String methodName = null;
+        for (UniqueId.Segment segment : id.getSegments()) {
+            if (EnvironmentContainerDescriptor.CLASS_SEGMENT.equals(segment.getType())) {
+                testClass = ReflectionSupport.tryToLoadClass(segment.getValue()).toOptional().orElse(null);
+            } else if (EnvironmentMethodDescriptor.SEGMENT.equals(segment.getType())) {
+                methodName = segment.getValue();
+            }
+        }
+        if (testClass == null) {
+            return;
+        }
+        if (methodName == null) {
+            select(selected, variants, testClass, null, id);
+            return;
+        }
+        for (FrameworkMethod method : new TestClass(testClass).getAnnotatedMethods(Test.class)) {
+            if (method.getName().equals(methodName)) {
+                select(selected, variants, testClass, method.getMethod(), id);
+            }
+        }
+    }
+
+    /**
+     * Removes the stages, publications and test methods not selected by one of the unique ids.
+     *
+     * @param descriptor the container of a test class or one of its children
+     * @param ids        the selected unique ids of the test class
+     * @return true if the descriptor is selected itself or contains a selected descendant
+     */
+    private static boolean retainVariants(TestDescriptor descriptor, List<UniqueId> ids) {
+        boolean ancestor = false;
+        for (UniqueId id : ids) {
+            if (descriptor.getUniqueId().hasPrefix(id)) {
+                // selected, with all its children
+                return true;
+            }
+            ancestor |= id.hasPrefix(descriptor.getUniqueId());
+        }
+        if (!ancestor) {
+            return false;
+        }
+        for (TestDescriptor child : new ArrayList<TestDescriptor>(descriptor.getChildren())) {
+            if (!retainVariants(child, ids)) {
+                descriptor.removeChild(child);
+            }
+        }
+        return !descriptor.getChildren().isEmpty();
+    }
+
+    /**
+     * Rejects the system properties of features only the {@link EnvironmentTestRunner} supports, so they are not
+     * silently ignored. The timings are only read to split the shards, the engine does not record them.
+     *
+     * @param sharded true if the shard system properties are given
+     * @throws IllegalArgumentException if one of the properties is set
+     */
+    private static void checkUnsupported(boolean sharded) {
+        for (String name : new String[]{Environment.CIRCUIT_BREAKER, Environment.RESULT_CACHE, Environment.MAX_PER_STAGE}) {
+            if (System.getProperty(name) != null) {
+                throw new IllegalArgumentException("system property " + name + " is only supported by the "
+                        + EnvironmentTestRunner.class.getSimpleName() + ", not by the engine " + ENGINE_ID);
+            }
+        }
+        if (!sharded && System.getProperty(Environment.TIMINGS) != null) {
+            throw new IllegalArgumentException("system property " + Environment.TIMINGS + " is only read by the engine "
+                    + ENGINE_ID + " to split shards, the timings are recorded by the "
+                    + EnvironmentTestRunner.class.getSimpleName());
+        }
+    }
+
+    /**
+     * Like {@link #checkUnsupported(boolean)} for the annotations of a test class.
+     *
+     * @throws IllegalArgumentException if the class has a circuit breaker or a maximum per stage
+     */
+    private static void checkUnsupported(Class<?> testClass) {
+        String annotation = null;
+        if (testClass.isAnnotationPresent(CircuitBreaker.class)) {
+            annotation = "@CircuitBreaker";
+        } else if (testClass.isAnnotationPresent(Parallel.class) && testClass.getAnnotation(Parallel.class).maxPerStage() > 0) {
+            annotation = "@Parallel(maxPerStage)";
+        }
+        if (annotation != null) {
+            throw new IllegalArgumentException("test class " + testClass.getName() + " uses " + annotation
+                    + ", which is only supported by the " + EnvironmentTestRunner.class.getSimpleName()
+                    + ", not by the engine " + ENGINE_ID);
+        }
+    }
+
+    /**
+     * @return the filter given by system property, null if not given
+     * @throws IllegalArgumentException if the filter is malformed
+     */
+    private static MatrixFilter getMatrixFilter() {
+        String property = System.getProperty(Environment.SELECT);
+        if (property == null || property.trim().length() == 0) {
+            return null;
+        }
+        return MatrixFilter.parse(property);
+    }
+}
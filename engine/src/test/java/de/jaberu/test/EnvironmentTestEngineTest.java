@@ -0,0 +1,387 @@
+package de.jaberu.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.MethodRule;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+import org.junit.platform.commons.JUnitException;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.engine.support.hierarchical.Node;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.testkit.engine.EngineExecutionResults;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.junit.platform.testkit.engine.Event;
+import org.junit.platform.testkit.engine.Events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the discovery and execution of the stages and publications by the engine.
+ */
+public class EnvironmentTestEngineTest {
+
+    @Before
+    public void setUp() {
+        SampleTest.runs.clear();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Environment.STAGE);
+        System.clearProperty(Environment.PUBLICATION);
+        System.clearProperty(Environment.SELECT);
+        System.clearProperty(Environment.SHARD_INDEX);
+        System.clearProperty(Environment.SHARD_COUNT);
+        System.clearProperty(Environment.RESULT_CACHE);
+        PhaseRecorder.reset();
+    }
+
+    @Test
+    public void testMatrix() {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        EngineExecutionResults results = execute(SampleTest.class, false);
+
+        Events tests = results.testEvents();
+        Assert.assertEquals(String.valueOf(tests.failed().list()), 0, tests.failed().count());
+        // the second method is ignored on uat, the assumption aborts on b
+        Assert.assertEquals(5, tests.succeeded().count());
+        Assert.assertEquals(1, tests.aborted().count());
+        Assert.assertEquals(new ConcurrentSkipListSet<String>(Arrays.asList("first dev/a dev-a 1", "first dev/b dev 1",
+                "first uat/a base 1", "first uat/b base 1", "second dev/a dev-a 1")), SampleTest.runs);
+        // engine, class, two stages, two publications each
+        Assert.assertEquals(1 + 1 + 2 + 4, results.containerEvents().succeeded().count());
+    }
+
+    @Test
+    public void testHierarchy() {
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        TestDescriptor engine = EngineTestKit.engine(new EnvironmentTestEngine())
+                .selectors(DiscoverySelectors.selectClass(SampleTest.class)).execute().allEvents().list().get(0)
+                .getTestDescriptor();
+        TestDescriptor testClass = engine.getChildren().iterator().next();
+        Assert.assertEquals("SampleTest", testClass.getDisplayName());
+        TestDescriptor stage = testClass.getChildren().iterator().next();
+        Assert.assertEquals("stage dev", stage.getDisplayName());
+        List<String> publications = new ArrayList<String>();
+        for (TestDescriptor publication : stage.getChildren()) {
+            publications.add(publication.getDisplayName());
+            Assert.assertEquals(2, publication.getChildren().size());
+        }
+        Assert.assertEquals(Arrays.asList("publication a", "publication b"), publications);
+    }
+
+    @Test
+    public void testWithoutEnvironment() {
+        EngineExecutionResults results = execute(SampleTest.class, false);
+        Assert.assertEquals(2, results.testEvents().succeeded().count());
+        Assert.assertEquals(new ConcurrentSkipListSet<String>(Arrays.asList("first null/null base 1",
+                "second null/null base 1")), SampleTest.runs);
+    }
+
+    /**
+     * Test classes run concurrently with and without stages, their test methods only if annotated by
+     * {@link Parallel}.
+     */
+    @Test
+    public void testClassConcurrent() {
+        for (String stage : new String[]{null, "dev"}) {
+            if (stage != null) {
+                System.setProperty(Environment.STAGE, stage);
+            }
+            TestDescriptor testClass = new EnvironmentTestEngine().discover(
+                    LauncherDiscoveryRequestBuilder.request().selectors(DiscoverySelectors.selectClass(SampleTest.class)).build(),
+                    UniqueId.forEngine(EnvironmentTestEngine.ENGINE_ID)).getChildren().iterator().next();
+            Assert.assertEquals(Node.ExecutionMode.CONCURRENT, ((Node<?>) testClass).getExecutionMode());
+            for (TestDescriptor descendant : testClass.getDescendants()) {
+                if (descendant.isTest()) {
+                    Assert.assertEquals(Node.ExecutionMode.SAME_THREAD, ((Node<?>) descendant).getExecutionMode());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSelect() {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.SELECT, "stage=dev & method=second");
+        EngineExecutionResults results = execute(SampleTest.class, false);
+        Assert.assertEquals(1, results.testEvents().started().count());
+        Assert.assertEquals(Collections.singleton("second dev/null dev 1"), SampleTest.runs);
+    }
+
+    @Test
+    public void testMethodSelector() {
+        System.setProperty(Environment.STAGE, "dev");
+        EngineExecutionResults results = EngineTestKit.engine(new EnvironmentTestEngine())
+                .selectors(DiscoverySelectors.selectMethod(SampleTest.class, "first")).execute();
+        Assert.assertEquals(1, results.testEvents().succeeded().count());
+        Assert.assertEquals(Collections.singleton("first dev/null dev 1"), SampleTest.runs);
+    }
+
+    @Test
+    public void testUniqueIdSelector() {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        UniqueId classId = UniqueId.forEngine(EnvironmentTestEngine.ENGINE_ID)
+                .append(EnvironmentContainerDescriptor.CLASS_SEGMENT, SampleTest.class.getName());
+        EngineExecutionResults results = EngineTestKit.engine(new EnvironmentTestEngine())
+                .selectors(DiscoverySelectors.selectUniqueId(classId
+                                .append(EnvironmentContainerDescriptor.STAGE_SEGMENT, "dev")
+                                .append(EnvironmentContainerDescriptor.PUBLICATION_SEGMENT, "b")
+                                .append(EnvironmentMethodDescriptor.SEGMENT, "first")),
+                        DiscoverySelectors.selectUniqueId(classId.append(EnvironmentContainerDescriptor.STAGE_SEGMENT, "uat")))
+                .execute();
+        Assert.assertEquals(3, results.testEvents().succeeded().count());
+        Assert.assertEquals(new ConcurrentSkipListSet<String>(Arrays.asList("first dev/b dev 1",
+                "first uat/a base 1", "first uat/b base 1")), SampleTest.runs);
+    }
+
+    @Test
+    public void testShard() throws Exception {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        System.setProperty(Environment.SHARD_COUNT, "2");
+        // the variants in the order of the runner, the second method is ignored on uat
+        List<FrameworkMethod> variants = new ArrayList<FrameworkMethod>();
+        for (String method : new String[]{"first", "second"}) {
+            for (String stage : new String[]{"dev", "uat"}) {
+                for (String publication : new String[]{"a", "b"}) {
+                    if (!"second".equals(method) || !"uat".equals(stage)) {
+                        variants.add(new EnvironmentFrameworkMethod(new FrameworkMethod(SampleTest.class.getMethod(method)), stage, publication));
+                    }
+                }
+            }
+        }
+        Set<String> all = new HashSet<String>();
+        for (int index = 0; index < 2; index++) {
+            System.setProperty(Environment.SHARD_INDEX, String.valueOf(index));
+            Set<String> expected = new HashSet<String>();
+            for (FrameworkMethod variant : new Shard(index, 2).select(SampleTest.class, variants, TimingHistory.load(null, SampleTest.class))) {
+                expected.add(variant.getName());
+            }
+            Set<String> started = new HashSet<String>();
+            for (Event event : execute(SampleTest.class, false).testEvents().started().list()) {
+                UniqueId id = event.getTestDescriptor().getUniqueId();
+                started.add(id.getLastSegment().getValue() + " for " + getSegment(id, EnvironmentContainerDescriptor.PUBLICATION_SEGMENT)
+                        + " on " + getSegment(id, EnvironmentContainerDescriptor.STAGE_SEGMENT));
+            }
+            // without timings the same split by count as by the runner, three variants per shard
+            Assert.assertEquals(expected, started);
+            Assert.assertEquals(3, started.size());
+            all.addAll(started);
+        }
+        Assert.assertEquals(6, all.size());
+    }
+
+    private static String getSegment(UniqueId id, String type) {
+        for (UniqueId.Segment segment : id.getSegments()) {
+            if (segment.getType().equals(type)) {
+                return segment.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testRunnerOnlyProperty() {
+        System.setProperty(Environment.RESULT_CACHE, "target/results");
+        try {
+            execute(SampleTest.class, false);
+            Assert.fail("the result cache is not supported by the engine");
+        } catch (JUnitException je) {
+            // the platform reports the failed discovery
+            Assert.assertTrue(String.valueOf(je.getCause()), je.getCause() instanceof IllegalArgumentException);
+            Assert.assertTrue(je.getCause().getMessage(), je.getCause().getMessage().contains(Environment.RESULT_CACHE));
+        }
+    }
+
+    @Test
+    public void testPhases() {
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PHASE_REPORT, "phases.txt");
+        try {
+            Assert.assertEquals(2, execute(SampleTest.class, false).testEvents().succeeded().count());
+        } finally {
+            // before the report is written at the end of the JVM
+            System.clearProperty(Environment.PHASE_REPORT);
+        }
+        Map<String, long[]> totals = PhaseRecorder.getTotals();
+        Assert.assertEquals(1, totals.get(SampleTest.class.getName() + " loadProperties")[0]);
+        Assert.assertEquals(2, totals.get(SampleTest.class.getName() + " injection")[0]);
+        Assert.assertEquals(2, totals.get(SampleTest.class.getName() + " before")[0]);
+        Assert.assertEquals(2, totals.get(SampleTest.class.getName() + " test")[0]);
+        Assert.assertNull(totals.get(SampleTest.class.getName() + " after"));
+    }
+
+    @Test
+    public void testRules() {
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        RulesTest.events.clear();
+        EngineExecutionResults results = execute(RulesTest.class, false);
+        Assert.assertEquals(String.valueOf(results.testEvents().failed().list()), 2, results.testEvents().succeeded().count());
+        // the class rule encloses both publications, the method rules every test method once
+        Assert.assertEquals(Arrays.asList("class before", "method rule", "test rule", "test", "method rule",
+                "test rule", "test", "class after"), RulesTest.events);
+    }
+
+    @Test
+    public void testRunWithIsLeftToVintage() {
+        Assert.assertFalse(EnvironmentTestEngine.isTestClass(RunnerTest.class));
+        Assert.assertFalse(EnvironmentTestEngine.isTestClass(EnvironmentTestEngineTest.class));
+        Assert.assertTrue(EnvironmentTestEngine.isTestClass(SampleTest.class));
+    }
+
+    @Test
+    public void testParallel() {
+        System.setProperty(Environment.STAGE, "dev");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        EngineExecutionResults results = execute(ParallelTest.class, true);
+        // both publications wait for each other, what only passes if they run at the same time
+        Assert.assertEquals(String.valueOf(results.testEvents().failed().list()), 2, results.testEvents().succeeded().count());
+    }
+
+    private static EngineExecutionResults execute(Class<?> testClass, boolean parallel) {
+        return EngineTestKit.engine(new EnvironmentTestEngine())
+                .configurationParameter(EnvironmentTestEngine.PARALLEL_ENABLED, String.valueOf(parallel))
+                .configurationParameter(EnvironmentTestEngine.PARALLEL_CONFIG_PREFIX + "strategy", "fixed")
+                .configurationParameter(EnvironmentTestEngine.PARALLEL_CONFIG_PREFIX + "fixed.parallelism", "4")
+                .selectors(DiscoverySelectors.selectClass(testClass))
+                .execute();
+    }
+
+    @ResourceBundle("engine")
+    public static class SampleTest {
+
+        static final Set<String> runs = new ConcurrentSkipListSet<String>();
+
+        @PropertyValue("engine.key")
+        private String key;
+
+        @PropertyValue("engine.number")
+        private int number;
+
+        @PropertyValue("stage")
+        private String stage;
+
+        @PropertyValue("publication")
+        private String publication;
+
+        private int befores;
+
+        @Before
+        public void setUp() {
+            befores++;
+        }
+
+        @Test
+        public void first() {
+            runs.add("first " + stage + "/" + publication + " " + key + " " + befores);
+            Assert.assertEquals(1, number);
+        }
+
+        @Test
+        @Ignore("uat")
+        public void second() {
+            Assume.assumeFalse("b".equals(publication));
+            runs.add("second " + stage + "/" + publication + " " + key + " " + befores);
+        }
+    }
+
+    @ResourceBundle("engine")
+    @Parallel
+    public static class ParallelTest {
+
+        private static final CountDownLatch latch = new CountDownLatch(2);
+
+        @Test
+        public void test() throws InterruptedException {
+            latch.countDown();
+            Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @ResourceBundle("engine")
+    public static class RulesTest {
+
+        static final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @ClassRule
+        public static final ExternalResource resource = new ExternalResource() {
+            @Override
+            protected void before() {
+                events.add("class before");
+            }
+
+            @Override
+            protected void after() {
+                events.add("class after");
+            }
+        };
+
+        @Rule
+        public final BothRule both = new BothRule();
+
+        @Rule
+        public MethodRule methodRule() {
+            return new MethodRule() {
+                public Statement apply(Statement base, FrameworkMethod method, Object target) {
+                    events.add("method rule");
+                    return base;
+                }
+            };
+        }
+
+        @Test
+        public void test() {
+            events.add("test");
+        }
+    }
+
+    /**
+     * Applied as test rule only, like by JUnit.
+     */
+    public static class BothRule implements MethodRule, TestRule {
+
+        public Statement apply(Statement base, FrameworkMethod method, Object target) {
+            RulesTest.events.add("both as method rule");
+            return base;
+        }
+
+        public Statement apply(Statement base, Description description) {
+            RulesTest.events.add("test rule");
+            return base;
+        }
+    }
+
+    @org.junit.runner.RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("engine")
+    public static class RunnerTest {
+
+        @Test
+        public void test() {
+        }
+    }
+}
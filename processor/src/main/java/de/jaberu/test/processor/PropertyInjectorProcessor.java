@@ -0,0 +1,252 @@
+package de.jaberu.test.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a <code>de.jaberu.test.PropertyInjector</code> for each test class with
+ * <code>@PropertyValue</code> fields or a <code>@ResourceBundle</code> annotation. The injector assigns the
+ * fields of the class and its superclasses directly. Every value is converted by the converter of the field
+ * from <code>de.jaberu.test.Converters</code>, looked up once when the injector is loaded, so registered
+ * converters and factories apply like for the injection by reflection.
+ * <p>
+ * No injector is generated if one of the fields cannot be assigned from the package of the test class,
+ * e.g. since it is private or final. Those test classes are still injected by reflection at runtime.
+ * The annotations are referenced by name only, so the processor does not depend on the runner.
+ */
+@SupportedAnnotationTypes({PropertyInjectorProcessor.PROPERTY_VALUE, PropertyInjectorProcessor.RESOURCE_BUNDLE})
+public class PropertyInjectorProcessor extends AbstractProcessor {
+
+    static final String PROPERTY_VALUE = "de.jaberu.test.PropertyValue";
+    static final String RESOURCE_BUNDLE = "de.jaberu.test.ResourceBundle";
+
+    private static final String SUFFIX = "$$PropertyInjector";
+
+    private final Set<String> generated = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> testClasses = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.FIELD) {
+                    testClasses.add((TypeElement) element.getEnclosingElement());
+                } else if (element.getKind() == ElementKind.CLASS) {
+                    testClasses.add((TypeElement) element);
+                }
+            }
+        }
+        for (TypeElement testClass : testClasses) {
+            generate(testClass);
+        }
+        // other processors may want to see the annotations too
+        return false;
+    }
+
+    private void generate(TypeElement testClass) {
+        if (testClass.getModifiers().contains(Modifier.ABSTRACT) || !isAccessible(testClass)) {
+            return;
+        }
+        String packageName = processingEnv.getElementUtils().getPackageOf(testClass).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(testClass).toString();
+        String injectorName = binaryName + SUFFIX;
+        if (!generated.add(injectorName)) {
+            return;
+        }
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        List<String> keys = new ArrayList<String>();
+        TypeElement clazz = testClass;
+        while (clazz != null && !"java.lang.Object".equals(clazz.getQualifiedName().toString())) {
+            for (VariableElement field : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+                String key = getPropertyKey(field);
+                if (key == null) {
+                    continue;
+                }
+                String problem = checkField(field, key, clazz, packageName);
+                if (problem != null) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "no property injector generated for "
+                            + testClass.getQualifiedName() + ", field " + field.getSimpleName() + " " + problem, testClass);
+                    return;
+                }
+                fields.add(field);
+                keys.add(key);
+            }
+            TypeMirror superclass = clazz.getSuperclass();
+            clazz = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(injectorName, testClass).openWriter();
+            try {
+                writer.write(createSource(testClass, packageName, injectorName.substring(packageName.length() == 0 ? 0 : packageName.length() + 1), fields, keys));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ioe) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "failed to write " + injectorName + ": " + ioe, testClass);
+        }
+    }
+
+    /**
+     * @return true if the generated class in the same package can access the test class
+     */
+    private static boolean isAccessible(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            TypeElement typeElement = (TypeElement) element;
+            if (typeElement.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (typeElement.getNestingKind() == NestingKind.LOCAL || typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            if (typeElement.getNestingKind() == NestingKind.MEMBER && !typeElement.getModifiers().contains(Modifier.STATIC)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * @return why the field cannot be assigned by the generated injector, null if it can
+     */
+    private String checkField(VariableElement field, String key, TypeElement declaringClass, String packageName) {
+        Set<Modifier> modifiers = field.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return "is private";
+        }
+        if (modifiers.contains(Modifier.FINAL)) {
+            return "is final";
+        }
+        PackageElement fieldPackage = processingEnv.getElementUtils().getPackageOf(declaringClass);
+        if (!fieldPackage.getQualifiedName().contentEquals(packageName)
+                && !(modifiers.contains(Modifier.PUBLIC) && declaringClass.getModifiers().contains(Modifier.PUBLIC))) {
+            return "is not accessible from package " + packageName;
+        }
+        if (("stage".equals(key) || "publication".equals(key)) && !"java.lang.String".equals(erasure(field))
+                && !"java.lang.Object".equals(erasure(field))) {
+            return "is not a string";
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of the <code>@PropertyValue</code> annotation, null if not annotated
+     */
+    private static String getPropertyKey(VariableElement field) {
+        for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(PROPERTY_VALUE)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("value")) {
+                    return (String) value.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private String erasure(Element element) {
+        return processingEnv.getTypeUtils().erasure(element.asType()).toString();
+    }
+
+    private String createSource(TypeElement testClass, String packageName, String simpleName, List<VariableElement> fields, List<String> keys) {
+        String testType = erasure(testClass);
+        StringBuilder converters = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        body.append("        ").append(testType).append(" test = (").append(testType).append(") instance;\n");
+        body.append("        String value;\n");
+        for (int i = 0; i < fields.size(); i++) {
+            VariableElement field = fields.get(i);
+            String key = keys.get(i);
+            String declaringType = erasure(field.getEnclosingElement());
+            String target = field.getModifiers().contains(Modifier.STATIC)
+                    ? declaringType + "." + field.getSimpleName()
+                    : "((" + declaringType + ") test)." + field.getSimpleName();
+            if ("stage".equals(key)) {
+                body.append("        ").append(target).append(" = context.getStage();\n");
+                continue;
+            }
+            if ("publication".equals(key)) {
+                body.append("        ").append(target).append(" = context.getPublication();\n");
+                continue;
+            }
+            String converter = "converter" + i;
+            String castType = field.asType().getKind().isPrimitive()
+                    ? processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(field.asType().getKind())).getQualifiedName().toString()
+                    : erasure(field);
+            converters.append("    private static final de.jaberu.test.Converter<?> ").append(converter)
+                    .append(" = de.jaberu.test.Converters.forField(").append(declaringType).append(".class, \"")
+                    .append(field.getSimpleName()).append("\");\n");
+            String parser = "(" + castType + ") " + converter + ".convert(value)";
+            String literal = processingEnv.getElementUtils().getConstantExpression(key);
+            body.append("        value = configuration.get(").append(literal).append(");\n");
+            body.append("        if (value != null) {\n");
+            body.append("            try {\n");
+            body.append("                ").append(target).append(" = ").append(parser).append(";\n");
+            body.append("            } catch (RuntimeException e) {\n");
+            body.append("                throw new IllegalArgumentException(\"cannot convert value '\" + value + \"' of property \" + ")
+                    .append(literal).append(", e);\n");
+            body.append("            }\n");
+            body.append("        }");
+            if (field.asType().getKind().isPrimitive()) {
+                body.append("\n");
+            } else {
+                body.append(" else {\n");
+                body.append("            ").append(target).append(" = null;\n");
+                body.append("        }\n");
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n");
+        source.append(" * Injects the properties of {@link ").append(testType).append("}, generated by ")
+                .append(PropertyInjectorProcessor.class.getSimpleName()).append(".\n");
+        source.append(" */\n");
+        source.append("public final class ").append(simpleName).append(" implements de.jaberu.test.PropertyInjector {\n\n");
+        if (converters.length() > 0) {
+            source.append(converters).append("\n");
+        }
+        source.append("    @SuppressWarnings(\"unchecked\")\n");
+        source.append("    public void inject(Object instance, de.jaberu.test.ResolvedConfiguration configuration, de.jaberu.test.EnvironmentContext context) {\n");
+        source.append(body);
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+}
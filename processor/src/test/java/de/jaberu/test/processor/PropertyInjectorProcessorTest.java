@@ -0,0 +1,136 @@
+package de.jaberu.test.processor;
+
+import de.jaberu.test.Converter;
+import de.jaberu.test.Converters;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Compiles test classes with the processor and runs them with the generated injectors.
+ */
+public class PropertyInjectorProcessorTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String SAMPLE = "package sample;\n"
+            + "import de.jaberu.test.*;\n"
+            + "import org.junit.*;\n"
+            + "import org.junit.runner.RunWith;\n"
+            + "import java.util.List;\n"
+            + "@RunWith(EnvironmentTestRunner.class)\n"
+            + "@ResourceBundle(\"sample\")\n"
+            + "public class SampleTest extends BaseTest {\n"
+            + "    @PropertyValue(\"sample.int\") int number;\n"
+            + "    @PropertyValue(\"sample.missing\") long missing = 7;\n"
+            + "    @PropertyValue(\"sample.boolean\") Boolean flag;\n"
+            + "    @PropertyValue(\"sample.list\") List<Integer> list;\n"
+            + "    @PropertyValue(\"sample.char\") char character;\n"
+            + "    @PropertyValue(\"sample.short\") Short hex;\n"
+            + "    @PropertyValue(\"stage\") String stage;\n"
+            + "    @Test public void testInjected() throws Exception {\n"
+            + "        Class.forName(\"sample.SampleTest$$PropertyInjector\");\n"
+            + "        Assert.assertEquals(42, number);\n"
+            + "        Assert.assertEquals(7, missing);\n"
+            + "        Assert.assertEquals(Boolean.TRUE, flag);\n"
+            + "        Assert.assertEquals(java.util.Arrays.asList(1, 2, 3), list);\n"
+            + "        Assert.assertEquals('x', character);\n"
+            + "        Assert.assertEquals(Short.valueOf((short) 16), hex);\n"
+            + "        Assert.assertEquals(\"base\", text);\n"
+            + "        Assert.assertNull(stage);\n"
+            + "    }\n"
+            + "}\n";
+
+    private static final String BASE = "package sample;\n"
+            + "import de.jaberu.test.*;\n"
+            + "public abstract class BaseTest {\n"
+            + "    @PropertyValue(\"sample.text\") protected String text;\n"
+            + "}\n";
+
+    private static final String PRIVATE = "package sample;\n"
+            + "import de.jaberu.test.*;\n"
+            + "@ResourceBundle(\"sample\")\n"
+            + "public class PrivateTest {\n"
+            + "    @PropertyValue(\"sample.int\") private int number;\n"
+            + "}\n";
+
+    @Test
+    public void testGeneratedInjector() throws Exception {
+        File output = compile("SampleTest", SAMPLE, "BaseTest", BASE);
+        Assert.assertTrue(new File(output, "sample/SampleTest$$PropertyInjector.class").isFile());
+        Assert.assertFalse(new File(output, "sample/BaseTest$$PropertyInjector.class").exists());
+        write(new File(output, "sample.properties"), "sample.int=42\nsample.boolean=true\nsample.list=1,2,3\n"
+                + "sample.char=x\nsample.short=0x10\nsample.text=base\n");
+
+        // a registered converter must be preferred over the built-in parsing of wrappers
+        Converters.register(Short.class, new Converter<Short>() {
+            public Short convert(String value) {
+                return Short.decode(value.trim());
+            }
+        });
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            Result result = new JUnitCore().run(loader.loadClass("sample.SampleTest"));
+            Assert.assertEquals(String.valueOf(result.getFailures()), 0, result.getFailureCount());
+            Assert.assertEquals(1, result.getRunCount());
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testPrivateField() throws Exception {
+        File output = compile("PrivateTest", PRIVATE);
+        Assert.assertTrue(new File(output, "sample/PrivateTest.class").isFile());
+        Assert.assertFalse(new File(output, "sample/PrivateTest$$PropertyInjector.class").exists());
+    }
+
+    /**
+     * @param sources pairs of class name and source code
+     * @return the directory of the compiled classes
+     */
+    private File compile(String... sources) throws IOException {
+        File sourceDirectory = folder.newFolder("src", "sample");
+        File output = folder.newFolder("classes");
+        File[] files = new File[sources.length / 2];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(sourceDirectory, sources[i * 2] + ".java");
+            write(files[i], sources[i * 2 + 1]);
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", output.getPath()),
+                    null, fileManager.getJavaFileObjects(files));
+            task.setProcessors(Collections.singletonList(new PropertyInjectorProcessor()));
+            Assert.assertTrue(String.valueOf(diagnostics.getDiagnostics()), task.call());
+        } finally {
+            fileManager.close();
+        }
+        return output;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,243 @@
+package de.jaberu.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Index of all <code>.properties</code> files visible to a class loader. The index is built once per class loader
+ * by a single pass over its classpath directories and jars, including the jars referenced by the
+ * <code>Class-Path</code> of a manifest (like the manifest-only jar of surefire). So looking for a stage or
+ * publication specific layer of a bundle, what mostly does not exist, needs no class loader lookup.
+ * <p>
+ * The index is only available for class loaders whose classpath is known: the system class loader and
+ * {@link URLClassLoader}s with file URLs. For all others the resources are looked up by the class loader.
+ * The classpath of the system class loader is only known to be complete without module path and without
+ * java agents, since an agent can append jars by <code>Instrumentation.appendToSystemClassLoaderSearch</code>,
+ * what is not reflected by <code>java.class.path</code>.
+ */
+final class BundleIndex {
+
+    private static final String PROPERTIES = ".properties";
+
+    private static final Map<ClassLoader, BundleIndex> indexes = new WeakHashMap<ClassLoader, BundleIndex>();
+
+    /**
+     * marks class loaders without index in the map
+     */
+    private static final BundleIndex NONE = new BundleIndex(Collections.<String>emptySet());
+
+    private final Set<String> resources;
+
+    private BundleIndex(Set<String> resources) {
+        this.resources = resources;
+    }
+
+    /**
+     * @param loader the class loader
+     * @return the index of the class loader, null if its classpath is not known
+     */
+    static BundleIndex forLoader(ClassLoader loader) {
+        if (loader == null) {
+            return null;
+        }
+        BundleIndex index;
+        synchronized (indexes) {
+            index = indexes.get(loader);
+        }
+        if (index == null) {
+            // built outside of the lock, in the worst case twice
+            List<File> roots = getRoots(loader);
+            index = roots != null ? build(roots) : NONE;
+            synchronized (indexes) {
+                indexes.put(loader, index);
+            }
+        }
+        return index != NONE ? index : null;
+    }
+
+    /**
+     * Drops all indexes, e.g. since files in classpath directories changed.
+     */
+    static void clear() {
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    /**
+     * @param resource the resource name, with or without leading slash
+     * @return true if the resource exists
+     */
+    boolean contains(String resource) {
+        return resources.contains(resource.startsWith("/") ? resource.substring(1) : resource);
+    }
+
+    /**
+     * Finds the publications of a stage, what are the directories below the stage directory containing one of the
+     * bundles of the test class or its superclasses.
+     *
+     * @param testClass the test class
+     * @param stage     the stage
+     * @return the sorted publication names, null if the classpath of a class loader is not known
+     */
+    static List<String> findPublications(Class<?> testClass, String stage) {
+        Set<String> publications = new TreeSet<String>();
+        String prefix = stage.toLowerCase() + "/";
+        for (ReflectionUtils.Bundle bundle : ReflectionUtils.getBundles(testClass)) {
+            BundleIndex index = forLoader(bundle.getDeclaringClass().getClassLoader());
+            if (index == null) {
+                return null;
+            }
+            String suffix = "/" + bundle.getName() + PROPERTIES;
+            for (String path : index.resources) {
+                if (path.startsWith(prefix) && path.endsWith(suffix) && path.length() > prefix.length() + suffix.length()) {
+                    String publication = path.substring(prefix.length(), path.length() - suffix.length());
+                    if (publication.indexOf('/') < 0) {
+                        publications.add(publication);
+                    }
+                }
+            }
+        }
+        return new ArrayList<String>(publications);
+    }
+
+    /**
+     * @return the classpath directories and jars of the class loader and its parents, null if not known
+     */
+    private static List<File> getRoots(ClassLoader loader) {
+        ClassLoader system = ClassLoader.getSystemClassLoader();
+        ClassLoader platform = system.getParent();
+        Set<File> roots = new LinkedHashSet<File>();
+        for (ClassLoader current = loader; current != null && current != platform; current = current.getParent()) {
+            if (current instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) current).getURLs()) {
+                    if (!"file".equals(url.getProtocol())) {
+                        return null;
+                    }
+                    try {
+                        roots.add(new File(url.toURI()));
+                    } catch (URISyntaxException use) {
+                        return null;
+                    } catch (IllegalArgumentException iae) {
+                        return null;
+                    }
+                }
+            } else if (current == system) {
+                if (!isClassPathComplete()) {
+                    return null;
+                }
+                for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                    if (path.length() > 0) {
+                        roots.add(new File(path));
+                    }
+                }
+            } else {
+                return null;
+            }
+        }
+        return new ArrayList<File>(roots);
+    }
+
+    /**
+     * @return true if <code>java.class.path</code> contains all roots of the system class loader
+     */
+    private static boolean isClassPathComplete() {
+        if (System.getProperty("jdk.module.path") != null) {
+            return false;
+        }
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-javaagent:")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BundleIndex build(List<File> roots) {
+        Set<String> resources = new HashSet<String>();
+        Set<File> visited = new HashSet<File>();
+        List<File> pending = new ArrayList<File>(roots);
+        for (int i = 0; i < pending.size(); i++) {
+            File root = pending.get(i).getAbsoluteFile();
+            if (!visited.add(root)) {
+                continue;
+            }
+            if (root.isDirectory()) {
+                addDirectory(root, "", resources);
+            } else if (root.isFile()) {
+                try {
+                    addJar(root, resources, pending);
+                } catch (IOException ioe) {
+                    // unreadable jar, the class loader will not find anything there either
+                }
+            }
+        }
+        return new BundleIndex(resources);
+    }
+
+    private static void addDirectory(File directory, String path, Set<String> resources) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectory(file, path + file.getName() + "/", resources);
+            } else if (file.getName().endsWith(PROPERTIES)) {
+                resources.add(path + file.getName());
+            }
+        }
+    }
+
+    private static void addJar(File jar, Set<String> resources, List<File> pending) throws IOException {
+        JarFile jarFile = new JarFile(jar);
+        try {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(PROPERTIES)) {
+                    resources.add(name);
+                }
+            }
+            Manifest manifest = jarFile.getManifest();
+            String classPath = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+            if (classPath != null) {
+                for (String entry : classPath.trim().split("\\s+")) {
+                    if (entry.length() == 0) {
+                        continue;
+                    }
+                    try {
+                        URL url = new URL(jar.toURI().toURL(), entry);
+                        if ("file".equals(url.getProtocol())) {
+                            pending.add(new File(url.toURI()));
+                        }
+                    } catch (IOException ioe) {
+                        // malformed entry, ignored by the class loader too
+                    } catch (URISyntaxException use) {
+                        // malformed entry, ignored by the class loader too
+                    }
+                }
+            }
+        } finally {
+            jarFile.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package de.jaberu.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches the directories of the loaded resource bundles for changes. If a bundle layer is changed,
+ * created or deleted, the affected bundles are removed from the {@link PropertyCache}, so tests started
+ * afterwards load the new values. Only the changed bundles are loaded again, all others stay cached.
+ * <p>
+ * The watcher is meant for long-running JVMs like IDE or continuous test sessions and is enabled by the
+ * {@value Environment#WATCH_BUNDLES} system property. Bundles inside of jar files cannot be watched.
+ */
+final class BundleWatcher {
+
+    private static BundleWatcher instance;
+
+    private final WatchService watchService;
+
+    /**
+     * all files a bundle is loaded from or would be loaded from if they existed, with their cache keys
+     */
+    private final Map<Path, Set<Object>> layers = new HashMap<Path, Set<Object>>();
+
+    private final Set<Path> directories = new HashSet<Path>();
+
+    private BundleWatcher() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        }, "bundle-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return true if the watcher is enabled by system property
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean(Environment.WATCH_BUNDLES);
+    }
+
+    /**
+     * Watches the layers of a bundle just loaded into the cache.
+     *
+     * @param key         the cache key of the bundle
+     * @param loader      class used to load the bundle
+     * @param resource    the bundle name
+     * @param stage       the stage, can be null
+     * @param publication the publication, can be null
+     */
+    static void watch(Object key, Class<?> loader, String resource, String stage, String publication) {
+        URL base = loader.getResource("/" + resource + ".properties");
+        if (base == null || !"file".equals(base.getProtocol())) {
+            return;
+        }
+        Path root;
+        try {
+            root = new File(base.toURI()).toPath().getParent();
+            for (int i = 0; i < resource.split("/").length - 1; i++) {
+                root = root.getParent();
+            }
+        } catch (URISyntaxException use) {
+            return;
+        }
+        BundleWatcher watcher;
+        synchronized (BundleWatcher.class) {
+            if (instance == null) {
+                try {
+                    instance = new BundleWatcher();
+                } catch (IOException ioe) {
+                    // file system without watch support
+                    return;
+                }
+            }
+            watcher = instance;
+        }
+        watcher.register(key, root, root.resolve(resource + ".properties"));
+        if (stage != null) {
+            Path stageDirectory = root.resolve(stage.toLowerCase());
+            watcher.register(key, stageDirectory, stageDirectory.resolve(resource + ".properties"));
+            if (publication != null) {
+                Path publicationDirectory = stageDirectory.resolve(publication.toLowerCase());
+                watcher.register(key, publicationDirectory, publicationDirectory.resolve(resource + ".properties"));
+            }
+        }
+    }
+
+    /**
+     * Registers the directory of a layer. If the directory does not exist yet, the nearest existing
+     * parent is watched, so creating the directory is noticed too.
+     */
+    private synchronized void register(Object key, Path directory, Path layer) {
+        Set<Object> keys = layers.get(layer);
+        if (keys == null) {
+            keys = new HashSet<Object>();
+            layers.put(layer, keys);
+        }
+        keys.add(key);
+        Path watched = directory;
+        while (watched != null && !watched.toFile().isDirectory()) {
+            watched = watched.getParent();
+        }
+        if (watched != null && directories.add(watched)) {
+            try {
+                watched.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException ioe) {
+                directories.remove(watched);
+            }
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException ie) {
+                return;
+            }
+            Path directory = (Path) watchKey.watchable();
+            for (WatchEvent<?> event : watchKey.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    PropertyCache.clear();
+                } else {
+                    changed(directory.resolve((Path) event.context()));
+                }
+            }
+            if (!watchKey.reset()) {
+                synchronized (this) {
+                    directories.remove(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates all bundles with a layer at or below the changed path. A created directory might
+     * contain layers not existing before.
+     */
+    private void changed(Path changed) {
+        Set<Object> invalid = new HashSet<Object>();
+        synchronized (this) {
+            for (Map.Entry<Path, Set<Object>> layer : layers.entrySet()) {
+                if (layer.getKey().startsWith(changed)) {
+                    invalid.addAll(layer.getValue());
+                }
+            }
+        }
+        for (Object key : invalid) {
+            PropertyCache.invalidate(key);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package de.jaberu.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stops running the test methods for a publication if its test system seems to be broken. After the
+ * given number of test methods failed one after another for the same stage and publication, all
+ * further test methods for it are skipped. The skipped methods are reported with the failure that
+ * opened the breaker as cause. Other publications are not affected.
+ *
+ * The breaker is shared by all test classes using it, so if one test class detected a broken system,
+ * the following test classes skip it right away. A breaker once opened stays open until the JVM ends.
+ *
+ * The number of failures can also be given by the {@value Environment#CIRCUIT_BREAKER} system property,
+ * what overrides the annotation value and also enables the breaker for classes without this annotation.
+ *
+ * This annotation only works if the {@link EnvironmentTestRunner} is used.
+ *
+ * @see EnvironmentTestRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CircuitBreaker {
+
+    /**
+     * @return number of test methods failing one after another before the breaker opens
+     */
+    int value() default 3;
+}
@@ -0,0 +1,72 @@
+package de.jaberu.test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the state of the {@link CircuitBreaker} for each stage and publication.
+ */
+final class CircuitBreakers {
+
+    private static final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+
+    private CircuitBreakers() {}
+
+    /**
+     * @param stage       the stage, can be null
+     * @param publication the publication, can be null
+     * @return the breaker for the given environment
+     */
+    static Breaker get(String stage, String publication) {
+        String key = stage + "/" + publication;
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            Breaker created = new Breaker();
+            breaker = breakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Counts the failures of test methods one after another. Methods running in parallel are counted in
+     * the order they finish.
+     */
+    static class Breaker {
+
+        private int failures;
+        private Throwable cause;
+
+        /**
+         * A successful test method resets the failure count, except the breaker is already open.
+         */
+        synchronized void success() {
+            if (cause == null) {
+                failures = 0;
+            }
+        }
+
+        /**
+         * @param failure   the failure of a test method
+         * @param threshold number of failures opening the breaker
+         */
+        synchronized void failure(Throwable failure, int threshold) {
+            if (cause == null && ++failures >= threshold) {
+                cause = failure;
+            }
+        }
+
+        /**
+         * @return the failure opening the breaker, null if the breaker is closed
+         */
+        synchronized Throwable getCause() {
+            return cause;
+        }
+
+        synchronized int getFailures() {
+            return failures;
+        }
+    }
+}
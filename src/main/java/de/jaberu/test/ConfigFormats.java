@@ -0,0 +1,430 @@
+package de.jaberu.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parsers for the configuration files of the {@link PropertySource}s. Nested JSON objects and YAML maps are
+ * flattened to dotted keys, so <code>{"test": {"key": "a"}}</code> is the property <code>test.key</code>.
+ * Lists of scalars become comma-separated values, like they are expected by the list and array converters.
+ * Maps in lists get the index in the list, so <code>{"servers": [{"host": "a"}]}</code> is the property
+ * <code>servers[0].host</code>.
+ * <p>
+ * For YAML only block and flow style maps and lists and plain or quoted scalars are supported, what covers
+ * usual configuration files. Flow style collections must end on the same line. Other constructs like block
+ * scalars, anchors and tags are rejected.
+ */
+final class ConfigFormats {
+
+    private ConfigFormats() {}
+
+    /**
+     * @param content   the file content
+     * @param format    <code>json</code>, <code>yaml</code>, <code>yml</code> or <code>properties</code>
+     * @param source    name of the file for error messages
+     * @return the flattened values
+     * @throws IOException if the content is malformed
+     */
+    static Map<String, String> parse(byte[] content, String format, String source) throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
+        if ("json".equals(format)) {
+            new JsonParser(new String(content, "UTF-8"), source, false).parse("", values);
+        } else if ("yaml".equals(format) || "yml".equals(format)) {
+            parseYaml(new String(content, "UTF-8"), source, values);
+        } else {
+            PropertiesLoader.parse(content, values);
+        }
+        return values;
+    }
+
+    /**
+     * @param name file name
+     * @return the format to use for {@link #parse(byte[], String, String)}
+     */
+    static String getFormat(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".json")) {
+            return "json";
+        }
+        if (lower.endsWith(".yaml") || lower.endsWith(".yml")) {
+            return "yaml";
+        }
+        return "properties";
+    }
+
+    /**
+     * @param contentType content type, e.g. <code>application/json</code> or <code>application/x-yaml</code>
+     * @return the format to use for {@link #parse(byte[], String, String)}, null if not known by the content type
+     */
+    static String getContentFormat(String contentType) {
+        String lower = contentType.toLowerCase();
+        int parameters = lower.indexOf(';');
+        if (parameters >= 0) {
+            lower = lower.substring(0, parameters).trim();
+        }
+        if (lower.endsWith("/json") || lower.endsWith("+json")) {
+            return "json";
+        }
+        if (lower.endsWith("/yaml") || lower.endsWith("/x-yaml") || lower.endsWith("+yaml")) {
+            return "yaml";
+        }
+        return null;
+    }
+
+    /**
+     * Parses JSON, or YAML flow style collections what are JSON with plain and single quoted scalars.
+     */
+    private static final class JsonParser {
+        private final String text;
+        private final String source;
+        private final boolean flow;
+        private int position;
+
+        JsonParser(String text, String source, boolean flow) {
+            this.text = text;
+            this.source = source;
+            this.flow = flow;
+        }
+
+        /**
+         * @return the value if it is no object, null otherwise
+         */
+        String parse(String prefix, Map<String, String> values) throws IOException {
+            skipWhiteSpace();
+            String value = readValue(prefix, values);
+            skipWhiteSpace();
+            if (position < text.length()) {
+                throw error("unexpected content");
+            }
+            return value;
+        }
+
+        /**
+         * Reads a value, objects are flattened into the map, everything else is returned as string.
+         */
+        private String readValue(String prefix, Map<String, String> values) throws IOException {
+            if (position >= text.length()) {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(position);
+            if (c == '{') {
+                position++;
+                skipWhiteSpace();
+                if (peek('}')) {
+                    return null;
+                }
+                do {
+                    skipWhiteSpace();
+                    String key = readKey();
+                    skipWhiteSpace();
+                    expect(':');
+                    skipWhiteSpace();
+                    String path = prefix.length() > 0 ? prefix + "." + key : key;
+                    String value = readValue(path, values);
+                    if (value != null) {
+                        values.put(path, value);
+                    }
+                    skipWhiteSpace();
+                } while (peek(','));
+                expect('}');
+                return null;
+            }
+            if (c == '[') {
+                position++;
+                StringBuilder list = new StringBuilder();
+                skipWhiteSpace();
+                if (peek(']')) {
+                    return "";
+                }
+                int index = 0;
+                do {
+                    skipWhiteSpace();
+                    // objects in the list are flattened with their index
+                    String value = readValue(prefix + "[" + index++ + "]", values);
+                    if (value != null) {
+                        if (list.length() > 0) {
+                            list.append(',');
+                        }
+                        list.append(value);
+                    }
+                    skipWhiteSpace();
+                } while (peek(','));
+                expect(']');
+                return list.toString();
+            }
+            if (c == '"') {
+                return readString();
+            }
+            if (flow && c == '\'') {
+                return readSingleQuoted();
+            }
+            int start = position;
+            String stops = flow ? ",}]" : ",}] \t\r\n";
+            while (position < text.length() && stops.indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position).trim();
+            if (literal.length() == 0) {
+                throw error("value expected");
+            }
+            return "null".equals(literal) || flow && "~".equals(literal) ? null : literal;
+        }
+
+        private String readKey() throws IOException {
+            if (!flow || position < text.length() && text.charAt(position) == '"') {
+                return readString();
+            }
+            if (position < text.length() && text.charAt(position) == '\'') {
+                return readSingleQuoted();
+            }
+            int start = position;
+            while (position < text.length() && text.charAt(position) != ':') {
+                if (",{}[]".indexOf(text.charAt(position)) >= 0) {
+                    throw error("':' expected");
+                }
+                position++;
+            }
+            return text.substring(start, position).trim();
+        }
+
+        private String readSingleQuoted() throws IOException {
+            expect('\'');
+            StringBuilder builder = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c != '\'') {
+                    builder.append(c);
+                } else if (peek('\'')) {
+                    // '' is an escaped quote
+                    builder.append(c);
+                } else {
+                    return builder.toString();
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("malformed unicode escape");
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException nfe) {
+                            throw error("malformed unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        builder.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private boolean peek(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!peek(c)) {
+                throw error("'" + c + "' expected");
+            }
+        }
+
+        private void skipWhiteSpace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at position " + position + " of " + source);
+        }
+    }
+
+    private static void parseYaml(String text, String source, Map<String, String> values) throws IOException {
+        // the open maps and lists by the indentation of their content, the innermost last
+        List<Integer> indents = new ArrayList<Integer>();
+        List<String> paths = new ArrayList<String>();
+        // the paths having keys, what cannot have list items
+        Set<String> maps = new HashSet<String>();
+        // the number of items of the lists
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        int lineNumber = 0;
+        for (String rawLine : text.split("\r\n|\r|\n")) {
+            lineNumber++;
+            String line = stripComment(rawLine);
+            if (line.trim().length() == 0 || line.trim().equals("---")) {
+                continue;
+            }
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == ' ') {
+                indent++;
+            }
+            String content = line.trim();
+            String location = "line " + lineNumber + " of " + source;
+            if (content.startsWith("- ") || content.equals("-")) {
+                // items may have the same indentation like the key of the list
+                while (!indents.isEmpty() && indents.get(indents.size() - 1) > indent) {
+                    indents.remove(indents.size() - 1);
+                    paths.remove(paths.size() - 1);
+                }
+                String listKey = paths.isEmpty() ? null : paths.get(paths.size() - 1);
+                if (listKey == null || maps.contains(listKey)) {
+                    throw new IOException("list item without key in " + location);
+                }
+                Integer size = sizes.get(listKey);
+                int index = size != null ? size : 0;
+                sizes.put(listKey, index + 1);
+                String item = content.substring(1).trim();
+                String itemPath = listKey + "[" + index + "]";
+                if (item.startsWith("{") || item.startsWith("[") || findColon(item) < 0) {
+                    String value = parseYamlValue(item, itemPath, location, values);
+                    if (value != null) {
+                        String list = values.get(listKey);
+                        values.put(listKey, list == null || list.length() == 0 ? value : list + "," + value);
+                    }
+                    continue;
+                }
+                // a map as item, its first key follows the dash, the other keys are aligned with it
+                indent += content.length() - item.length();
+                indents.add(indent - 1);
+                paths.add(itemPath);
+                content = item;
+            }
+            int colon = findColon(content);
+            if (colon < 0) {
+                throw new IOException("key expected in " + location);
+            }
+            while (!indents.isEmpty() && indents.get(indents.size() - 1) >= indent) {
+                indents.remove(indents.size() - 1);
+                paths.remove(paths.size() - 1);
+            }
+            String key = unquote(content.substring(0, colon).trim());
+            String parent = paths.isEmpty() ? null : paths.get(paths.size() - 1);
+            if (parent != null) {
+                if (sizes.containsKey(parent)) {
+                    throw new IOException("key in list in " + location);
+                }
+                maps.add(parent);
+            }
+            String path = parent == null ? key : parent + "." + key;
+            String value = content.substring(colon + 1).trim();
+            if (value.length() == 0) {
+                // nested map or block list follows
+                indents.add(indent);
+                paths.add(path);
+            } else {
+                value = parseYamlValue(value, path, location, values);
+                if (value != null) {
+                    values.put(path, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value    the value of a key or list item, not empty
+     * @param path     the path of the value, flow maps are flattened into the values
+     * @param location line and source for error messages
+     * @return the scalar or list value, null if null or a map
+     * @throws IOException if the value is malformed or not supported
+     */
+    private static String parseYamlValue(String value, String path, String location, Map<String, String> values) throws IOException {
+        if (value.startsWith("{") || value.startsWith("[")) {
+            return new JsonParser(value, location, true).parse(path, values);
+        }
+        if ("|>&*!".indexOf(value.charAt(0)) >= 0) {
+            // block scalars, anchors, aliases and tags
+            throw new IOException("unsupported value " + value + " in " + location);
+        }
+        return "~".equals(value) || "null".equals(value) ? null : unquote(value);
+    }
+
+    /**
+     * @return the index of the colon separating key and value, -1 if there is none
+     */
+    private static int findColon(String content) {
+        char quote = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == ':' && (i + 1 == content.length() || content.charAt(i + 1) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripComment(String line) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '#' && (i == 0 || line.charAt(i - 1) == ' ')) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+                || value.startsWith("'") && value.endsWith("'"))) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
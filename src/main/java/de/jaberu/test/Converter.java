@@ -0,0 +1,20 @@
+package de.jaberu.test;
+
+/**
+ * Converts the string value of a property into the type of the field annotated by {@link PropertyValue}.
+ *
+ * Converters must be thread-safe and should not keep state, since the converted values are cached
+ * and shared by all test methods.
+ *
+ * @param <T> the target type
+ * @see Converters
+ */
+public interface Converter<T> {
+
+    /**
+     * @param value the property value, never null
+     * @return the converted value
+     * @throws IllegalArgumentException if the value cannot be converted
+     */
+    T convert(String value);
+}
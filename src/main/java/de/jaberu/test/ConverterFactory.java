@@ -0,0 +1,20 @@
+package de.jaberu.test;
+
+import java.lang.reflect.Type;
+
+/**
+ * Creates converters for a family of types, e.g. all enums. Factories can be registered by
+ * {@link Converters#register(ConverterFactory)} or as service by a
+ * <code>META-INF/services/de.jaberu.test.ConverterFactory</code> file on the classpath.
+ *
+ * @see Converters
+ */
+public interface ConverterFactory {
+
+    /**
+     * @param type        the raw field type
+     * @param genericType the generic field type, e.g. to know the element type of a list
+     * @return the converter for the type, null if the type is not supported by this factory
+     */
+    Converter<?> create(Class<?> type, Type genericType);
+}
@@ -0,0 +1,369 @@
+package de.jaberu.test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The registry of all converters for {@link PropertyValue} fields.
+ * <p>
+ * Out of the box we support strings (also as supertype like {@link CharSequence}), the primitive types and
+ * their wrappers, {@link BigDecimal}, {@link BigInteger}, {@link URI}, {@link Duration} (ISO-8601 like
+ * <code>PT10S</code> or plain milliseconds), enums (by constant name, ignoring case) and arrays, lists and
+ * sets of those as comma-separated values.
+ * Further types can be added by {@link #register(Class, Converter)}, by {@link #register(ConverterFactory)}
+ * or by a {@link ConverterFactory} service. Registered converters are preferred over the built-in ones.
+ * <p>
+ * The converter of a field is chosen once when the test class is analysed. Each converter caches its
+ * results by the raw value, so every distinct value is only parsed once for all test methods. Arrays
+ * are copied for each test, since they could be changed by a test, lists and sets are unmodifiable.
+ */
+public final class Converters {
+
+    private static final List<ConverterFactory> factories = new CopyOnWriteArrayList<ConverterFactory>();
+
+    private static final ConcurrentMap<Type, Converter<?>> converters = new ConcurrentHashMap<Type, Converter<?>>();
+
+    private static final Map<Class<?>, Converter<?>> basics = new HashMap<Class<?>, Converter<?>>();
+
+    /**
+     * bounds the cache of each converter, values beyond are converted each time
+     */
+    private static final int MAX_CACHED_VALUES = 1024;
+
+    static {
+        Converter<Integer> integerConverter = new Converter<Integer>() {
+            public Integer convert(String value) {
+                return Integer.valueOf(value.trim());
+            }
+        };
+        Converter<Long> longConverter = new Converter<Long>() {
+            public Long convert(String value) {
+                return Long.valueOf(value.trim());
+            }
+        };
+        Converter<Short> shortConverter = new Converter<Short>() {
+            public Short convert(String value) {
+                return Short.valueOf(value.trim());
+            }
+        };
+        Converter<Byte> byteConverter = new Converter<Byte>() {
+            public Byte convert(String value) {
+                return Byte.valueOf(value.trim());
+            }
+        };
+        Converter<Double> doubleConverter = new Converter<Double>() {
+            public Double convert(String value) {
+                return Double.valueOf(value.trim());
+            }
+        };
+        Converter<Float> floatConverter = new Converter<Float>() {
+            public Float convert(String value) {
+                return Float.valueOf(value.trim());
+            }
+        };
+        Converter<Boolean> booleanConverter = new Converter<Boolean>() {
+            public Boolean convert(String value) {
+                return Boolean.parseBoolean(value.trim());
+            }
+        };
+        Converter<Character> characterConverter = new Converter<Character>() {
+            public Character convert(String value) {
+                if (value.length() != 1) {
+                    throw new IllegalArgumentException("not a single character: " + value);
+                }
+                return value.charAt(0);
+            }
+        };
+        basics.put(String.class, new Converter<String>() {
+            public String convert(String value) {
+                return value;
+            }
+        });
+        basics.put(Object.class, basics.get(String.class));
+        basics.put(Integer.class, integerConverter);
+        basics.put(int.class, integerConverter);
+        basics.put(Long.class, longConverter);
+        basics.put(long.class, longConverter);
+        basics.put(Short.class, shortConverter);
+        basics.put(short.class, shortConverter);
+        basics.put(Byte.class, byteConverter);
+        basics.put(byte.class, byteConverter);
+        basics.put(Double.class, doubleConverter);
+        basics.put(double.class, doubleConverter);
+        basics.put(Float.class, floatConverter);
+        basics.put(float.class, floatConverter);
+        basics.put(Boolean.class, booleanConverter);
+        basics.put(boolean.class, booleanConverter);
+        basics.put(Character.class, characterConverter);
+        basics.put(char.class, characterConverter);
+        basics.put(BigDecimal.class, new Converter<BigDecimal>() {
+            public BigDecimal convert(String value) {
+                return new BigDecimal(value.trim());
+            }
+        });
+        basics.put(BigInteger.class, new Converter<BigInteger>() {
+            public BigInteger convert(String value) {
+                return new BigInteger(value.trim());
+            }
+        });
+        basics.put(URI.class, new Converter<URI>() {
+            public URI convert(String value) {
+                return URI.create(value.trim());
+            }
+        });
+        basics.put(Duration.class, new Converter<Duration>() {
+            public Duration convert(String value) {
+                String trimmed = value.trim();
+                if (trimmed.length() > 0 && Character.isDigit(trimmed.charAt(0))) {
+                    return Duration.ofMillis(Long.parseLong(trimmed));
+                }
+                return Duration.parse(trimmed);
+            }
+        });
+        for (ConverterFactory factory : ServiceLoader.load(ConverterFactory.class, Converters.class.getClassLoader())) {
+            factories.add(factory);
+        }
+    }
+
+    private Converters() {}
+
+    /**
+     * Registers a converter for exactly the given type. Must be done before the first test class using
+     * the type is analysed.
+     *
+     * @param type      the field type
+     * @param converter the converter
+     * @param <T>       the field type
+     */
+    public static <T> void register(final Class<T> type, final Converter<? extends T> converter) {
+        register(new ConverterFactory() {
+            public Converter<?> create(Class<?> fieldType, Type genericType) {
+                return type.equals(fieldType) ? converter : null;
+            }
+        });
+    }
+
+    /**
+     * Registers a factory, preferred over the factories registered before.
+     *
+     * @param factory the factory
+     */
+    public static void register(ConverterFactory factory) {
+        factories.add(0, factory);
+        converters.clear();
+    }
+
+    /**
+     * Used by the generated {@link PropertyInjector}s to get the converter of a field once.
+     *
+     * @param declaringClass the class declaring the field
+     * @param name           the field name
+     * @return the caching converter for the field type
+     * @throws IllegalArgumentException if the field does not exist or no converter supports its type
+     */
+    public static Converter<?> forField(Class<?> declaringClass, String name) {
+        try {
+            return forField(declaringClass.getDeclaredField(name));
+        } catch (NoSuchFieldException nsfe) {
+            throw new IllegalArgumentException("no field " + name + " in " + declaringClass.getName(), nsfe);
+        }
+    }
+
+    /**
+     * @param field the field to inject into
+     * @return the caching converter for the field type
+     * @throws IllegalArgumentException if no converter supports the type
+     */
+    static Converter<?> forField(Field field) {
+        return forType(field.getType(), field.getGenericType());
+    }
+
+    /**
+     * @param type        the raw type
+     * @param genericType the generic type
+     * @return the caching converter for the type
+     * @throws IllegalArgumentException if no converter supports the type
+     */
+    static Converter<?> forType(Class<?> type, Type genericType) {
+        Converter<?> converter = converters.get(genericType);
+        if (converter == null) {
+            converter = create(type, genericType);
+            converter = type.isArray() ? new ArrayCopyingConverter(new CachingConverter(converter))
+                    : new CachingConverter(converter);
+            Converter<?> existing = converters.putIfAbsent(genericType, converter);
+            if (existing != null) {
+                converter = existing;
+            }
+        }
+        return converter;
+    }
+
+    private static Converter<?> create(Class<?> type, Type genericType) {
+        for (ConverterFactory factory : factories) {
+            Converter<?> converter = factory.create(type, genericType);
+            if (converter != null) {
+                return converter;
+            }
+        }
+        Converter<?> converter = basics.get(type);
+        if (converter != null) {
+            return converter;
+        }
+        if (type.isEnum()) {
+            return new EnumConverter(type);
+        }
+        if (type.isArray()) {
+            return new ArrayConverter(type.getComponentType(), create(type.getComponentType(), type.getComponentType()));
+        }
+        if (type == List.class || type == Collection.class || type == Iterable.class || type == Set.class) {
+            Type elementType = String.class;
+            if (genericType instanceof ParameterizedType) {
+                elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            }
+            if (!(elementType instanceof Class)) {
+                throw new IllegalArgumentException("unsupported element type " + elementType);
+            }
+            Class<?> elementClass = (Class<?>) elementType;
+            return new CollectionConverter(type == Set.class, create(elementClass, elementClass));
+        }
+        if (type.isAssignableFrom(String.class)) {
+            // e.g. CharSequence or Comparable<String>, the value itself fits
+            return basics.get(String.class);
+        }
+        throw new IllegalArgumentException("no converter for type " + genericType);
+    }
+
+    /**
+     * @param value comma-separated values
+     * @return the trimmed values, empty if the value is blank
+     */
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<String>();
+        if (value.trim().length() > 0) {
+            for (String part : value.split(",")) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    private static class CachingConverter implements Converter<Object> {
+
+        private final Converter<?> converter;
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+
+        CachingConverter(Converter<?> converter) {
+            this.converter = converter;
+        }
+
+        public Object convert(String value) {
+            Object converted = values.get(value);
+            if (converted == null) {
+                converted = converter.convert(value);
+                if (converted != null && values.size() < MAX_CACHED_VALUES) {
+                    values.putIfAbsent(value, converted);
+                }
+            }
+            return converted;
+        }
+    }
+
+    private static class ArrayCopyingConverter implements Converter<Object> {
+
+        private final Converter<?> converter;
+
+        ArrayCopyingConverter(Converter<?> converter) {
+            this.converter = converter;
+        }
+
+        public Object convert(String value) {
+            Object array = converter.convert(value);
+            int length = Array.getLength(array);
+            Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+            System.arraycopy(array, 0, copy, 0, length);
+            return copy;
+        }
+    }
+
+    private static class EnumConverter implements Converter<Object> {
+
+        private final Class<?> type;
+
+        EnumConverter(Class<?> type) {
+            this.type = type;
+        }
+
+        public Object convert(String value) {
+            String name = value.trim();
+            Object[] constants = type.getEnumConstants();
+            for (Object constant : constants) {
+                if (((Enum<?>) constant).name().equals(name)) {
+                    return constant;
+                }
+            }
+            for (Object constant : constants) {
+                if (((Enum<?>) constant).name().equalsIgnoreCase(name)) {
+                    return constant;
+                }
+            }
+            throw new IllegalArgumentException("no constant " + name + " in " + type.getName());
+        }
+    }
+
+    private static class ArrayConverter implements Converter<Object> {
+
+        private final Class<?> componentType;
+        private final Converter<?> converter;
+
+        ArrayConverter(Class<?> componentType, Converter<?> converter) {
+            this.componentType = componentType;
+            this.converter = converter;
+        }
+
+        public Object convert(String value) {
+            List<String> values = split(value);
+            Object array = Array.newInstance(componentType, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Array.set(array, i, converter.convert(values.get(i)));
+            }
+            return array;
+        }
+    }
+
+    private static class CollectionConverter implements Converter<Collection<Object>> {
+
+        private final boolean set;
+        private final Converter<?> converter;
+
+        CollectionConverter(boolean set, Converter<?> converter) {
+            this.set = set;
+            this.converter = converter;
+        }
+
+        public Collection<Object> convert(String value) {
+            Collection<Object> values = set ? new LinkedHashSet<Object>() : new ArrayList<Object>();
+            for (String part : split(value)) {
+                values.add(converter.convert(part));
+            }
+            return set ? Collections.unmodifiableSet((Set<Object>) values) : Collections.unmodifiableList((List<Object>) values);
+        }
+    }
+}
@@ -12,5 +12,99 @@ public final class Environment {
     public static final String PUBLICATION = "publication";
     public static final String STAGE = "stage";
 
+    /**
+     * Number of worker threads used to run the test methods of a class in parallel.
+     *
+     * @see Parallel
+     */
+    public static final String THREADS = "threads";
+
+    /**
+     * Value of the {@link #THREADS} system property to run each test method on an own virtual thread.
+     */
+    public static final String VIRTUAL = "virtual";
+
+    /**
+     * Maximum number of test methods running in parallel for one stage.
+     *
+     * @see Parallel#maxPerStage()
+     */
+    public static final String MAX_PER_STAGE = "maxPerStage";
+
+    /**
+     * Index of the shard to run (starting with 0), if the tests are split over several JVMs.
+     */
+    public static final String SHARD_INDEX = "shardIndex";
+
+    /**
+     * Number of shards the tests are split into.
+     */
+    public static final String SHARD_COUNT = "shardCount";
+
+    /**
+     * Directory of the test durations recorded by earlier runs.
+     */
+    public static final String TIMINGS = "timings";
+
+    /**
+     * Number of test methods failing one after another for a publication before the others are skipped.
+     *
+     * @see CircuitBreaker
+     */
+    public static final String CIRCUIT_BREAKER = "circuitBreaker";
+
+    /**
+     * Directory of the fingerprints of passed tests. If given, tests passed before with the same inputs are skipped.
+     */
+    public static final String RESULT_CACHE = "resultCache";
+
+    /**
+     * Maximum number of fingerprints kept in the {@link #RESULT_CACHE}.
+     */
+    public static final String RESULT_CACHE_SIZE = "resultCacheSize";
+
+    /**
+     * Maximum number of bundles kept by the {@link PropertyCache}.
+     */
+    public static final String PROPERTY_CACHE_SIZE = "propertyCacheSize";
+
+    /**
+     * If <code>true</code>, changes of the resource bundle files are watched and reloaded without restart.
+     */
+    public static final String WATCH_BUNDLES = "watchBundles";
+
+    /**
+     * The comma-separated list of {@link PropertySource}s in the order of their precedence,
+     * <code>system,bundle</code> by default.
+     */
+    public static final String SOURCES = "sources";
+
+    /**
+     * Milliseconds the values of file and HTTP sources are reused, <code>60000</code> by default.
+     */
+    public static final String SOURCE_TTL = "sourceTtl";
+
+    /**
+     * Expression selecting the test methods to create by stage, publication, method and class,
+     * e.g. <code>stage=dev &amp; publication in (a,b) &amp; method~login*</code>.
+     */
+    public static final String SELECT = "select";
+
+    /**
+     * File to write the summary of the time spent in each phase of the test methods to, when the JVM ends.
+     */
+    public static final String PHASE_REPORT = "phaseReport";
+
+    /**
+     * If <code>true</code>, the usage of the {@link PropertyCache} and the property keys is collected and
+     * registered as MBean <code>de.jaberu.test:type=PropertyMetrics</code>.
+     */
+    public static final String METRICS = "metrics";
+
+    /**
+     * File to write the collected {@link #METRICS} to as JSON, when the JVM ends. Enables the collection too.
+     */
+    public static final String METRICS_FILE = "metricsFile";
+
     private Environment() {}
 }
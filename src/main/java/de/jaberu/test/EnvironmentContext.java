@@ -0,0 +1,66 @@
+package de.jaberu.test;
+
+/**
+ * The environment a test method is executed in, what is the stage and the publication.
+ *
+ * The context is resolved once when the test methods are created and then travels with each
+ * test method. So test methods for different stages can run in the same JVM, even at the same
+ * time, without changing the system properties.
+ *
+ * @see EnvironmentFrameworkMethod
+ */
+public final class EnvironmentContext {
+
+    private final String stage;
+    private final String publication;
+
+    /**
+     * @param stage       the stage, can be null
+     * @param publication the publication, can be null
+     */
+    public EnvironmentContext(String stage, String publication) {
+        this.stage = stage;
+        this.publication = publication;
+    }
+
+    /**
+     * Reads the context from the {@value Environment#STAGE} and {@value Environment#PUBLICATION} system
+     * properties. That is only used for test classes setting those properties themselves.
+     *
+     * @return the context given by system properties
+     */
+    static EnvironmentContext fromSystemProperties() {
+        return new EnvironmentContext(System.getProperty(Environment.STAGE), System.getProperty(Environment.PUBLICATION));
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public String getPublication() {
+        return publication;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EnvironmentContext)) return false;
+
+        EnvironmentContext that = (EnvironmentContext) o;
+
+        if (stage != null ? !stage.equals(that.stage) : that.stage != null) return false;
+        return !(publication != null ? !publication.equals(that.publication) : that.publication != null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = stage != null ? stage.hashCode() : 0;
+        result = 31 * result + (publication != null ? publication.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return stage + "/" + publication;
+    }
+}
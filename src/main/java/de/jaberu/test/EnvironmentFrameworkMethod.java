@@ -10,17 +10,19 @@ import org.junit.runners.model.FrameworkMethod;
  */
 public class EnvironmentFrameworkMethod extends FrameworkMethod {
 
-    private String stage;
-    private String publication;
+    private final EnvironmentContext context;
 
     public EnvironmentFrameworkMethod(FrameworkMethod method, String stage) {
         this(method, stage, null);
     }
 
     public EnvironmentFrameworkMethod(FrameworkMethod method, String stage, String publication) {
+        this(method, new EnvironmentContext(stage, publication));
+    }
+
+    public EnvironmentFrameworkMethod(FrameworkMethod method, EnvironmentContext context) {
         super(method.getMethod());
-        this.publication = publication;
-        this.stage = stage;
+        this.context = context;
     }
 
     /**
@@ -33,6 +35,8 @@ public class EnvironmentFrameworkMethod extends FrameworkMethod {
     @Override
     public String getName() {
         StringBuilder builder = new StringBuilder(this.getMethod().getName());
+        String publication = getPublication();
+        String stage = getStage();
         if (publication != null) {
             builder.append(" for ").append(publication);
         }
@@ -42,12 +46,16 @@ public class EnvironmentFrameworkMethod extends FrameworkMethod {
         return builder.toString();
     }
 
+    public EnvironmentContext getContext() {
+        return context;
+    }
+
     public String getPublication() {
-        return publication;
+        return context.getPublication();
     }
 
     public String getStage() {
-        return stage;
+        return context.getStage();
     }
 
     @Override
@@ -0,0 +1,75 @@
+package de.jaberu.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The stages and publications to run the test methods for, given by the {@value Environment#STAGE} and
+ * {@value Environment#PUBLICATION} system properties. Both can be comma-separated lists, so all stages can
+ * be tested in one JVM. The publication <code>*</code> stands for all publications of the stage having a
+ * bundle of the test class.
+ */
+final class EnvironmentMatrix {
+
+    /**
+     * publication value to run all publication directories found for the stage
+     */
+    private static final String ALL_PUBLICATIONS = "*";
+
+    private EnvironmentMatrix() {}
+
+    /**
+     * @param testClass the test class, to look for its publications
+     * @return all combinations of the stages and publications given by system properties, null if neither is given
+     */
+    static List<EnvironmentContext> getContexts(Class<?> testClass) {
+        String stage = System.getProperty(Environment.STAGE);
+        String publication = System.getProperty(Environment.PUBLICATION);
+        if (stage == null && publication == null) {
+            return null;
+        }
+        List<EnvironmentContext> contexts = new ArrayList<EnvironmentContext>();
+        for (String stageName : split(stage)) {
+            List<String> publications = publication != null && ALL_PUBLICATIONS.equals(publication.trim())
+                    ? findPublications(testClass, stageName) : split(publication);
+            for (String publicationName : publications) {
+                contexts.add(new EnvironmentContext(stageName, publicationName));
+            }
+        }
+        return contexts;
+    }
+
+    /**
+     * @param testClass the test class
+     * @param stage     the stage, can be null
+     * @return all publication directories of the stage containing a bundle of the test class, or only null
+     *         if there is none
+     */
+    private static List<String> findPublications(Class<?> testClass, String stage) {
+        List<String> publications = stage != null ? BundleIndex.findPublications(testClass, stage) : null;
+        if (publications == null || publications.isEmpty()) {
+            publications = new ArrayList<String>();
+            publications.add(null);
+        }
+        return publications;
+    }
+
+    /**
+     * @param value comma-separated list, can be null
+     * @return the trimmed values, a list only containing null if no value was given
+     */
+    private static List<String> split(String value) {
+        List<String> values = new ArrayList<String>();
+        if (value != null) {
+            for (String part : value.split(",")) {
+                if (part.trim().length() > 0) {
+                    values.add(part.trim());
+                }
+            }
+        }
+        if (values.isEmpty()) {
+            values.add(null);
+        }
+        return values;
+    }
+}
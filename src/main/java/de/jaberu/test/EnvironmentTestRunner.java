@@ -1,21 +1,30 @@
 package de.jaberu.test;
 
 import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
 import org.junit.internal.runners.model.ReflectiveCallable;
 import org.junit.internal.runners.statements.Fail;
 import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a custom junit runner extending the default {@link BlockJUnit4ClassRunner}.
@@ -35,25 +44,123 @@ import java.util.Properties;
  * <p>
  * The runner also supports the custom {@link Ignore} annotation.
  * <p>
+ * By the {@link Parallel} annotation or the {@value Environment#THREADS} system property the test methods
+ * (for all publications) can be executed in parallel, either by a pool of platform threads or by an own
+ * virtual thread for each method. The test methods can also be split over several JVMs by the
+ * {@value Environment#SHARD_INDEX} and {@value Environment#SHARD_COUNT} system properties. Tests passed before with the same
+ * inputs can be skipped by the {@value Environment#RESULT_CACHE}.
+ * <p>
  * Created by aherr on 09.11.2015.
  */
 public class EnvironmentTestRunner extends BlockJUnit4ClassRunner {
 
-    private static final Method withRulesMethod;
+    /**
+     * JUnit's private <code>withRules</code>, called exactly so it can be inlined
+     */
+    private static final MethodHandle withRulesMethod;
+
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 10000;
 
     static {
         try {
-            withRulesMethod = ReflectionUtils.findMethod(BlockJUnit4ClassRunner.class, "withRules", FrameworkMethod.class, Object.class, Statement.class);
+            withRulesMethod = ReflectionUtils.findMethodHandle(BlockJUnit4ClassRunner.class, "withRules", FrameworkMethod.class, Object.class, Statement.class);
             if (withRulesMethod == null) {
                 throw new IllegalStateException(
                         "Failed to find withRules() method: BlockJUnit4ClassRunner requires JUnit 4.9 or higher.");
             }
-            withRulesMethod.setAccessible(true);
         } catch (Exception ex) {
             throw new ExceptionInInitializerError(ex);
         }
     }
 
+    /**
+     * true if the test methods are not run one after another
+     */
+    private final boolean parallel;
+
+    /**
+     * maximum number of test methods running at the same time for one stage, <code>0</code> if unlimited
+     */
+    private final int maxPerStage;
+
+    /**
+     * the permits for running test methods per stage, only used if {@link #maxPerStage} is set
+     */
+    private final ConcurrentMap<String, Semaphore> stagePermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * the part of the test methods to run, null to run all
+     */
+    private final Shard shard;
+
+    /**
+     * directory of the recorded test durations, null if not given
+     */
+    private final File timings;
+
+    /**
+     * true if the durations of this run are recorded and stored, sharded runs only read the history,
+     * so all shards split the test methods by the same durations
+     */
+    private final boolean recordTimings;
+
+    /**
+     * directory of the result cache, null if tests should always run
+     */
+    private final File resultCacheDirectory;
+
+    /**
+     * maximum number of fingerprints in the result cache
+     */
+    private final int resultCacheSize;
+
+    /**
+     * digest of the byte code of the test class hierarchy, created on first use of the result cache
+     */
+    private volatile byte[] classDigest;
+
+    /**
+     * selects the test methods to create, null to create all
+     */
+    private final MatrixFilter matrixFilter;
+
+    /**
+     * the descriptions of the test methods, created once
+     */
+    private final ConcurrentMap<FrameworkMethod, Description> descriptions = new ConcurrentHashMap<FrameworkMethod, Description>();
+
+    /**
+     * the configurations of the test class per context
+     */
+    private final ConcurrentMap<EnvironmentContext, ResolvedConfiguration> configurations =
+            new ConcurrentHashMap<EnvironmentContext, ResolvedConfiguration>();
+
+    /**
+     * number of test methods per context still to run, only used if the test class has {@link Fixture} fields
+     */
+    private final ConcurrentMap<EnvironmentContext, AtomicInteger> pendingFixtureChildren =
+            new ConcurrentHashMap<EnvironmentContext, AtomicInteger>();
+
+    /**
+     * number of test methods created without context, only used if the test class has {@link Fixture} fields
+     */
+    private volatile int lateBoundChildren;
+
+    /**
+     * the context of test methods created without stage and publication, only set while the test methods are running
+     */
+    private volatile EnvironmentContext defaultContext;
+
+    /**
+     * the durations of earlier runs, also records the durations of the current run
+     */
+    private final TimingHistory history;
+
+    /**
+     * number of failures one after another to skip the other test methods of a publication, <code>0</code> if disabled
+     */
+    private final int breakerThreshold;
+
     /**
      * Here we create a new runner and initialize the properties to serve from.
      *
@@ -62,57 +169,459 @@ public class EnvironmentTestRunner extends BlockJUnit4ClassRunner {
      */
     public EnvironmentTestRunner(Class<?> klass) throws InitializationError {
         super(klass);
+        RunnerScheduler scheduler = createScheduler(klass);
+        parallel = scheduler != null;
+        if (parallel) {
+            setScheduler(scheduler);
+        }
+        maxPerStage = getMaxPerStage(klass);
+        shard = getShard();
+        String timingsProperty = System.getProperty(Environment.TIMINGS);
+        timings = timingsProperty != null ? new File(timingsProperty) : null;
+        history = TimingHistory.load(timings, klass);
+        recordTimings = timings != null && shard == null;
+        breakerThreshold = getBreakerThreshold(klass);
+        String resultCacheProperty = System.getProperty(Environment.RESULT_CACHE);
+        resultCacheDirectory = resultCacheProperty != null ? new File(resultCacheProperty) : null;
+        String resultCacheSizeProperty = System.getProperty(Environment.RESULT_CACHE_SIZE);
+        resultCacheSize = resultCacheSizeProperty != null
+                ? parseNumber(Environment.RESULT_CACHE_SIZE, resultCacheSizeProperty) : DEFAULT_RESULT_CACHE_SIZE;
+        matrixFilter = getMatrixFilter();
+        prefetchSources(klass);
     }
 
     /**
-     * Before running the test method we check if an {@link Ignore} annotation
-     * exists and if one of the environments is equal to the current environment.
-     * If so, we ignore this test.
+     * If the test methods are running in parallel, the notifications of the different threads are
+     * serialized before they reach the listeners.
+     *
+     * @param notifier the original notifier
+     */
+    @Override
+    public void run(RunNotifier notifier) {
+        super.run(parallel ? new SynchronizedRunNotifier(notifier) : notifier);
+    }
+
+    /**
+     * Before running a test method created without stage and publication, we check if an {@link Ignore}
+     * annotation exists and if one of the environments is equal to the current environment, or if the
+     * {@value Environment#SELECT} filter does not match the current environment.
+     * If so, we ignore this test. If the {@link CircuitBreaker} of the publication
+     * is open, the test is skipped.
      *
      * @param method   test method
      * @param notifier used to ignore
      */
     @Override
     protected void runChild(final FrameworkMethod method, RunNotifier notifier) {
+        if (pendingFixtureChildren.isEmpty()) {
+            runEnvironmentChild(method, notifier);
+            return;
+        }
+        try {
+            runEnvironmentChild(method, notifier);
+        } finally {
+            releaseFixtures(toEnvironmentMethod(method).getContext(), 1);
+        }
+    }
+
+    private void runEnvironmentChild(FrameworkMethod method, RunNotifier notifier) {
         Description description = describeChild(method);
-        Ignore ignore = method.getAnnotation(Ignore.class);
-        if (ignore != null) {
-            // check environment specific overrides
-            String env = getStage();
-            for (String ignoreIn : ignore.value()) {
-                if (ignoreIn.equals(env)) {
-                    notifier.fireTestIgnored(description);
-                    return;
+        // methods created with their context were already checked, the others just got their context
+        if (!(method instanceof EnvironmentFrameworkMethod) && (isIgnored(method, toEnvironmentMethod(method).getContext())
+                || !isSelected(method, toEnvironmentMethod(method).getContext()))) {
+            notifier.fireTestIgnored(description);
+            return;
+        }
+        if (breakerThreshold > 0) {
+            EnvironmentFrameworkMethod envMethod = toEnvironmentMethod(method);
+            final Throwable cause = CircuitBreakers.get(envMethod.getStage(), envMethod.getPublication()).getCause();
+            if (cause != null) {
+                final String message = "skipped since the test system of publication " + envMethod.getPublication()
+                        + " on stage " + envMethod.getStage() + " seems to be broken";
+                runLeaf(new Statement() {
+                    @Override
+                    public void evaluate() throws Throwable {
+                        throw new AssumptionViolatedException(message, cause);
+                    }
+                }, description, notifier);
+                return;
+            }
+        }
+        if (maxPerStage > 0) {
+            runChildLimited(method, notifier);
+        } else {
+            runChildTimed(method, notifier);
+        }
+    }
+
+    /**
+     * Records the duration of the test method, if a {@value Environment#TIMINGS} directory was given
+     * and the run is not sharded.
+     *
+     * @param method   test method
+     * @param notifier used to report
+     */
+    private void runChildTimed(FrameworkMethod method, RunNotifier notifier) {
+        if (!recordTimings) {
+            super.runChild(method, notifier);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            super.runChild(method, notifier);
+        } finally {
+            history.record(method, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Before running the test methods we read the context for test methods created without stage
+     * and publication. Afterwards the {@link Fixture} values are released and the recorded durations
+     * and the passed tests are stored. Failing to store them is reported as failure of the test class,
+     * but neither hides the outcome of the test methods nor keeps the other one from being stored.
+     *
+     * @param notifier used to report
+     * @return statement running all test methods
+     */
+    @Override
+    protected Statement childrenInvoker(final RunNotifier notifier) {
+        final Statement children = super.childrenInvoker(notifier);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                defaultContext = EnvironmentContext.fromSystemProperties();
+                if (lateBoundChildren > 0) {
+                    announceFixtures(defaultContext, lateBoundChildren);
+                }
+                try {
+                    children.evaluate();
+                } finally {
+                    releaseAllFixtures();
+                    defaultContext = null;
+                    if (recordTimings) {
+                        try {
+                            history.store(timings, getTestClass().getJavaClass());
+                        } catch (IOException ioe) {
+                            notifier.fireTestFailure(new Failure(getDescription(), ioe));
+                        }
+                    }
+                    if (resultCacheDirectory != null) {
+                        try {
+                            ResultCache.get(resultCacheDirectory, resultCacheSize).store();
+                        } catch (IOException ioe) {
+                            notifier.fireTestFailure(new Failure(getDescription(), ioe));
+                        }
+                    }
                 }
             }
+        };
+    }
+
+    /**
+     * Runs the test method as soon as less than {@link #maxPerStage} methods are running for its stage.
+     *
+     * @param method   test method
+     * @param notifier used to report
+     */
+    private void runChildLimited(FrameworkMethod method, RunNotifier notifier) {
+        String stage = toEnvironmentMethod(method).getStage();
+        String key = stage != null ? stage : "";
+        Semaphore permits = stagePermits.get(key);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxPerStage);
+            permits = stagePermits.putIfAbsent(key, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            notifier.fireTestFailure(new Failure(describeChild(method), ie));
+            return;
+        }
+        try {
+            runChildTimed(method, notifier);
+        } finally {
+            permits.release();
         }
-        super.runChild(method, notifier);
     }
 
+    /**
+     * Creates a test method for each publication. If the tests are split over several JVMs,
+     * only the methods of the own shard are returned. Running in parallel, the methods are
+     * ordered longest first by the durations of earlier runs (if available).
+     *
+     * @return the test methods to run
+     */
     @Override
     protected List<FrameworkMethod> getChildren() {
+        List<FrameworkMethod> children = getEnvironmentChildren();
+        if (shard != null) {
+            children = shard.select(getTestClass().getJavaClass(), children, history);
+        }
+        if (parallel && !history.isEmpty()) {
+            children = history.longestFirst(children);
+        }
+        if (hasFixtures()) {
+            announceFixtures(children);
+        }
+        return children;
+    }
+
+    /**
+     * Announces the test methods using the {@link Fixture} values of their context, so the values
+     * can be closed after the last one. Methods created without context are announced when the test
+     * class runs.
+     *
+     * @param children the test methods
+     */
+    private void announceFixtures(List<FrameworkMethod> children) {
+        Map<EnvironmentContext, Integer> counts = new HashMap<EnvironmentContext, Integer>();
+        int lateBound = 0;
+        for (FrameworkMethod child : children) {
+            if (child instanceof EnvironmentFrameworkMethod) {
+                EnvironmentContext context = ((EnvironmentFrameworkMethod) child).getContext();
+                Integer count = counts.get(context);
+                counts.put(context, count != null ? count + 1 : 1);
+            } else {
+                lateBound++;
+            }
+        }
+        for (Map.Entry<EnvironmentContext, Integer> entry : counts.entrySet()) {
+            announceFixtures(entry.getKey(), entry.getValue());
+        }
+        lateBoundChildren += lateBound;
+    }
+
+    private void announceFixtures(EnvironmentContext context, int children) {
+        AtomicInteger pending = pendingFixtureChildren.get(context);
+        if (pending == null) {
+            AtomicInteger created = new AtomicInteger();
+            pending = pendingFixtureChildren.putIfAbsent(context, created);
+            if (pending == null) {
+                pending = created;
+            }
+        }
+        pending.addAndGet(children);
+        Fixtures.announce(context, children);
+    }
+
+    /**
+     * @param context  context of the finished test methods
+     * @param children number of finished test methods
+     */
+    private void releaseFixtures(EnvironmentContext context, int children) {
+        AtomicInteger pending = pendingFixtureChildren.get(context);
+        if (pending != null && pending.addAndGet(-children) >= 0) {
+            Fixtures.release(context, children);
+        }
+    }
+
+    /**
+     * Releases the test methods announced but not run, e.g. since they were filtered.
+     */
+    private void releaseAllFixtures() {
+        for (Map.Entry<EnvironmentContext, AtomicInteger> entry : pendingFixtureChildren.entrySet()) {
+            int remaining = entry.getValue().getAndSet(0);
+            if (remaining > 0) {
+                Fixtures.release(entry.getKey(), remaining);
+            }
+        }
+        pendingFixtureChildren.clear();
+    }
+
+    private boolean hasFixtures() {
+        try {
+            return InjectionPlan.forClass(getTestClass().getJavaClass()).hasFixtures();
+        } catch (RuntimeException re) {
+            // invalid injection, what is reported by the test methods
+            return false;
+        }
+    }
+
+    /**
+     * Creates the matrix of all stages and publications given by system properties. Both can be
+     * comma-separated lists, so all stages can be tested in one JVM. Without stage and publication
+     * the original test methods are returned, their context is taken from the system properties when
+     * the test class is running. The publication <code>*</code> stands for all publications of the
+     * stage having a bundle of the test class.
+     *
+     * @return test method for each stage and publication
+     */
+    private List<FrameworkMethod> getEnvironmentChildren() {
         List<FrameworkMethod> originalMethods = getTestClass().getAnnotatedMethods(Test.class);
-        List<FrameworkMethod> publicationMethods = new ArrayList<FrameworkMethod>();
-        String publication = getPublication();
-        String stage = getStage();
-        if (publication != null) {
-            String[] publications = publication.split(",");
+        List<EnvironmentContext> contexts = getContexts();
+        if (contexts == null) {
+            if (matrixFilter == null) {
+                return originalMethods;
+            }
+            // the context is not known before the test class runs, so the stage and publication are checked then
+            List<FrameworkMethod> selected = new ArrayList<FrameworkMethod>();
             for (FrameworkMethod method : originalMethods) {
-                for (String pub : publications) {
-                    publicationMethods.add(new EnvironmentFrameworkMethod(method, stage, pub));
+                if (matrixFilter.mayMatch(getTestClass().getJavaClass(), method.getName())) {
+                    selected.add(method);
                 }
             }
-            return publicationMethods;
-        } else if (stage != null) {
-            for (FrameworkMethod method : originalMethods) {
-                publicationMethods.add(new EnvironmentFrameworkMethod(method, stage));
+            return selected;
+        }
+        List<FrameworkMethod> environmentMethods = new ArrayList<FrameworkMethod>();
+        for (FrameworkMethod method : originalMethods) {
+            for (EnvironmentContext context : contexts) {
+                if (isIgnored(method, context)) {
+                    continue;
+                }
+                if (matrixFilter != null && !matrixFilter.matches(getTestClass().getJavaClass(), method.getName(), context)) {
+                    continue;
+                }
+                environmentMethods.add(new EnvironmentFrameworkMethod(method, context));
+            }
+        }
+        return environmentMethods;
+    }
+
+    /**
+     * @param method  the test method
+     * @param context stage and publication
+     * @return true if the method is selected by the {@value Environment#SELECT} filter, or there is none
+     */
+    private boolean isSelected(FrameworkMethod method, EnvironmentContext context) {
+        return matrixFilter == null || matrixFilter.matches(getTestClass().getJavaClass(), method.getName(), context);
+    }
+
+    /**
+     * @param method  the test method
+     * @param context stage and publication
+     * @return true if the method or the test class is annotated by {@link Ignore} for the stage or publication
+     */
+    private boolean isIgnored(FrameworkMethod method, EnvironmentContext context) {
+        return ReflectionUtils.getIgnored(method.getMethod()).matches(context)
+                || ReflectionUtils.getIgnored(getTestClass().getJavaClass()).matches(context);
+    }
+
+    /**
+     * The descriptions are created once, since they are needed for describing, filtering, sorting
+     * and running every test method.
+     *
+     * @param method test method
+     * @return the description of the test method
+     */
+    @Override
+    protected Description describeChild(FrameworkMethod method) {
+        Description description = descriptions.get(method);
+        if (description == null) {
+            description = super.describeChild(method);
+            Description existing = descriptions.putIfAbsent(method, description);
+            if (existing != null) {
+                description = existing;
             }
         }
-        return originalMethods;
+        return description;
+    }
+
+    /**
+     * @return all combinations of the stages and publications given by system properties, null if neither is given
+     */
+    private List<EnvironmentContext> getContexts() {
+        return EnvironmentMatrix.getContexts(getTestClass().getJavaClass());
+    }
+
+    /**
+     * @return the filter given by system property, null if not given
+     * @throws InitializationError if the filter is malformed
+     */
+    private static MatrixFilter getMatrixFilter() throws InitializationError {
+        String property = System.getProperty(Environment.SELECT);
+        if (property == null || property.trim().length() == 0) {
+            return null;
+        }
+        try {
+            return MatrixFilter.parse(property);
+        } catch (IllegalArgumentException iae) {
+            throw new InitializationError(iae);
+        }
+    }
+
+    /**
+     * Starts loading the slow property sources, so that overlaps with the creation of the other runners.
+     *
+     * @param klass test class
+     * @throws InitializationError if the property sources are not known
+     */
+    private void prefetchSources(Class<?> klass) throws InitializationError {
+        List<EnvironmentContext> contexts = getContexts();
+        if (contexts == null) {
+            contexts = new ArrayList<EnvironmentContext>();
+            contexts.add(EnvironmentContext.fromSystemProperties());
+        }
+        try {
+            PropertySources.prefetch(klass, contexts);
+        } catch (IllegalArgumentException iae) {
+            throw new InitializationError(iae);
+        }
     }
 
     @Override
     protected Statement methodBlock(FrameworkMethod method) {
+        EnvironmentFrameworkMethod envMethod = toEnvironmentMethod(method);
+        if (resultCacheDirectory != null) {
+            return withResultCache(method, envMethod);
+        }
+        return createEnvironmentBlock(method, envMethod);
+    }
+
+    private Statement createEnvironmentBlock(FrameworkMethod method, EnvironmentFrameworkMethod envMethod) {
+        Statement statement = createMethodBlock(method, envMethod);
+        if (breakerThreshold > 0) {
+            statement = withCircuitBreaker(envMethod, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Skips the test method if it passed before with the same fingerprint, otherwise the fingerprint
+     * is recorded if the test passes this time.
+     *
+     * @see ResultCache
+     */
+    private Statement withResultCache(FrameworkMethod method, EnvironmentFrameworkMethod envMethod) {
+        final ResultCache cache;
+        final String fingerprint;
+        try {
+            cache = ResultCache.get(resultCacheDirectory, resultCacheSize);
+            fingerprint = ResultCache.fingerprint(getClassDigest(), envMethod, getConfiguration(envMethod, false).asMap());
+        } catch (Exception ex) {
+            return new Fail(ex);
+        }
+        if (cache.hasPassed(fingerprint)) {
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    throw new AssumptionViolatedException("cached: passed before with identical test class and properties");
+                }
+            };
+        }
+        final Statement next = createEnvironmentBlock(method, envMethod);
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                next.evaluate();
+                cache.recordPassed(fingerprint);
+            }
+        };
+    }
+
+    private byte[] getClassDigest() throws IOException {
+        byte[] digest = classDigest;
+        if (digest == null) {
+            digest = ResultCache.digestClasses(getTestClass().getJavaClass());
+            classDigest = digest;
+        }
+        return digest;
+    }
+
+    private Statement createMethodBlock(FrameworkMethod method, EnvironmentFrameworkMethod envMethod) {
         Object test;
         try {
             test = new ReflectiveCallable() {
@@ -124,172 +633,218 @@ public class EnvironmentTestRunner extends BlockJUnit4ClassRunner {
         } catch (Throwable e) {
             return new Fail(e);
         }
-        EnvironmentFrameworkMethod envMethod;
-        if (method instanceof EnvironmentFrameworkMethod) {
-            // since we overrode the getChildren method we should always get the type, why cast is safe
-            envMethod = (EnvironmentFrameworkMethod) method;
-        } else {
-            // however that does not work in tests were we set the stage in before class,
-            // since before class functions are called AFTER the child list was created.
-            // Therefore the child list does not include EnvironmentFrameworkMethod, but
-            // we need one to process. So try again to read the environment settings
-            envMethod = new EnvironmentFrameworkMethod(method, getStage(), getPublication());
-        }
-        Properties properties;
+        boolean recorded = PhaseRecorder.isEnabled();
+        ResolvedConfiguration configuration;
         try {
-            properties = loadProperties(test, envMethod.getStage(), envMethod.getPublication());
-        } catch (IOException ioe) {
-            return new Fail(ioe);
+            configuration = getConfiguration(envMethod, recorded);
+        } catch (Exception ex) {
+            // broken properties file or not injectable field
+            return new Fail(ex);
         }
         Statement statement = methodInvoker(method, test);
         statement = possiblyExpectingExceptions(method, test, statement);
         statement = withPotentialTimeout(method, test, statement);
-        statement = withBefores(method, test, statement);
-        statement = withAfters(method, test, statement);
-        statement = withRulesReflectively(method, test, statement);
-        statement = withAllPublications(test, properties, envMethod, statement);
-        return statement;
+        if (!recorded) {
+            statement = withBefores(method, test, statement);
+            statement = withAfters(method, test, statement);
+            statement = withRulesReflectively(method, test, statement);
+            return withAllPublications(test, configuration, envMethod, statement);
+        }
+        // the timeout runs the test in another thread, so the test phase is recorded outside of it
+        Class<?> testClass = getTestClass().getJavaClass();
+        statement = PhaseRecorder.timed(Phase.TEST, testClass, envMethod, statement);
+        statement = timedIfChanged(Phase.BEFORE, envMethod, statement, withBefores(method, test, statement));
+        statement = timedIfChanged(Phase.AFTER, envMethod, statement, withAfters(method, test, statement));
+        statement = timedIfChanged(Phase.RULES, envMethod, statement, withRulesReflectively(method, test, statement));
+        return PhaseRecorder.timed(Phase.INJECTION, testClass, envMethod, withAllPublications(test, configuration, envMethod, statement));
+    }
+
+    /**
+     * @return the wrapped statement, timed if there was something to wrap
+     */
+    private Statement timedIfChanged(Phase phase, EnvironmentFrameworkMethod method, Statement inner, Statement wrapped) {
+        return wrapped == inner ? inner : PhaseRecorder.timed(phase, getTestClass().getJavaClass(), method, wrapped);
+    }
+
+    private EnvironmentFrameworkMethod toEnvironmentMethod(FrameworkMethod method) {
+        if (method instanceof EnvironmentFrameworkMethod) {
+            // since we overrode the getChildren method we should always get the type, why cast is safe
+            return (EnvironmentFrameworkMethod) method;
+        }
+        // however that does not work in tests were we set the stage in before class,
+        // since before class functions are called AFTER the child list was created.
+        // Therefore the child list does not include EnvironmentFrameworkMethod, but
+        // we need one to process. So use the environment settings read after before class
+        EnvironmentContext context = defaultContext;
+        return new EnvironmentFrameworkMethod(method, context != null ? context : EnvironmentContext.fromSystemProperties());
     }
 
     /**
-     * Invoke JUnit's private {@code withRules()} method using reflection.
+     * Counts the failed test methods for the {@link CircuitBreaker}. Skipped tests are not counted.
+     */
+    private Statement withCircuitBreaker(final EnvironmentFrameworkMethod method, final Statement next) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                CircuitBreakers.Breaker breaker = CircuitBreakers.get(method.getStage(), method.getPublication());
+                try {
+                    next.evaluate();
+                } catch (AssumptionViolatedException ave) {
+                    throw ave;
+                } catch (Throwable t) {
+                    breaker.failure(t, breakerThreshold);
+                    throw t;
+                }
+                breaker.success();
+            }
+        };
+    }
+
+    /**
+     * Invoke JUnit's private {@code withRules()} method using a method handle.
      */
     private Statement withRulesReflectively(FrameworkMethod frameworkMethod, Object testInstance, Statement statement) {
         try {
-            return (Statement) withRulesMethod.invoke(this, frameworkMethod, testInstance, statement);
-        } catch (Exception ex) {
-            throw new IllegalStateException(ex);
+            return (Statement) withRulesMethod.invokeExact((BlockJUnit4ClassRunner) this, frameworkMethod, testInstance, statement);
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
         }
     }
 
     protected Statement withAllPublications(
             final Object test,
-            final Properties properties,
+            final ResolvedConfiguration configuration,
             final EnvironmentFrameworkMethod method,
             final Statement testMethod) {
         return new Statement() {
             public void evaluate() throws Throwable {
-                String stage = method.getStage();
-                String publication = method.getPublication();
-
-                injectProperties(test, properties);
-                injectProperty(test, Environment.PUBLICATION, publication);
-                injectProperty(test, Environment.STAGE, stage);
+                InjectionPlan.forClass(test.getClass()).inject(test, configuration, method.getContext());
                 testMethod.evaluate();
             }
         };
     }
 
     /**
-     * Here the resources bundles (if defined) are loaded into the local properties instance.
+     * Gets the configuration of the test class for the given context. It is resolved once for each context
+     * and then shared by all test methods.
      *
-     * @param test current unit test instance
-     * @return the local properties instance
-     * @throws IOException must not exists since we check the existence, maybe if one
-     *                     of the properties files was broken
-     */
-    private Properties loadProperties(Object test, String stage, String publication) throws IOException {
-        Properties properties = new Properties();
-        Class<?> clazz = test.getClass();
-        do {
-            // check for resource bundles
-            ResourceBundle resource = clazz.getAnnotation(ResourceBundle.class);
-            if (resource != null) {
-                for (String bundle : resource.value()) {
-                    addResourceBundle(properties, clazz, bundle, stage, publication);
-                }
-            }
-            clazz = clazz.getSuperclass();
-        } while (!Object.class.equals(clazz));
-        return properties;
-    }
-
-    private Properties addResourceBundle(Properties properties, Class<?> loader, String resource, String stage, String publication) throws IOException{
-        Properties bundle = PropertyCache.getProperties(loader, resource, stage, publication);
-        properties.putAll(bundle);
-        return bundle;
-    }
-
-    private void injectProperty(Object test, String name, Object publication) throws IllegalArgumentException, IllegalAccessException {
-        Class clazz = test.getClass();
-        do {
-            for (Field field : clazz.getDeclaredFields()) {
-                PropertyValue property = field.getAnnotation(PropertyValue.class);
-                if (property != null && name.equals(property.value())) {
-                    field.setAccessible(true);
-                    field.set(test, publication);
-                }
+     * @param method   test method with stage and publication
+     * @param recorded true to record the loading as {@link Phase#LOAD_PROPERTIES}
+     * @return the resolved configuration
+     * @throws IOException if one of the property sources failed
+     */
+    private ResolvedConfiguration getConfiguration(EnvironmentFrameworkMethod method, boolean recorded) throws IOException {
+        EnvironmentContext context = method.getContext();
+        ResolvedConfiguration configuration = configurations.get(context);
+        if (configuration == null || configuration.isOutdated()) {
+            long start = System.nanoTime();
+            Class<?> testClass = getTestClass().getJavaClass();
+            configuration = ResolvedConfiguration.load(testClass, context);
+            configurations.put(context, configuration);
+            if (recorded) {
+                PhaseRecorder.record(Phase.LOAD_PROPERTIES, testClass, method, start);
             }
-            clazz = clazz.getSuperclass();
-        } while (!Object.class.equals(clazz));
+        }
+        return configuration;
     }
 
     /**
-     * Inject all values for fields annotated with {@link PropertyValue}.
+     * The system property is preferred over the {@link Parallel} annotation, so the parallel mode
+     * can be switched on (or off by <code>1</code>) from command line for all tests.
      *
-     * First we check if a system property with the name exists. Only if not we check the already loaded
-     * properties instance for the key.
-     *
-     * @param test the test class instance to inject into
-     * @param properties loaded properties instance
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
-     */
-    private void injectProperties(Object test, Properties properties) throws IllegalArgumentException, IllegalAccessException {
-        Class clazz = test.getClass();
-        do {
-            for (Field field : clazz.getDeclaredFields()) {
-                PropertyValue propertyValue = field.getAnnotation(PropertyValue.class);
-                if (propertyValue != null) {
-                    String property = propertyValue.value();
-                    // prefer system property
-                    Object value = System.getProperty(property);
-                    if (value == null) {
-                        value = properties.getProperty(property); // might still be null
-                    }
-                    field.setAccessible(true);
-                    Object typeSafeValue = convertValue(field, value);
-                    field.set(test, typeSafeValue);
-                }
+     * @param klass test class
+     * @return the scheduler to run the test methods in parallel, null to run them one after another
+     * @throws InitializationError if the system property is not a number
+     */
+    private static RunnerScheduler createScheduler(Class<?> klass) throws InitializationError {
+        String name = klass.getSimpleName();
+        String property = System.getProperty(Environment.THREADS);
+        Parallel parallel = klass.getAnnotation(Parallel.class);
+        int threads;
+        if (property != null) {
+            if (Environment.VIRTUAL.equalsIgnoreCase(property.trim())) {
+                return createVirtualScheduler(name, 0);
             }
-            clazz = clazz.getSuperclass();
-        } while (!Object.class.equals(clazz));
+            threads = parseNumber(Environment.THREADS, property);
+        } else if (parallel == null) {
+            return null;
+        } else if (parallel.virtual()) {
+            return createVirtualScheduler(name, parallel.value());
+        } else {
+            threads = parallel.value();
+        }
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        return threads > 1 ? new ParallelScheduler(name, threads) : null;
     }
 
     /**
-     * Since we read property files, we will always get strings. However to allow other types
-     * to inject we check the field type here and try a conversion, at least for the basic
-     * java types.
+     * Starts a virtual thread for each test method. If the JVM does not support virtual threads
+     * we fall back to a pool of platform threads.
      *
-     * @param field field we want to inject into
-     * @param value the value (propably a string)
-     * @return converted value matching the field type
+     * @param name     name of the test class
+     * @param fallback number of platform threads used as fallback, <code>0</code> for one per processor
+     * @return the scheduler
      */
-    private Object convertValue(Field field, Object value) {
-        if (field.getType() == Integer.class || field.getType() == int.class) {
-            return Integer.valueOf(value.toString());
-        }
-        if (field.getType() == Double.class || field.getType() == double.class) {
-            return Double.valueOf(value.toString());
-        }
-        if (field.getType() == Float.class || field.getType() == float.class) {
-            return Float.valueOf(value.toString());
+    private static RunnerScheduler createVirtualScheduler(String name, int fallback) {
+        if (VirtualThreads.isSupported()) {
+            return new ParallelScheduler(name, 0, VirtualThreads.factory(name));
         }
-        if (field.getType() == Boolean.class || field.getType() == boolean.class) {
-            return Boolean.parseBoolean(value.toString());
+        return new ParallelScheduler(name, fallback > 0 ? fallback : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param klass test class
+     * @return the maximum number of test methods running in parallel for one stage, <code>0</code> if unlimited
+     * @throws InitializationError if the system property is not a number
+     */
+    private static int getMaxPerStage(Class<?> klass) throws InitializationError {
+        String property = System.getProperty(Environment.MAX_PER_STAGE);
+        if (property != null) {
+            return Math.max(0, parseNumber(Environment.MAX_PER_STAGE, property));
         }
-        if (field.getType() == Long.class || field.getType() == long.class) {
-            return Long.valueOf(value.toString());
+        Parallel parallel = klass.getAnnotation(Parallel.class);
+        return parallel != null ? Math.max(0, parallel.maxPerStage()) : 0;
+    }
+
+    /**
+     * @return the shard to run, null if the shard system properties are not given
+     * @throws InitializationError if only one of the properties is given, or they are invalid
+     */
+    private static Shard getShard() throws InitializationError {
+        try {
+            return Shard.fromSystemProperties();
+        } catch (IllegalArgumentException iae) {
+            throw new InitializationError(iae);
         }
-        return value;
     }
 
-    private String getStage() {
-        return System.getProperty(Environment.STAGE);
+    /**
+     * @param klass test class
+     * @return number of failures opening the {@link CircuitBreaker}, <code>0</code> if disabled
+     * @throws InitializationError if the system property is not a number
+     */
+    private static int getBreakerThreshold(Class<?> klass) throws InitializationError {
+        String property = System.getProperty(Environment.CIRCUIT_BREAKER);
+        if (property != null) {
+            return Math.max(0, parseNumber(Environment.CIRCUIT_BREAKER, property));
+        }
+        CircuitBreaker breaker = klass.getAnnotation(CircuitBreaker.class);
+        return breaker != null ? Math.max(0, breaker.value()) : 0;
     }
 
-    private String getPublication() {
-        return System.getProperty(Environment.PUBLICATION);
+    private static int parseNumber(String name, String value) throws InitializationError {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new InitializationError(new IllegalArgumentException(
+                    "invalid value of system property " + name + ": " + value, nfe));
+        }
     }
 
 
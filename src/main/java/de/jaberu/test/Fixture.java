@@ -0,0 +1,42 @@
+package de.jaberu.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an expensive resource like a HTTP client, a database pool or an authenticated session, that
+ * should be created only once for each stage and publication instead of once for each test method.
+ * <p>
+ * A field annotated with this annotation gets the shared value injected. The value is created by the
+ * static method of the test class (or one of its superclasses) annotated with this annotation and the
+ * same name. The name is the annotation value, or the name of the field and the method if not given.
+ * Without factory method the field type is instantiated. Factory methods and constructors can either
+ * take no parameters, the {@link EnvironmentContext} or the stage and the publication as strings.
+ * <pre>
+ * &#064;Fixture("client")
+ * private HttpClient client;
+ *
+ * &#064;Fixture("client")
+ * static HttpClient createClient(EnvironmentContext context) { ... }
+ * </pre>
+ * The value is created when the first test method needs it and is shared by all test methods and test
+ * classes using the same factory for the same stage and publication. If the last test method known to
+ * the runner for the stage and publication finished, the value is closed (if it is {@link AutoCloseable}).
+ * So test classes run together (e.g. as suite from the IDE) share the value, while test classes run one
+ * after another by a build tool get a new one.
+ * <p>
+ * This annotation only works if the {@link EnvironmentTestRunner} is used.
+ *
+ * @see EnvironmentTestRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface Fixture {
+
+    /**
+     * @return name connecting field and factory method, the field or method name if empty
+     */
+    String value() default "";
+}
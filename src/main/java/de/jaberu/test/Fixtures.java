@@ -0,0 +1,235 @@
+package de.jaberu.test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the values of the {@link Fixture} fields for each stage and publication.
+ * <p>
+ * The runners announce how many of their test methods will use the fixtures of a stage and publication
+ * and report each finished one. If no more test methods are pending for a stage and publication, all
+ * its values are closed. Runners also release their pending test methods when they finish, so test
+ * methods filtered out do not keep the values open.
+ */
+final class Fixtures {
+
+    private static final Map<EnvironmentContext, Scope> scopes = new LinkedHashMap<EnvironmentContext, Scope>();
+
+    static {
+        // values of runners never run are closed at least at the end
+        Runtime.getRuntime().addShutdownHook(new Thread("fixture-shutdown") {
+            @Override
+            public void run() {
+                List<Scope> remaining;
+                synchronized (scopes) {
+                    remaining = new ArrayList<Scope>(scopes.values());
+                    scopes.clear();
+                }
+                for (Scope scope : remaining) {
+                    scope.close();
+                }
+            }
+        });
+    }
+
+    private Fixtures() {}
+
+    /**
+     * @param context  stage and publication
+     * @param children number of test methods that will use fixtures of the context
+     */
+    static void announce(EnvironmentContext context, int children) {
+        synchronized (scopes) {
+            Scope scope = scopes.get(context);
+            if (scope == null) {
+                scope = new Scope(context);
+                scopes.put(context, scope);
+            }
+            scope.pending += children;
+        }
+    }
+
+    /**
+     * @param context  stage and publication
+     * @param children number of finished (or never run) test methods
+     */
+    static void release(EnvironmentContext context, int children) {
+        Scope closed = null;
+        synchronized (scopes) {
+            Scope scope = scopes.get(context);
+            if (scope != null) {
+                scope.pending -= children;
+                if (scope.pending <= 0) {
+                    closed = scopes.remove(context);
+                }
+            }
+        }
+        if (closed != null) {
+            closed.close();
+        }
+    }
+
+    /**
+     * Gets the value of a factory, creating it on first use.
+     *
+     * @param factory the factory
+     * @param context stage and publication
+     * @return the shared value
+     * @throws Throwable if the value cannot be created
+     */
+    static Object get(Factory factory, EnvironmentContext context) throws Throwable {
+        Scope scope;
+        synchronized (scopes) {
+            scope = scopes.get(context);
+            if (scope == null) {
+                // not announced, e.g. by a test method running without runner
+                scope = new Scope(context);
+                scopes.put(context, scope);
+            }
+        }
+        return scope.get(factory);
+    }
+
+    /**
+     * Finds the factory for a {@link Fixture} field, what is a static method with the same name
+     * in the class hierarchy or the constructor of the field type.
+     *
+     * @param testClass the test class
+     * @param name      the fixture name
+     * @param type      the field type
+     * @return the factory
+     * @throws IllegalArgumentException if there is neither a factory method nor a usable constructor
+     */
+    static Factory findFactory(Class<?> testClass, String name, Class<?> type) {
+        Class<?> clazz = testClass;
+        do {
+            for (Method method : clazz.getDeclaredMethods()) {
+                Fixture fixture = method.getAnnotation(Fixture.class);
+                if (fixture != null && name.equals(fixture.value().length() > 0 ? fixture.value() : method.getName())) {
+                    if (!Modifier.isStatic(method.getModifiers())) {
+                        throw new IllegalArgumentException("fixture method must be static: " + method);
+                    }
+                    method.setAccessible(true);
+                    return new Factory(method, method.getParameterTypes());
+                }
+            }
+            clazz = clazz.getSuperclass();
+        } while (clazz != null && !Object.class.equals(clazz));
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (Factory.isSupported(constructor.getParameterTypes())) {
+                constructor.setAccessible(true);
+                return new Factory(constructor, constructor.getParameterTypes());
+            }
+        }
+        throw new IllegalArgumentException("neither fixture method " + name + " nor a constructor found for " + type.getName());
+    }
+
+    /**
+     * Creates the values of a fixture, by a static method or a constructor.
+     */
+    static final class Factory {
+
+        private final Member member;
+        private final Class<?>[] parameters;
+
+        Factory(Member member, Class<?>[] parameters) {
+            if (!isSupported(parameters)) {
+                throw new IllegalArgumentException("unsupported fixture parameters: " + member);
+            }
+            this.member = member;
+            this.parameters = parameters;
+        }
+
+        static boolean isSupported(Class<?>[] parameters) {
+            return parameters.length == 0
+                    || (parameters.length == 1 && parameters[0] == EnvironmentContext.class)
+                    || (parameters.length == 2 && parameters[0] == String.class && parameters[1] == String.class);
+        }
+
+        Object create(EnvironmentContext context) throws Throwable {
+            Object[] arguments;
+            if (parameters.length == 0) {
+                arguments = new Object[0];
+            } else if (parameters.length == 1) {
+                arguments = new Object[]{context};
+            } else {
+                arguments = new Object[]{context.getStage(), context.getPublication()};
+            }
+            try {
+                if (member instanceof Method) {
+                    return ((Method) member).invoke(null, arguments);
+                }
+                return ((Constructor<?>) member).newInstance(arguments);
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof Factory && member.equals(((Factory) o).member));
+        }
+
+        @Override
+        public int hashCode() {
+            return member.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return member.toString();
+        }
+    }
+
+    /**
+     * The values of one stage and publication.
+     */
+    private static final class Scope {
+
+        private final EnvironmentContext context;
+        private final Map<Factory, Object> values = new LinkedHashMap<Factory, Object>();
+        private int pending;
+        private boolean closed;
+
+        Scope(EnvironmentContext context) {
+            this.context = context;
+        }
+
+        synchronized Object get(Factory factory) throws Throwable {
+            if (closed) {
+                throw new IllegalStateException("fixtures of " + context + " already closed");
+            }
+            Object value = values.get(factory);
+            if (value == null && !values.containsKey(factory)) {
+                value = factory.create(context);
+                values.put(factory, value);
+            }
+            return value;
+        }
+
+        /**
+         * Closes the values in reverse order of creation.
+         */
+        synchronized void close() {
+            closed = true;
+            List<Object> created = new ArrayList<Object>(values.values());
+            values.clear();
+            for (int i = created.size() - 1; i >= 0; i--) {
+                if (created.get(i) instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) created.get(i)).close();
+                    } catch (Exception ex) {
+                        // must not fail the test method that happened to finish last
+                    }
+                }
+            }
+        }
+    }
+}
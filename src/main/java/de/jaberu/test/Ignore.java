@@ -8,6 +8,11 @@ import java.lang.annotation.Target;
 /**
  * This is a custom ignore annotation allowing to define a list of environments where a test method
  * should be ignored. The method will run in any environment except those mentioned in the value list.
+ * Test methods can also be ignored for publications. At class level, the annotation applies to all
+ * test methods.
+ * <p>
+ * If the stages and publications are given by system properties, the ignored test methods are not
+ * created at all. Otherwise they are reported as ignored when running.
  *
  * This annotation only works if the {@link EnvironmentTestRunner} is used.
  *
@@ -15,11 +20,16 @@ import java.lang.annotation.Target;
  * @see EnvironmentTestRunner
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target({ElementType.FIELD,ElementType.METHOD})
+@Target({ElementType.FIELD,ElementType.METHOD,ElementType.TYPE})
 public @interface Ignore {
 
     /**
      * @return the environments were the test should be ignored
      */
-    String[] value();
+    String[] value() default {};
+
+    /**
+     * @return the publications were the test should be ignored, on all stages
+     */
+    String[] publications() default {};
 }
@@ -0,0 +1,207 @@
+package de.jaberu.test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how to inject the {@link PropertyValue} fields of a test class. The plan is created once
+ * per test class by scanning the class hierarchy and then used for every test method. So the fields
+ * are not searched by reflection again for each test.
+ * <p>
+ * For each field the plan holds a setter bound once by a method handle and the converter chosen by
+ * the field type from the {@link Converters}. If there is no value for a primitive field, the field
+ * keeps its default. Fields for {@value Environment#STAGE} and {@value Environment#PUBLICATION} are
+ * not filled from properties, but from the context of the test method.
+ * <p>
+ * If a {@link PropertyInjector} was generated for the test class, it injects the property values, the
+ * stage and the publication instead and no setters are created for those fields.
+ */
+final class InjectionPlan {
+
+    private static final ClassValue<InjectionPlan> plans = new ClassValue<InjectionPlan>() {
+        @Override
+        protected InjectionPlan computeValue(Class<?> type) {
+            return new InjectionPlan(type);
+        }
+    };
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final PropertyInjector injector;
+    private final List<String> keys = new ArrayList<String>();
+    private final Slot[] properties;
+    private final Slot[] stages;
+    private final Slot[] publications;
+    private final Slot[] fixtures;
+
+    private InjectionPlan(Class<?> testClass) {
+        injector = findInjector(testClass);
+        List<Slot> propertySlots = new ArrayList<Slot>();
+        List<Slot> stageSlots = new ArrayList<Slot>();
+        List<Slot> publicationSlots = new ArrayList<Slot>();
+        List<Slot> fixtureSlots = new ArrayList<Slot>();
+        Class<?> clazz = testClass;
+        do {
+            for (Field field : clazz.getDeclaredFields()) {
+                Fixture fixture = field.getAnnotation(Fixture.class);
+                if (fixture != null) {
+                    String name = fixture.value().length() > 0 ? fixture.value() : field.getName();
+                    fixtureSlots.add(new Slot(name, field, null, Fixtures.findFactory(testClass, name, field.getType())));
+                }
+                PropertyValue propertyValue = field.getAnnotation(PropertyValue.class);
+                if (propertyValue == null) {
+                    continue;
+                }
+                String key = propertyValue.value();
+                if (injector != null) {
+                    if (!Environment.STAGE.equals(key) && !Environment.PUBLICATION.equals(key)) {
+                        keys.add(key);
+                    }
+                } else if (Environment.STAGE.equals(key)) {
+                    stageSlots.add(new Slot(key, field, null, null));
+                } else if (Environment.PUBLICATION.equals(key)) {
+                    publicationSlots.add(new Slot(key, field, null, null));
+                } else {
+                    keys.add(key);
+                    propertySlots.add(new Slot(key, field, Converters.forField(field), null));
+                }
+            }
+            clazz = clazz.getSuperclass();
+        } while (clazz != null && !Object.class.equals(clazz));
+        properties = propertySlots.toArray(new Slot[propertySlots.size()]);
+        stages = stageSlots.toArray(new Slot[stageSlots.size()]);
+        publications = publicationSlots.toArray(new Slot[publicationSlots.size()]);
+        fixtures = fixtureSlots.toArray(new Slot[fixtureSlots.size()]);
+    }
+
+    /**
+     * @param testClass the test class
+     * @return the plan of the test class, created on first use
+     */
+    static InjectionPlan forClass(Class<?> testClass) {
+        return plans.get(testClass);
+    }
+
+    /**
+     * Injects all values for fields annotated with {@link PropertyValue}.
+     *
+     * The values are taken from the configuration, what already prefers the system properties.
+     * Stage and publication are taken from the context, as well as the shared {@link Fixture} values.
+     *
+     * @param test          the test class instance to inject into
+     * @param configuration the resolved configuration of the test class
+     * @param context       stage and publication of the test method
+     * @throws IllegalArgumentException if a value cannot be converted
+     * @throws Throwable if a value cannot be set
+     */
+    void inject(Object test, ResolvedConfiguration configuration, EnvironmentContext context) throws Throwable {
+        if (injector != null) {
+            injector.inject(test, configuration, context);
+        }
+        for (Slot slot : properties) {
+            String value = configuration.get(slot.key); // might be null
+            if (value == null) {
+                if (!slot.primitive) {
+                    slot.setter.invokeExact(test, (Object) null);
+                }
+                // primitive fields keep their default
+                continue;
+            }
+            Object converted;
+            try {
+                converted = slot.converter.convert(value);
+            } catch (RuntimeException re) {
+                throw new IllegalArgumentException("cannot convert value '" + value + "' of property " + slot.key, re);
+            }
+            slot.setter.invokeExact(test, converted);
+        }
+        for (Slot slot : publications) {
+            slot.setter.invokeExact(test, (Object) context.getPublication());
+        }
+        for (Slot slot : stages) {
+            slot.setter.invokeExact(test, (Object) context.getStage());
+        }
+        for (Slot slot : fixtures) {
+            slot.setter.invokeExact(test, Fixtures.get(slot.factory, context));
+        }
+    }
+
+    /**
+     * @return the property keys of the injected fields
+     */
+    List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * @return true if the test class has {@link Fixture} fields
+     */
+    boolean hasFixtures() {
+        return fixtures.length > 0;
+    }
+
+    /**
+     * @param testClass the test class
+     * @return the generated injector of exactly the given class, null if there is none
+     */
+    private static PropertyInjector findInjector(Class<?> testClass) {
+        try {
+            Class<?> injectorClass = Class.forName(testClass.getName() + PropertyInjector.SUFFIX, true, testClass.getClassLoader());
+            if (PropertyInjector.class.isAssignableFrom(injectorClass)) {
+                return (PropertyInjector) injectorClass.getDeclaredConstructor().newInstance();
+            }
+        } catch (ClassNotFoundException cnfe) {
+            // not generated, inject by reflection
+        } catch (ReflectiveOperationException roe) {
+            // not usable, inject by reflection
+        } catch (LinkageError le) {
+            // e.g. generated for an older version of the class, inject by reflection
+        }
+        return null;
+    }
+
+    /**
+     * Creates the setter of a field, taking the test instance and the value as objects.
+     */
+    private static MethodHandle createSetter(Field field) {
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle setter;
+        try {
+            setter = lookup.unreflectSetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                setter = MethodHandles.dropArguments(setter, 0, Object.class);
+            }
+        } catch (IllegalAccessException iae) {
+            // final fields cannot be set by method handles, but by the field itself
+            try {
+                setter = lookup.findVirtual(Field.class, "set", SETTER_TYPE).bindTo(field);
+            } catch (ReflectiveOperationException roe) {
+                throw new IllegalStateException("failed to access field " + field, roe);
+            }
+        }
+        return setter.asType(SETTER_TYPE);
+    }
+
+    private static final class Slot {
+        private final String key;
+        private final MethodHandle setter;
+        private final Converter<?> converter;
+        private final boolean primitive;
+        private final Fixtures.Factory factory;
+
+        Slot(String key, Field field, Converter<?> converter, Fixtures.Factory factory) {
+            this.key = key;
+            this.setter = createSetter(field);
+            this.converter = converter;
+            this.primitive = field.getType().isPrimitive();
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package de.jaberu.test;
+
+/**
+ * Emits the phases as {@link PhaseEvent}s. Only loaded by reflection if the JVM has the <code>jdk.jfr</code> module.
+ */
+final class JfrPhaseSink implements PhaseRecorder.Sink {
+
+    public boolean isEnabled() {
+        return new PhaseEvent().isEnabled();
+    }
+
+    public Object begin() {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    public void end(Object token, Phase phase, Class<?> testClass, String method, EnvironmentContext context, long exclusive) {
+        PhaseEvent event = (PhaseEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.testClass = testClass.getName();
+            event.method = method;
+            event.stage = context.getStage();
+            event.publication = context.getPublication();
+            event.phase = phase.toString();
+            event.exclusive = exclusive;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package de.jaberu.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the test methods to create by an expression over the stage, the publication, the method name
+ * and the test class name, given by the {@value Environment#SELECT} system property. Example:
+ * <pre>
+ * stage=dev &amp; publication in (a,b) &amp; !(method~login*) | class~*Smoke*
+ * </pre>
+ * Supported are <code>=</code>, <code>!=</code>, <code>~</code> (with the wildcards <code>*</code> and
+ * <code>?</code>) and <code>in (...)</code>, combined by <code>&amp;</code>, <code>|</code>, <code>!</code>
+ * and parentheses. Values can be quoted by <code>'</code> or <code>"</code>. A missing stage or publication
+ * is the empty string. The class is compared by its fully qualified name.
+ * <p>
+ * If stage and publication are not known yet, the filter can be evaluated with them unknown. Then it tells whether
+ * a method is not selected in any case, or whether it depends on the context.
+ */
+final class MatrixFilter {
+
+    private final Node root;
+
+    private MatrixFilter(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param expression the filter expression
+     * @return the parsed filter
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static MatrixFilter parse(String expression) {
+        Parser parser = new Parser(expression);
+        Node root = parser.parseOr();
+        parser.skipWhiteSpace();
+        if (parser.position < expression.length()) {
+            throw parser.error("unexpected '" + expression.charAt(parser.position) + "'");
+        }
+        return new MatrixFilter(root);
+    }
+
+    /**
+     * @param testClass the test class
+     * @param method    the test method name
+     * @param context   stage and publication
+     * @return true if the method should be created for the context
+     */
+    boolean matches(Class<?> testClass, String method, EnvironmentContext context) {
+        String[] fields = new String[Field.values().length];
+        fields[Field.CLASS.ordinal()] = testClass.getName();
+        fields[Field.METHOD.ordinal()] = method;
+        fields[Field.STAGE.ordinal()] = context.getStage() != null ? context.getStage() : "";
+        fields[Field.PUBLICATION.ordinal()] = context.getPublication() != null ? context.getPublication() : "";
+        return Boolean.TRUE.equals(root.matches(fields));
+    }
+
+    /**
+     * @param testClass the test class
+     * @param method    the test method name
+     * @return false if the method is not selected whatever stage and publication are, true if it may be
+     */
+    boolean mayMatch(Class<?> testClass, String method) {
+        String[] fields = new String[Field.values().length];
+        fields[Field.CLASS.ordinal()] = testClass.getName();
+        fields[Field.METHOD.ordinal()] = method;
+        return !Boolean.FALSE.equals(root.matches(fields));
+    }
+
+    private enum Field {
+        CLASS, METHOD, STAGE, PUBLICATION
+    }
+
+    /**
+     * A node of the expression, fields not known are null and lead to the result null if the result depends on them.
+     */
+    private interface Node {
+        Boolean matches(String[] fields);
+    }
+
+    private static final class Parser {
+        private final String expression;
+        private int position;
+
+        Parser(String expression) {
+            this.expression = expression;
+        }
+
+        Node parseOr() {
+            final Node left = parseAnd();
+            if (!consume('|')) {
+                return left;
+            }
+            final Node right = parseOr();
+            return new Node() {
+                public Boolean matches(String[] fields) {
+                    Boolean first = left.matches(fields);
+                    if (Boolean.TRUE.equals(first)) {
+                        return true;
+                    }
+                    Boolean second = right.matches(fields);
+                    return first == null && !Boolean.TRUE.equals(second) ? null : second;
+                }
+            };
+        }
+
+        Node parseAnd() {
+            final Node left = parseUnary();
+            if (!consume('&')) {
+                return left;
+            }
+            final Node right = parseAnd();
+            return new Node() {
+                public Boolean matches(String[] fields) {
+                    Boolean first = left.matches(fields);
+                    if (Boolean.FALSE.equals(first)) {
+                        return false;
+                    }
+                    Boolean second = right.matches(fields);
+                    return first == null && !Boolean.FALSE.equals(second) ? null : second;
+                }
+            };
+        }
+
+        Node parseUnary() {
+            if (consume('!')) {
+                final Node negated = parseUnary();
+                return new Node() {
+                    public Boolean matches(String[] fields) {
+                        Boolean result = negated.matches(fields);
+                        return result != null ? !result : null;
+                    }
+                };
+            }
+            if (consume('(')) {
+                Node node = parseOr();
+                if (!consume(')')) {
+                    throw error("')' expected");
+                }
+                return node;
+            }
+            return parseComparison();
+        }
+
+        Node parseComparison() {
+            String name = readWord();
+            final Field field;
+            try {
+                field = Field.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                throw error("unknown field '" + name + "', expected stage, publication, method or class");
+            }
+            skipWhiteSpace();
+            if (expression.startsWith("!=", position)) {
+                position += 2;
+                final String value = readValue();
+                return new Node() {
+                    public Boolean matches(String[] fields) {
+                        String actual = fields[field.ordinal()];
+                        return actual != null ? !value.equals(actual) : null;
+                    }
+                };
+            }
+            if (consume('=')) {
+                final String value = readValue();
+                return new Node() {
+                    public Boolean matches(String[] fields) {
+                        String actual = fields[field.ordinal()];
+                        return actual != null ? value.equals(actual) : null;
+                    }
+                };
+            }
+            if (consume('~')) {
+                final Pattern pattern = toPattern(readValue());
+                return new Node() {
+                    public Boolean matches(String[] fields) {
+                        String actual = fields[field.ordinal()];
+                        return actual != null ? pattern.matcher(actual).matches() : null;
+                    }
+                };
+            }
+            if ("in".equalsIgnoreCase(readWord())) {
+                if (!consume('(')) {
+                    throw error("'(' expected");
+                }
+                final List<String> values = new ArrayList<String>();
+                if (!consume(')')) {
+                    do {
+                        values.add(readValue());
+                    } while (consume(','));
+                    if (!consume(')')) {
+                        throw error("')' expected");
+                    }
+                }
+                return new Node() {
+                    public Boolean matches(String[] fields) {
+                        String actual = fields[field.ordinal()];
+                        return actual != null ? values.contains(actual) : null;
+                    }
+                };
+            }
+            throw error("'=', '!=', '~' or 'in' expected");
+        }
+
+        private String readWord() {
+            skipWhiteSpace();
+            int start = position;
+            while (position < expression.length() && Character.isLetter(expression.charAt(position))) {
+                position++;
+            }
+            return expression.substring(start, position);
+        }
+
+        private String readValue() {
+            skipWhiteSpace();
+            if (position < expression.length() && (expression.charAt(position) == '\'' || expression.charAt(position) == '"')) {
+                char quote = expression.charAt(position);
+                int end = expression.indexOf(quote, position + 1);
+                if (end < 0) {
+                    throw error("unterminated quote");
+                }
+                String value = expression.substring(position + 1, end);
+                position = end + 1;
+                return value;
+            }
+            int start = position;
+            while (position < expression.length() && "&|!(), \t".indexOf(expression.charAt(position)) < 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("value expected");
+            }
+            return expression.substring(start, position);
+        }
+
+        private boolean consume(char c) {
+            skipWhiteSpace();
+            if (position < expression.length() && expression.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void skipWhiteSpace() {
+            while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+                position++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " of filter '" + expression + "'");
+        }
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
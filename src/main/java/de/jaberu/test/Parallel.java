@@ -0,0 +1,49 @@
+package de.jaberu.test;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a test class whose test methods may be executed concurrently. That is mostly useful
+ * in combination with a list of publications, since every test method is executed once for
+ * each publication and most of the time is spent waiting for the remote systems.
+ *
+ * The number of worker threads can also be given by the {@value Environment#THREADS} system
+ * property, what overrides the annotation value and also enables the parallel mode for classes
+ * without this annotation. A property value of {@value Environment#VIRTUAL} selects virtual threads.
+ *
+ * For tests mostly blocked by I/O the methods can also be run on virtual threads, one for each
+ * method. Then the number of methods running at the same time should be limited for each stage
+ * by {@link #maxPerStage()}, otherwise the test systems might be flooded. On JVMs without virtual
+ * threads we fall back to a pool of platform threads.
+ *
+ * Each test method still gets its own test instance, so the injected properties are not shared
+ * between the concurrently running methods. However static state of the test class is.
+ *
+ * This annotation only works if the {@link EnvironmentTestRunner} is used.
+ *
+ * @see EnvironmentTestRunner
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Parallel {
+
+    /**
+     * @return number of worker threads, <code>0</code> means one thread per available processor
+     */
+    int value() default 0;
+
+    /**
+     * @return true to run each test method on an own virtual thread, the {@link #value()} is ignored then
+     */
+    boolean virtual() default false;
+
+    /**
+     * Can also be given by the {@value Environment#MAX_PER_STAGE} system property.
+     *
+     * @return maximum number of test methods running at the same time for one stage, <code>0</code> means unlimited
+     */
+    int maxPerStage() default 0;
+}
@@ -0,0 +1,119 @@
+package de.jaberu.test;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler executing the children of a runner on a pool of worker threads. The pool is either
+ * fixed by a number of platform threads or unbounded, what is used in combination with virtual
+ * threads to start an own thread for each child.
+ *
+ * The pool is created with the first scheduled child and shut down again if all children
+ * finished, so the same scheduler can be used for several runs.
+ */
+class ParallelScheduler implements RunnerScheduler {
+
+    private final String name;
+    private final int threads;
+    private final ThreadFactory threadFactory;
+
+    private ExecutorService executor;
+    private List<Future<?>> children;
+
+    /**
+     * Creates a scheduler using a fixed number of platform threads.
+     *
+     * @param name    used as prefix of the thread names
+     * @param threads number of worker threads
+     */
+    ParallelScheduler(String name, int threads) {
+        this(name, threads, new WorkerFactory(name));
+    }
+
+    /**
+     * @param name          used for error messages
+     * @param threads       number of worker threads, <code>0</code> creates a new thread whenever no idle one exists
+     * @param threadFactory factory of the worker threads
+     */
+    ParallelScheduler(String name, int threads, ThreadFactory threadFactory) {
+        this.name = name;
+        this.threads = threads;
+        this.threadFactory = threadFactory;
+    }
+
+    public synchronized void schedule(Runnable childStatement) {
+        if (executor == null) {
+            executor = threads > 0
+                    ? Executors.newFixedThreadPool(threads, threadFactory)
+                    : Executors.newCachedThreadPool(threadFactory);
+            children = new ArrayList<Future<?>>();
+        }
+        children.add(executor.submit(childStatement));
+    }
+
+    /**
+     * Waits until all scheduled children are done. Since the runner reports the test results by the
+     * notifier itself, we only get an exception here if the child could not be run at all. In that
+     * case the first one is thrown again in the calling thread.
+     */
+    public void finished() {
+        List<Future<?>> scheduled;
+        synchronized (this) {
+            if (executor == null) {
+                return;
+            }
+            executor.shutdown();
+            executor = null;
+            scheduled = children;
+            children = null;
+        }
+        RuntimeException failure = null;
+        for (Future<?> child : scheduled) {
+            try {
+                child.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for test methods of " + name, ie);
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException
+                            ? (RuntimeException) cause : new IllegalStateException(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Names the worker threads by the test class, what makes thread dumps of hanging tests readable.
+     */
+    private static class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String name;
+
+        WorkerFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
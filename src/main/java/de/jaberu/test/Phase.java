@@ -0,0 +1,48 @@
+package de.jaberu.test;
+
+/**
+ * The phases of running a test method, recorded by the {@link PhaseRecorder}.
+ */
+enum Phase {
+
+    /**
+     * resolving the configuration of a stage and publication, once per test class
+     */
+    LOAD_PROPERTIES("loadProperties"),
+
+    /**
+     * injecting the property values and fixtures
+     */
+    INJECTION("injection"),
+
+    /**
+     * the rules, without the phases inside of them
+     */
+    RULES("rules"),
+
+    /**
+     * the methods annotated by {@link org.junit.Before}
+     */
+    BEFORE("before"),
+
+    /**
+     * the test method itself
+     */
+    TEST("test"),
+
+    /**
+     * the methods annotated by {@link org.junit.After}
+     */
+    AFTER("after");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,39 @@
+package de.jaberu.test;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a {@link Phase}. The duration of the event includes the phases running inside,
+ * e.g. the test method inside of the before methods, the exclusive time does not.
+ * <p>
+ * This class is only loaded if the JVM has the <code>jdk.jfr</code> module, see {@link PhaseRecorder}.
+ */
+@Name("de.jaberu.test.Phase")
+@Label("Test Phase")
+@Category({"JUnit", "Environment Test Runner"})
+@Description("A phase of running a test method for a stage and publication")
+class PhaseEvent extends jdk.jfr.Event {
+
+    @Label("Test Class")
+    String testClass;
+
+    @Label("Test Method")
+    String method;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Publication")
+    String publication;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Exclusive Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long exclusive;
+}
@@ -0,0 +1,240 @@
+package de.jaberu.test;
+
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the time spent in each {@link Phase} of the test methods. The phases are emitted as flight recorder
+ * events (see {@link PhaseEvent}) while a recording with the event enabled is running, and summed up for a report
+ * written at the end of the JVM if the {@value Environment#PHASE_REPORT} system property is set.
+ * <p>
+ * Whether to record is checked when the statement of a test method is created. If neither a recording nor the
+ * report is active, the statements are not wrapped at all. The flight recorder classes are only loaded if the
+ * JVM has the <code>jdk.jfr</code> module.
+ */
+final class PhaseRecorder {
+
+    /**
+     * receives the phases, implemented for the flight recorder
+     */
+    interface Sink {
+
+        boolean isEnabled();
+
+        Object begin();
+
+        void end(Object token, Phase phase, Class<?> testClass, String method, EnvironmentContext context, long exclusive);
+    }
+
+    private static final Sink jfr = createJfrSink();
+
+    /**
+     * the nanoseconds spent in the phases running inside of the current one, per thread
+     */
+    private static final ThreadLocal<long[]> nested = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * count, total and maximum nanoseconds by test class and phase
+     */
+    private static final ConcurrentMap<String, long[]> totals = new ConcurrentHashMap<String, long[]>();
+
+    private static volatile boolean reportHookAdded;
+
+    private PhaseRecorder() {}
+
+    /**
+     * @return true if the phases should be recorded
+     */
+    static boolean isEnabled() {
+        return isReportEnabled() || jfr != null && jfr.isEnabled();
+    }
+
+    /**
+     * Wraps a statement to record its time as the given phase.
+     *
+     * @param phase     the phase
+     * @param testClass the test class
+     * @param method    the test method with its context
+     * @param next      the statement running the phase
+     * @return the wrapped statement
+     */
+    static Statement timed(final Phase phase, final Class<?> testClass, final EnvironmentFrameworkMethod method, final Statement next) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Object event = jfr != null ? jfr.begin() : null;
+                long[] inner = nested.get();
+                long outerInner = inner[0];
+                inner[0] = 0;
+                long start = System.nanoTime();
+                try {
+                    next.evaluate();
+                } finally {
+                    long duration = System.nanoTime() - start;
+                    long exclusive = duration - inner[0];
+                    inner[0] = outerInner + duration;
+                    if (event != null) {
+                        jfr.end(event, phase, testClass, method.getMethod().getName(), method.getContext(), exclusive);
+                    }
+                    add(phase, testClass, exclusive);
+                }
+            }
+        };
+    }
+
+    /**
+     * Records a phase not run as statement.
+     *
+     * @param phase     the phase
+     * @param testClass the test class
+     * @param method    the test method with its context
+     * @param start     start of the phase by {@link System#nanoTime()}
+     */
+    static void record(Phase phase, Class<?> testClass, EnvironmentFrameworkMethod method, long start) {
+        long duration = System.nanoTime() - start;
+        if (jfr != null && jfr.isEnabled()) {
+            // the event is created afterwards, so its duration is not known to the recorder
+            jfr.end(jfr.begin(), phase, testClass, method.getMethod().getName(), method.getContext(), duration);
+        }
+        add(phase, testClass, duration);
+    }
+
+    private static void add(Phase phase, Class<?> testClass, long nanos) {
+        if (!isReportEnabled()) {
+            return;
+        }
+        String key = testClass.getName() + " " + phase;
+        long[] total = totals.get(key);
+        if (total == null) {
+            long[] created = new long[3];
+            total = totals.putIfAbsent(key, created);
+            if (total == null) {
+                total = created;
+            }
+        }
+        synchronized (total) {
+            total[0]++;
+            total[1] += nanos;
+            total[2] = Math.max(total[2], nanos);
+        }
+        addReportHook();
+    }
+
+    private static boolean isReportEnabled() {
+        return System.getProperty(Environment.PHASE_REPORT) != null;
+    }
+
+    private static void addReportHook() {
+        if (reportHookAdded) {
+            return;
+        }
+        synchronized (PhaseRecorder.class) {
+            if (reportHookAdded) {
+                return;
+            }
+            reportHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread("phase-report") {
+                @Override
+                public void run() {
+                    String file = System.getProperty(Environment.PHASE_REPORT);
+                    if (file == null) {
+                        return;
+                    }
+                    try {
+                        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(file)), "UTF-8");
+                        try {
+                            writeReport(writer);
+                        } finally {
+                            writer.close();
+                        }
+                    } catch (IOException ioe) {
+                        System.err.println("failed to write phase report " + file + ": " + ioe);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the summary of all recorded phases, ordered by test class and phase.
+     *
+     * @param writer the target
+     */
+    static void writeReport(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.printf("%-60s %-15s %8s %12s %12s %12s%n", "class", "phase", "count", "total ms", "mean ms", "max ms");
+        List<String> keys = new ArrayList<String>(totals.keySet());
+        Collections.sort(keys);
+        long[] all = new long[Phase.values().length];
+        for (String key : keys) {
+            long[] total = totals.get(key);
+            long count;
+            long sum;
+            long max;
+            synchronized (total) {
+                count = total[0];
+                sum = total[1];
+                max = total[2];
+            }
+            int separator = key.lastIndexOf(' ');
+            String phase = key.substring(separator + 1);
+            out.printf("%-60s %-15s %8d %12.3f %12.3f %12.3f%n", key.substring(0, separator), phase, count,
+                    sum / 1e6, sum / 1e6 / count, max / 1e6);
+            for (Phase value : Phase.values()) {
+                if (value.toString().equals(phase)) {
+                    all[value.ordinal()] += sum;
+                }
+            }
+        }
+        for (Phase phase : Phase.values()) {
+            out.printf("%-60s %-15s %8s %12.3f%n", "all", phase, "", all[phase.ordinal()] / 1e6);
+        }
+        out.flush();
+    }
+
+    /**
+     * Drops the recorded totals.
+     */
+    static void reset() {
+        totals.clear();
+    }
+
+    /**
+     * @return totals by "class phase", only for tests
+     */
+    static Map<String, long[]> getTotals() {
+        return totals;
+    }
+
+    private static Sink createJfrSink() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (Sink) Class.forName(PhaseRecorder.class.getPackage().getName() + ".JfrPhaseSink")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException cnfe) {
+            // no flight recorder in this JVM
+            return null;
+        } catch (ReflectiveOperationException roe) {
+            return null;
+        } catch (LinkageError le) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package de.jaberu.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Reads <code>.properties</code> files into a plain map. The format is the same like the one of
+ * {@link java.util.Properties#load(InputStream)}: ISO-8859-1 encoded, <code>#</code> and <code>!</code>
+ * comments, <code>=</code>, <code>:</code> or white space as separator, lines continued by a trailing
+ * backslash and the escapes <code>\t</code>, <code>\n</code>, <code>\r</code>, <code>\f</code> and
+ * <code>&#92;uXXXX</code>.
+ * <p>
+ * Compared to {@link java.util.Properties} the file is read at once (by NIO for files in directories)
+ * and parsed from the byte array, the values are put into an unsynchronized map and the stream is
+ * always closed.
+ */
+final class PropertiesLoader {
+
+    private PropertiesLoader() {}
+
+    /**
+     * Loads a properties file into the given map, existing values are overridden.
+     *
+     * @param url    the properties file
+     * @param target the map to put the values into
+     * @throws IOException if reading fails
+     */
+    static void load(URL url, Map<String, String> target) throws IOException {
+        parse(read(url), target);
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return Files.readAllBytes(Paths.get(url.toURI()));
+            } catch (URISyntaxException use) {
+                // read as stream
+            }
+        }
+        InputStream in = url.openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the content of a properties file.
+     *
+     * @param data   the ISO-8859-1 encoded content
+     * @param target the map to put the values into
+     */
+    static void parse(byte[] data, Map<String, String> target) {
+        char[] line = new char[256];
+        int position = 0;
+        while (true) {
+            // read the next logical line, like java.util.Properties.LineReader
+            int length = 0;
+            boolean skipWhiteSpace = true;
+            boolean appendedLineBegin = false;
+            boolean precedingBackslash = false;
+            boolean escaped = false;
+            while (true) {
+                if (position >= data.length) {
+                    if (length == 0) {
+                        return;
+                    }
+                    if (precedingBackslash) {
+                        length--;
+                    }
+                    break;
+                }
+                char c = (char) (data[position++] & 0xFF);
+                if (skipWhiteSpace) {
+                    if (c == ' ' || c == '\t' || c == '\f') {
+                        continue;
+                    }
+                    if (!appendedLineBegin && (c == '\r' || c == '\n')) {
+                        continue;
+                    }
+                    skipWhiteSpace = false;
+                    appendedLineBegin = false;
+                }
+                if (length == 0 && (c == '#' || c == '!')) {
+                    // a comment, also directly after an empty continued line
+                    while (position < data.length && data[position] != '\r' && data[position] != '\n') {
+                        position++;
+                    }
+                    if (position >= data.length) {
+                        return;
+                    }
+                    position++;
+                    skipWhiteSpace = true;
+                    continue;
+                }
+                if (c != '\n' && c != '\r') {
+                    if (length == line.length) {
+                        char[] grown = new char[length * 2];
+                        System.arraycopy(line, 0, grown, 0, length);
+                        line = grown;
+                    }
+                    line[length++] = c;
+                    if (c == '\\') {
+                        precedingBackslash = !precedingBackslash;
+                        escaped = true;
+                    } else {
+                        precedingBackslash = false;
+                    }
+                    continue;
+                }
+                if (length == 0) {
+                    skipWhiteSpace = true;
+                    continue;
+                }
+                if (position >= data.length) {
+                    // the backslash before the end of the last line is dropped, even if the line becomes empty
+                    if (precedingBackslash) {
+                        length--;
+                    }
+                    break;
+                }
+                if (precedingBackslash) {
+                    // continued on the next line
+                    length--;
+                    precedingBackslash = false;
+                    skipWhiteSpace = true;
+                    appendedLineBegin = true;
+                    if (c == '\r' && data[position] == '\n') {
+                        position++;
+                    }
+                    continue;
+                }
+                break;
+            }
+            addLine(line, length, escaped, target);
+        }
+    }
+
+    /**
+     * Splits a logical line into key and value, like java.util.Properties.load0.
+     */
+    private static void addLine(char[] line, int length, boolean escaped, Map<String, String> target) {
+        int keyLength = 0;
+        int valueStart = length;
+        boolean hasSeparator = false;
+        boolean precedingBackslash = false;
+        while (keyLength < length) {
+            char c = line[keyLength];
+            if ((c == '=' || c == ':') && !precedingBackslash) {
+                valueStart = keyLength + 1;
+                hasSeparator = true;
+                break;
+            } else if ((c == ' ' || c == '\t' || c == '\f') && !precedingBackslash) {
+                valueStart = keyLength + 1;
+                break;
+            }
+            precedingBackslash = c == '\\' && !precedingBackslash;
+            keyLength++;
+        }
+        while (valueStart < length) {
+            char c = line[valueStart];
+            if (c != ' ' && c != '\t' && c != '\f') {
+                if (!hasSeparator && (c == '=' || c == ':')) {
+                    hasSeparator = true;
+                } else {
+                    break;
+                }
+            }
+            valueStart++;
+        }
+        target.put(convert(line, 0, keyLength, escaped), convert(line, valueStart, length - valueStart, escaped));
+    }
+
+    private static String convert(char[] line, int offset, int length, boolean escaped) {
+        if (!escaped) {
+            return new String(line, offset, length);
+        }
+        StringBuilder builder = null;
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (line[i] != '\\') {
+                continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(length);
+            }
+            builder.append(line, start, i - start);
+            if (++i == end) {
+                // trailing backslash at the end of the file
+                start = end;
+                break;
+            }
+            char c = line[i];
+            if (c == 'u') {
+                if (i + 4 >= end) {
+                    throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                }
+                int value = 0;
+                for (int j = 1; j <= 4; j++) {
+                    int digit = Character.digit(line[i + j], 16);
+                    if (digit < 0) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    value = (value << 4) + digit;
+                }
+                builder.append((char) value);
+                i += 4;
+            } else if (c == 't') {
+                builder.append('\t');
+            } else if (c == 'r') {
+                builder.append('\r');
+            } else if (c == 'n') {
+                builder.append('\n');
+            } else if (c == 'f') {
+                builder.append('\f');
+            } else {
+                builder.append(c);
+            }
+            start = i + 1;
+        }
+        if (builder == null) {
+            return new String(line, offset, length);
+        }
+        builder.append(line, start, end - start);
+        return builder.toString();
+    }
+}
@@ -1,26 +1,66 @@
 package de.jaberu.test;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Used to load the properties from classpath.
  *
- * The loaded properties are cached basing on the bundle
+ * The loaded properties are cached basing on the class loader, the bundle, the stage and the publication.
+ * The cache can be accessed concurrently by test methods running in parallel. If several threads miss
+ * the same bundle at the same time, it is loaded only once and the other threads wait for the result.
+ * <p>
+ * The class loaders are only referenced weakly, so the cache does not keep class loaders of former test
+ * runs (e.g. in IDE or build daemon sessions) alive. The cache is bounded by the
+ * {@value Environment#PROPERTY_CACHE_SIZE} system property (default {@value #DEFAULT_MAX_ENTRIES} bundles),
+ * if there are more bundles the ones not used for the longest time are evicted.
+ * <p>
+ * If the {@value Environment#WATCH_BUNDLES} system property is set, the files of the loaded bundles are
+ * watched and changed bundles are removed from the cache.
+ * <p>
+ * Detailed metrics per bundle, stage and publication are collected by {@link PropertyMetrics} if enabled.
  *
  * Created by aherr on 13.11.2015.
  */
 public class PropertyCache {
 
-    private static Map<CacheKey, Properties> cache = new HashMap<CacheKey, Properties>();
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final ConcurrentMap<CacheKey, Entry> cache = new ConcurrentHashMap<CacheKey, Entry>();
+
+    private static final ReferenceQueue<ClassLoader> collected = new ReferenceQueue<ClassLoader>();
+
+    private static final AtomicLong clock = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong loadTime = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final Object evictionLock = new Object();
 
     /**
      * Gets the properties instance for the given stage and publication.
      *
-     * Before loading we check if we already loaded that bundle and serve it from cache in that case.
+     * The instance is created once from the cached bundle and shared by all callers, so it must not be changed.
      *
      * @param loader class what is used to load the properties
      * @param bundle the name of the bundle to load
@@ -28,17 +68,215 @@ public class PropertyCache {
      * @param publication the publication, can be null
      * @return properties including all stage and publication specific overrides
      * @throws IOException if loading fails
+     * @see #getBundle(Class, String, String, String)
      */
     public static Properties getProperties(Class<?> loader, String bundle, String stage, String publication) throws IOException {
-        CacheKey key = new CacheKey(bundle, stage, publication);
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+        Entry entry = getEntry(loader, bundle, stage, publication);
+        Map<String, String> values = getValues(entry, bundle);
+        synchronized (entry) {
+            if (entry.properties == null) {
+                Properties properties = new Properties();
+                properties.putAll(values);
+                entry.properties = properties;
+            }
+            return entry.properties;
+        }
+    }
+
+    /**
+     * Gets the values of the bundle for the given stage and publication.
+     *
+     * Before loading we check if we already loaded that bundle and serve it from cache in that case.
+     *
+     * @param loader class what is used to load the properties
+     * @param bundle the name of the bundle to load
+     * @param stage the stage, can be null
+     * @param publication the publication, can be null
+     * @return unmodifiable map including all stage and publication specific overrides
+     * @throws IOException if loading fails
+     */
+    public static Map<String, String> getBundle(Class<?> loader, String bundle, String stage, String publication) throws IOException {
+        return getValues(getEntry(loader, bundle, stage, publication), bundle);
+    }
+
+    private static Entry getEntry(final Class<?> loader, final String bundle, final String stage, final String publication) {
+        purgeCollected();
+        ClassLoader classLoader = loader.getClassLoader();
+        Entry entry = cache.get(new CacheKey(classLoader, bundle, stage, publication, null));
+        if (entry == null) {
+            Entry created = new Entry(new FutureTask<Map<String, String>>(new Callable<Map<String, String>>() {
+                public Map<String, String> call() throws IOException {
+                    Map<String, String> values = createResourceBundle(loader, bundle, stage, publication);
+                    if (PropertyMetrics.isEnabled()) {
+                        PropertyMetrics.loaded(bundle, values.keySet());
+                    }
+                    return values;
+                }
+            }));
+            // used before being added, so the eviction never takes it for the oldest entry
+            created.lastAccess = clock.incrementAndGet();
+            CacheKey key = new CacheKey(classLoader, bundle, stage, publication, collected);
+            entry = cache.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+                misses.incrementAndGet();
+                if (BundleWatcher.isEnabled()) {
+                    // watch before loading, so no change after reading the files is missed
+                    BundleWatcher.watch(key, loader, bundle, stage, publication);
+                }
+                long start = System.nanoTime();
+                created.task.run();
+                long duration = System.nanoTime() - start;
+                loadTime.addAndGet(duration);
+                if (PropertyMetrics.isEnabled()) {
+                    PropertyMetrics.miss(bundle, stage, publication, duration);
+                }
+                evict(created);
+            } else {
+                hit(bundle, stage, publication);
+            }
+        } else {
+            hit(bundle, stage, publication);
+        }
+        entry.lastAccess = clock.incrementAndGet();
+        return entry;
+    }
+
+    private static void hit(String bundle, String stage, String publication) {
+        hits.incrementAndGet();
+        if (PropertyMetrics.isEnabled()) {
+            PropertyMetrics.hit(bundle, stage, publication);
+        }
+    }
+
+    private static Map<String, String> getValues(Entry entry, String bundle) throws IOException {
+        try {
+            return entry.task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for bundle " + bundle);
+        } catch (ExecutionException ee) {
+            // do not cache the failure, the next call tries again
+            cache.values().remove(entry);
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return snapshot of the cache statistics
+     */
+    public static Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), loadTime.get(), evictions.get(), cache.size());
+    }
+
+    /**
+     * @param bundle      the bundle name
+     * @param stage       the stage, can be null
+     * @param publication the publication, can be null
+     * @return number of cached entries of the bundle, one per class loader
+     */
+    static int getSize(String bundle, String stage, String publication) {
+        int size = 0;
+        for (CacheKey key : cache.keySet()) {
+            if (key.matches(bundle, stage, publication)) {
+                size++;
+            }
         }
-        Properties properties = createResourceBundle(loader, bundle, stage, publication);
-        cache.put(key, properties);
-        return properties;
+        return size;
     }
 
+    /**
+     * Removes all cached bundles, e.g. if the bundles changed.
+     */
+    public static void clear() {
+        cache.clear();
+        BundleIndex.clear();
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Removes a single bundle, what is loaded again on next use.
+     *
+     * @param key the cache key
+     */
+    static void invalidate(Object key) {
+        // the file might be new, so the index is outdated too
+        BundleIndex.clear();
+        if (cache.remove(key) != null) {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * The generation changes whenever cached bundles are removed since they changed. So everything
+     * derived from the cached bundles can be checked for being outdated.
+     *
+     * @return the current generation
+     */
+    static long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Evicts the bundles not used for the longest time, if the cache is bigger than allowed.
+     *
+     * @param added the entry just added, never evicted
+     */
+    private static void evict(Entry added) {
+        int maxEntries = getMaxEntries();
+        if (cache.size() <= maxEntries) {
+            return;
+        }
+        synchronized (evictionLock) {
+            List<Map.Entry<CacheKey, Entry>> entries = new ArrayList<Map.Entry<CacheKey, Entry>>(cache.entrySet());
+            if (entries.size() <= maxEntries) {
+                return;
+            }
+            Collections.sort(entries, new Comparator<Map.Entry<CacheKey, Entry>>() {
+                public int compare(Map.Entry<CacheKey, Entry> a, Map.Entry<CacheKey, Entry> b) {
+                    return Long.compare(a.getValue().lastAccess, b.getValue().lastAccess);
+                }
+            });
+            int excess = entries.size() - maxEntries;
+            for (Map.Entry<CacheKey, Entry> entry : entries) {
+                if (excess == 0) {
+                    break;
+                }
+                if (entry.getValue() != added && cache.remove(entry.getKey(), entry.getValue())) {
+                    evictions.incrementAndGet();
+                    excess--;
+                }
+            }
+        }
+    }
+
+    private static int getMaxEntries() {
+        String property = System.getProperty(Environment.PROPERTY_CACHE_SIZE);
+        if (property != null) {
+            try {
+                return Math.max(1, Integer.parseInt(property.trim()));
+            } catch (NumberFormatException nfe) {
+                // use default
+            }
+        }
+        return DEFAULT_MAX_ENTRIES;
+    }
+
+    /**
+     * Removes the bundles of class loaders already collected.
+     */
+    private static void purgeCollected() {
+        for (Reference<? extends ClassLoader> reference = collected.poll(); reference != null; reference = collected.poll()) {
+            cache.remove(((LoaderReference) reference).key);
+        }
+    }
 
     /**
      * Here we add a bundle by first loading the base bundle. Afterwards we check if an environment-specific bundle
@@ -51,27 +289,32 @@ public class PropertyCache {
      * @param resource the bundles name
      * @param stage the stage to look for, can be null
      * @param publication the publication to look for, can be null
-     * @return properties instance
-     * @throws IOException from {@link Properties#load(InputStream)}
+     * @return unmodifiable map of the values
+     * @throws IOException if the base bundle does not exist or reading fails
      */
-    private static Properties createResourceBundle(Class<?> loader, String resource, String stage, String publication) throws IOException {
-        Properties properties = new Properties();
+    private static Map<String, String> createResourceBundle(Class<?> loader, String resource, String stage, String publication) throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
         // loads the base resource
         StringBuilder builder = new StringBuilder(SLASH);
         builder.append(resource);
         builder.append(PROPERTIES);
-        properties.load(loader.getResourceAsStream(builder.toString()));
-        // check environment specific overrides
+        URL base = loader.getResource(builder.toString());
+        if (base == null) {
+            throw new FileNotFoundException("resource bundle " + builder + " not found");
+        }
+        PropertiesLoader.load(base, values);
+        // check environment specific overrides, the index knows if they exist without asking the class loader
+        BundleIndex index = BundleIndex.forLoader(loader.getClassLoader());
         if (stage != null) {
             builder = new StringBuilder(SLASH);
             builder.append(stage.toLowerCase());
             builder.append(SLASH);
             builder.append(resource);
             builder.append(PROPERTIES);
-            InputStream publicationSpecific = loader.getResourceAsStream(builder.toString());
-            if (publicationSpecific != null) {
+            URL stageSpecific = getResource(loader, index, builder.toString());
+            if (stageSpecific != null) {
                 // might be null if nothing specific for the environment exists
-                properties.load(publicationSpecific);
+                PropertiesLoader.load(stageSpecific, values);
             }
             if (publication != null) {
                 builder = new StringBuilder(SLASH);
@@ -81,28 +324,130 @@ public class PropertyCache {
                 builder.append(SLASH);
                 builder.append(resource);
                 builder.append(PROPERTIES);
-                InputStream stageSpecific = loader.getResourceAsStream(builder.toString());
-                if (stageSpecific != null) {
+                URL publicationSpecific = getResource(loader, index, builder.toString());
+                if (publicationSpecific != null) {
                     // might be null if nothing specific for the environment exists
-                    properties.load(stageSpecific);
+                    PropertiesLoader.load(publicationSpecific, values);
                 }
             }
         }
-        return properties;
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static URL getResource(Class<?> loader, BundleIndex index, String resource) {
+        if (index != null && !index.contains(resource)) {
+            return null;
+        }
+        return loader.getResource(resource);
+    }
+
+    /**
+     * The statistics of the cache.
+     */
+    public static final class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long loadTime;
+        private final long evictions;
+        private final int size;
+
+        Statistics(long hits, long misses, long loadTime, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.loadTime = loadTime;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        /**
+         * @return number of requests served from cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return number of requests loading the bundle
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return total time spent loading bundles in nanoseconds
+         */
+        public long getLoadTime() {
+            return loadTime;
+        }
+
+        /**
+         * @return number of bundles evicted since the cache was full
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return number of cached bundles
+         */
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", loadTime=" + loadTime / 1000000 + "ms, evictions="
+                    + evictions + ", size=" + size;
+        }
+    }
+
+    private static class Entry {
+        private final FutureTask<Map<String, String>> task;
+        private volatile long lastAccess;
+        private Properties properties;
+
+        Entry(FutureTask<Map<String, String>> task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Weak reference to the class loader of a cache key, what removes the key if the loader was collected.
+     */
+    private static class LoaderReference extends WeakReference<ClassLoader> {
+        private final CacheKey key;
+
+        LoaderReference(ClassLoader loader, CacheKey key, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.key = key;
+        }
     }
 
     private static class CacheKey {
-        private String bundle;
-        private String stage;
-        private String publication;
+        private final LoaderReference loader;
+        private final int loaderHash;
+        private final String bundle;
+        private final String stage;
+        private final String publication;
 
-        public CacheKey(String bundle, String stage, String publication) {
+        /**
+         * @param queue where to register the loader reference, null for keys only used for lookup
+         */
+        CacheKey(ClassLoader loader, String bundle, String stage, String publication, ReferenceQueue<ClassLoader> queue) {
+            this.loader = new LoaderReference(loader, this, loader != null ? queue : null);
+            this.loaderHash = System.identityHashCode(loader);
             this.bundle = bundle;
             this.stage = stage;
             this.publication = publication;
         }
 
 
+        boolean matches(String bundle, String stage, String publication) {
+            return this.bundle.equals(bundle) && (this.stage != null ? this.stage.equals(stage) : stage == null)
+                    && (this.publication != null ? this.publication.equals(publication) : publication == null);
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -110,6 +455,10 @@ public class PropertyCache {
 
             CacheKey cacheKey = (CacheKey) o;
 
+            if (loaderHash != cacheKey.loaderHash) return false;
+            ClassLoader classLoader = loader.get();
+            if (classLoader != cacheKey.loader.get()) return false;
+            if (classLoader == null && loaderHash != 0) return false; // collected loaders are never equal
             if (bundle != null ? !bundle.equals(cacheKey.bundle) : cacheKey.bundle != null) return false;
             if (stage != null ? !stage.equals(cacheKey.stage) : cacheKey.stage != null) return false;
             return !(publication != null ? !publication.equals(cacheKey.publication) : cacheKey.publication != null);
@@ -118,7 +467,8 @@ public class PropertyCache {
 
         @Override
         public int hashCode() {
-            int result = bundle != null ? bundle.hashCode() : 0;
+            int result = loaderHash;
+            result = 31 * result + (bundle != null ? bundle.hashCode() : 0);
             result = 31 * result + (stage != null ? stage.hashCode() : 0);
             result = 31 * result + (publication != null ? publication.hashCode() : 0);
             return result;
@@ -0,0 +1,28 @@
+package de.jaberu.test;
+
+/**
+ * Injects the {@link PropertyValue} fields of a test class by plain field assignments instead of reflection.
+ * <p>
+ * Injectors are generated at compile time by the annotation processor of the
+ * <code>environment-test-runner-processor</code> module. The generated class is named like the test class with
+ * the suffix {@value #SUFFIX} and lives in the same package. If the runner finds such a class for a test class,
+ * it is used instead of the reflective injection. {@link Fixture} fields are still injected by the runner.
+ */
+public interface PropertyInjector {
+
+    /**
+     * appended to the binary name of the test class to get the name of its injector
+     */
+    String SUFFIX = "$$PropertyInjector";
+
+    /**
+     * Injects the property values, the stage and the publication. If there is no value, primitive fields keep
+     * their default and other fields are set to null.
+     *
+     * @param test          the test class instance
+     * @param configuration the resolved configuration of the test class
+     * @param context       stage and publication of the test method
+     * @throws IllegalArgumentException if a value cannot be converted
+     */
+    void inject(Object test, ResolvedConfiguration configuration, EnvironmentContext context);
+}
@@ -0,0 +1,336 @@
+package de.jaberu.test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects how well the {@link PropertyCache} works and which property keys are used, if the
+ * {@value Environment#METRICS} or the {@value Environment#METRICS_FILE} system property is set.
+ * <p>
+ * Hits, misses and load time are counted per bundle, stage and publication by striped counters, so test
+ * methods running in parallel do not contend for them. The keys loaded from a bundle are compared with the
+ * keys read from the configurations, by injected fields, references or the tests, to find the keys never
+ * used by any test.
+ * <p>
+ * The metrics are registered as MBean <code>de.jaberu.test:type=PropertyMetrics</code> and written as JSON
+ * to the {@value Environment#METRICS_FILE} when the JVM ends.
+ */
+public final class PropertyMetrics implements PropertyMetricsMBean {
+
+    static final String OBJECT_NAME = "de.jaberu.test:type=PropertyMetrics";
+
+    private static final PropertyMetrics instance = new PropertyMetrics();
+
+    private static volatile boolean initialized;
+
+    private final ConcurrentMap<BundleKey, Counters> counters = new ConcurrentHashMap<BundleKey, Counters>();
+
+    /**
+     * keys loaded by bundle name, over all stages and publications
+     */
+    private final ConcurrentMap<String, Set<String>> loadedKeys = new ConcurrentHashMap<String, Set<String>>();
+
+    private final Set<String> readKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private PropertyMetrics() {}
+
+    /**
+     * @return the collected metrics
+     */
+    public static PropertyMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return true if the metrics are collected
+     */
+    static boolean isEnabled() {
+        if (System.getProperty(Environment.METRICS_FILE) == null && !Boolean.getBoolean(Environment.METRICS)) {
+            return false;
+        }
+        if (!initialized) {
+            initialize();
+        }
+        return true;
+    }
+
+    static void hit(String bundle, String stage, String publication) {
+        instance.getCounters(bundle, stage, publication).hits.increment();
+    }
+
+    static void miss(String bundle, String stage, String publication, long nanos) {
+        Counters counters = instance.getCounters(bundle, stage, publication);
+        counters.misses.increment();
+        counters.loadTime.add(nanos);
+    }
+
+    /**
+     * @param bundle the bundle name
+     * @param keys   the keys of the loaded bundle including its stage and publication layers
+     */
+    static void loaded(String bundle, Collection<String> keys) {
+        Set<String> loaded = instance.loadedKeys.get(bundle);
+        if (loaded == null) {
+            Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            loaded = instance.loadedKeys.putIfAbsent(bundle, created);
+            if (loaded == null) {
+                loaded = created;
+            }
+        }
+        loaded.addAll(keys);
+    }
+
+    /**
+     * @param key a key read from a configuration, by an injected field, a reference or the test itself
+     */
+    static void read(String key) {
+        // most keys are read again and again, so look before writing
+        if (!instance.readKeys.contains(key)) {
+            instance.readKeys.add(key);
+        }
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Counters counter : counters.values()) {
+            hits += counter.hits.sum();
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Counters counter : counters.values()) {
+            misses += counter.misses.sum();
+        }
+        return misses;
+    }
+
+    public long getLoadTimeMillis() {
+        long loadTime = 0;
+        for (Counters counter : counters.values()) {
+            loadTime += counter.loadTime.sum();
+        }
+        return loadTime / 1000000;
+    }
+
+    public int getEntryCount() {
+        return PropertyCache.getStatistics().getSize();
+    }
+
+    public String[] getBundleStatistics() {
+        List<String> lines = new ArrayList<String>();
+        for (BundleKey key : getSortedKeys()) {
+            Counters counter = counters.get(key);
+            lines.add(key + ": hits=" + counter.hits.sum() + ", misses=" + counter.misses.sum() + ", loadTime="
+                    + counter.loadTime.sum() / 1000000 + "ms, entries="
+                    + PropertyCache.getSize(key.bundle, key.stage, key.publication));
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public String[] getReadKeys() {
+        Set<String> keys = new TreeSet<String>(readKeys);
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    public String[] getUnusedKeys() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, Set<String>> unused : getUnused().entrySet()) {
+            for (String key : unused.getValue()) {
+                lines.add(unused.getKey() + ": " + key);
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public String dump() {
+        StringBuilder json = new StringBuilder("{\n  \"bundles\": [");
+        String separator = "\n";
+        for (BundleKey key : getSortedKeys()) {
+            Counters counter = counters.get(key);
+            json.append(separator).append("    {\"bundle\": ");
+            appendString(json, key.bundle).append(", \"stage\": ");
+            appendString(json, key.stage).append(", \"publication\": ");
+            appendString(json, key.publication).append(", \"hits\": ").append(counter.hits.sum())
+                    .append(", \"misses\": ").append(counter.misses.sum())
+                    .append(", \"loadTimeNanos\": ").append(counter.loadTime.sum())
+                    .append(", \"entries\": ").append(PropertyCache.getSize(key.bundle, key.stage, key.publication))
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append("\n  ],\n  \"readKeys\": ");
+        appendArray(json, new TreeSet<String>(readKeys));
+        json.append(",\n  \"unusedKeys\": {");
+        separator = "\n";
+        for (Map.Entry<String, Set<String>> unused : getUnused().entrySet()) {
+            json.append(separator).append("    ");
+            appendString(json, unused.getKey()).append(": ");
+            appendArray(json, unused.getValue());
+            separator = ",\n";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    public void reset() {
+        counters.clear();
+        loadedKeys.clear();
+        readKeys.clear();
+    }
+
+    private Counters getCounters(String bundle, String stage, String publication) {
+        BundleKey key = new BundleKey(bundle, stage, publication);
+        Counters counter = counters.get(key);
+        if (counter == null) {
+            Counters created = new Counters();
+            counter = counters.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private List<BundleKey> getSortedKeys() {
+        TreeMap<String, BundleKey> sorted = new TreeMap<String, BundleKey>();
+        for (BundleKey key : counters.keySet()) {
+            sorted.put(key.toString(), key);
+        }
+        return new ArrayList<BundleKey>(sorted.values());
+    }
+
+    /**
+     * @return the keys never read, sorted by bundle, bundles without such keys are left out
+     */
+    private TreeMap<String, Set<String>> getUnused() {
+        TreeMap<String, Set<String>> unused = new TreeMap<String, Set<String>>();
+        for (Map.Entry<String, Set<String>> loaded : loadedKeys.entrySet()) {
+            Set<String> keys = new TreeSet<String>(loaded.getValue());
+            keys.removeAll(readKeys);
+            if (!keys.isEmpty()) {
+                unused.put(loaded.getKey(), keys);
+            }
+        }
+        return unused;
+    }
+
+    private static StringBuilder appendArray(StringBuilder json, Collection<String> values) {
+        json.append('[');
+        String separator = "";
+        for (String value : values) {
+            json.append(separator);
+            appendString(json, value);
+            separator = ", ";
+        }
+        return json.append(']');
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    private static synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+        } catch (JMException jme) {
+            // e.g. registered by another class loader, the metrics are still written to the file
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread("property-metrics") {
+            @Override
+            public void run() {
+                String file = System.getProperty(Environment.METRICS_FILE);
+                if (file == null) {
+                    return;
+                }
+                try {
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(new File(file)), "UTF-8");
+                    try {
+                        writer.write(instance.dump());
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException ioe) {
+                    System.err.println("failed to write property metrics " + file + ": " + ioe);
+                }
+            }
+        });
+    }
+
+    private static final class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder loadTime = new LongAdder();
+    }
+
+    private static final class BundleKey {
+        private final String bundle;
+        private final String stage;
+        private final String publication;
+
+        BundleKey(String bundle, String stage, String publication) {
+            this.bundle = bundle;
+            this.stage = stage;
+            this.publication = publication;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BundleKey)) return false;
+
+            BundleKey that = (BundleKey) o;
+
+            if (!bundle.equals(that.bundle)) return false;
+            if (stage != null ? !stage.equals(that.stage) : that.stage != null) return false;
+            return !(publication != null ? !publication.equals(that.publication) : that.publication != null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = bundle.hashCode();
+            result = 31 * result + (stage != null ? stage.hashCode() : 0);
+            result = 31 * result + (publication != null ? publication.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return bundle + " " + (stage != null ? stage : "-") + " " + (publication != null ? publication : "-");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package de.jaberu.test;
+
+/**
+ * Management interface of the {@link PropertyMetrics}.
+ */
+public interface PropertyMetricsMBean {
+
+    /**
+     * @return number of bundle requests served from cache
+     */
+    long getHits();
+
+    /**
+     * @return number of bundle requests loading the bundle
+     */
+    long getMisses();
+
+    /**
+     * @return total time spent loading bundles in milliseconds
+     */
+    long getLoadTimeMillis();
+
+    /**
+     * @return number of cached bundles
+     */
+    int getEntryCount();
+
+    /**
+     * @return one line per bundle, stage and publication with its hits, misses, load time and cached entries
+     */
+    String[] getBundleStatistics();
+
+    /**
+     * @return the sorted keys of the injected fields
+     */
+    String[] getReadKeys();
+
+    /**
+     * @return the sorted keys loaded from a bundle but never injected, as <code>bundle: key</code>
+     */
+    String[] getUnusedKeys();
+
+    /**
+     * @return all metrics as JSON
+     */
+    String dump();
+
+    /**
+     * Drops all collected metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,51 @@
+package de.jaberu.test;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A source of property values, like the system properties, the resource bundles, files or a configuration service.
+ *
+ * The sources are asked in the order given by the {@value Environment#SOURCES} system property, the first source
+ * having a value for a key wins. The loaded values are cached per stage and publication for the time to live of
+ * the source, sources with a time to live are also fetched in background when the runner is created.
+ * <p>
+ * Further sources are registered by {@link PropertySources#register(PropertySource)} or as
+ * <code>META-INF/services/de.jaberu.test.PropertySource</code> service and referenced by their name.
+ * Sources must be thread-safe.
+ *
+ * @see PropertySources
+ */
+public interface PropertySource {
+
+    /**
+     * @return the name to reference the source in the {@value Environment#SOURCES} system property
+     */
+    String getName();
+
+    /**
+     * Loads all values of the source.
+     *
+     * @param testClass the test class
+     * @param context   stage and publication
+     * @return the values, never null
+     * @throws IOException if loading fails
+     */
+    Map<String, String> load(Class<?> testClass, EnvironmentContext context) throws IOException;
+
+    /**
+     * Sources with a time to live must not depend on the test class, since their values are shared by all test classes.
+     *
+     * @return milliseconds the values of a stage and publication are reused, <code>0</code> to load them for each
+     *         test class, {@link Long#MAX_VALUE} to load them only once
+     */
+    long getTimeToLive();
+
+    /**
+     * Values of overriding sources are only used for keys defined by another source or by an injected field.
+     * So the system properties or environment variables do not add all their values to the configuration.
+     *
+     * @return true if the source only overrides values
+     */
+    boolean isOverriding();
+}
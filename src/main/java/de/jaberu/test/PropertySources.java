@@ -0,0 +1,473 @@
+package de.jaberu.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The registry of all {@link PropertySource}s and the resolution of the property values from them.
+ * <p>
+ * The sources to use are given by the {@value Environment#SOURCES} system property, a comma-separated list in the
+ * order of their precedence. Out of the box there are
+ * <ul>
+ * <li><code>system</code>: the system properties</li>
+ * <li><code>env</code>: the environment variables, <code>TEST_KEY</code> is also available as <code>test.key</code></li>
+ * <li><code>bundle</code>: the resource bundles of the test class and its superclasses</li>
+ * <li><code>file:&lt;path&gt;</code>: a JSON, YAML or properties file, chosen by the file extension</li>
+ * <li><code>http://&lt;url&gt;</code> or <code>https://&lt;url&gt;</code>: a configuration service answering
+ * JSON, YAML or properties, chosen by the content type</li>
+ * </ul>
+ * File paths and URLs may contain the placeholders <code>{stage}</code> and <code>{publication}</code>. Missing
+ * files and URLs answering 404 provide no values. Without system property the sources are <code>system,bundle</code>.
+ */
+public final class PropertySources {
+
+    private static final String DEFAULT_SOURCES = "system,bundle";
+
+    private static final long DEFAULT_TTL = 60000;
+
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private static final int READ_TIMEOUT = 30000;
+
+    private static final List<PropertySource> registered = new CopyOnWriteArrayList<PropertySource>();
+
+    /**
+     * the sources created for the entries of the system property, reused so their caches are shared
+     */
+    private static final ConcurrentMap<String, PropertySource> configured = new ConcurrentHashMap<String, PropertySource>();
+
+    private static final ConcurrentMap<PropertySource, ConcurrentMap<EnvironmentContext, Cached>> caches =
+            new ConcurrentHashMap<PropertySource, ConcurrentMap<EnvironmentContext, Cached>>();
+
+    private static final PropertySource SYSTEM = new PropertySource() {
+        public String getName() {
+            return "system";
+        }
+
+        public Map<String, String> load(Class<?> testClass, EnvironmentContext context) {
+            Map<String, String> values = new HashMap<String, String>();
+            for (String key : System.getProperties().stringPropertyNames()) {
+                values.put(key, System.getProperty(key));
+            }
+            return values;
+        }
+
+        public long getTimeToLive() {
+            return 0;
+        }
+
+        public boolean isOverriding() {
+            return true;
+        }
+    };
+
+    private static final PropertySource ENVIRONMENT = new PropertySource() {
+        public String getName() {
+            return "env";
+        }
+
+        public Map<String, String> load(Class<?> testClass, EnvironmentContext context) {
+            Map<String, String> values = new HashMap<String, String>();
+            for (Map.Entry<String, String> variable : System.getenv().entrySet()) {
+                values.put(variable.getKey().toLowerCase().replace('_', '.'), variable.getValue());
+            }
+            // the exact names are preferred
+            values.putAll(System.getenv());
+            return values;
+        }
+
+        public long getTimeToLive() {
+            return Long.MAX_VALUE;
+        }
+
+        public boolean isOverriding() {
+            return true;
+        }
+    };
+
+    private static final PropertySource BUNDLE = new PropertySource() {
+        public String getName() {
+            return "bundle";
+        }
+
+        /**
+         * Here the resources bundles (if defined) are merged into one map, the bundles of the
+         * superclasses override those of the subclasses.
+         */
+        public Map<String, String> load(Class<?> testClass, EnvironmentContext context) throws IOException {
+            Map<String, String> values = new HashMap<String, String>();
+            for (ReflectionUtils.Bundle bundle : ReflectionUtils.getBundles(testClass)) {
+                values.putAll(PropertyCache.getBundle(bundle.getDeclaringClass(), bundle.getName(), context.getStage(), context.getPublication()));
+            }
+            return values;
+        }
+
+        public long getTimeToLive() {
+            // cached by the PropertyCache
+            return 0;
+        }
+
+        public boolean isOverriding() {
+            return false;
+        }
+    };
+
+    private static volatile ExecutorService prefetcher;
+
+    static {
+        for (PropertySource source : ServiceLoader.load(PropertySource.class, PropertySources.class.getClassLoader())) {
+            registered.add(source);
+        }
+    }
+
+    private PropertySources() {}
+
+    /**
+     * Registers a source, to be referenced by its name in the {@value Environment#SOURCES} system property.
+     * A source registered later replaces one with the same name registered before.
+     *
+     * @param source the source
+     */
+    public static void register(PropertySource source) {
+        registered.add(0, source);
+        configured.clear();
+    }
+
+    /**
+     * @return the sources given by the system property, in the order of their precedence
+     * @throws IllegalArgumentException if a source is not known
+     */
+    static List<PropertySource> getSources() {
+        String property = System.getProperty(Environment.SOURCES, DEFAULT_SOURCES);
+        List<PropertySource> sources = new ArrayList<PropertySource>();
+        for (String part : property.split(",")) {
+            String name = part.trim();
+            if (name.length() == 0) {
+                continue;
+            }
+            PropertySource source = configured.get(name);
+            if (source == null) {
+                source = create(name);
+                PropertySource existing = configured.putIfAbsent(name, source);
+                if (existing != null) {
+                    source = existing;
+                }
+            }
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    private static PropertySource create(String name) {
+        for (PropertySource source : registered) {
+            if (name.equals(source.getName())) {
+                return source;
+            }
+        }
+        if (SYSTEM.getName().equals(name)) {
+            return SYSTEM;
+        }
+        if (ENVIRONMENT.getName().equals(name)) {
+            return ENVIRONMENT;
+        }
+        if (BUNDLE.getName().equals(name)) {
+            return BUNDLE;
+        }
+        long ttl = Long.getLong(Environment.SOURCE_TTL, DEFAULT_TTL);
+        if (name.startsWith("file:")) {
+            return new FileSource(name.substring("file:".length()), ttl);
+        }
+        if (name.startsWith("http://") || name.startsWith("https://")) {
+            return new HttpSource(name, ttl);
+        }
+        throw new IllegalArgumentException("unknown property source " + name);
+    }
+
+    /**
+     * Starts loading the sources with a time to live in background, so a slow source is already available
+     * when the first test method needs it.
+     *
+     * @param testClass the test class
+     * @param contexts  the stages and publications going to run
+     */
+    static void prefetch(Class<?> testClass, Collection<EnvironmentContext> contexts) {
+        for (PropertySource source : getSources()) {
+            if (source.getTimeToLive() <= 0) {
+                continue;
+            }
+            for (EnvironmentContext context : contexts) {
+                getCached(source, testClass, context, getPrefetcher());
+            }
+        }
+    }
+
+    /**
+     * Resolves the values of all sources. For each key the value of the first source having one is used.
+     *
+     * @param testClass the test class
+     * @param context   stage and publication
+     * @param keys      the keys of the injected fields, also looked up in the overriding sources
+     * @return the values of all keys
+     * @throws IOException if a source fails
+     */
+    static Map<String, String> resolve(Class<?> testClass, EnvironmentContext context, Collection<String> keys) throws IOException {
+        return resolve(testClass, context, keys, null);
+    }
+
+    /**
+     * Like {@link #resolve(Class, EnvironmentContext, Collection)}, but also hands out the values of the overriding
+     * sources, e.g. to resolve references to keys no other source defines.
+     *
+     * @param testClass  the test class
+     * @param context    stage and publication
+     * @param keys       the keys of the injected fields, also looked up in the overriding sources
+     * @param overriding gets the values of the overriding sources in the order of their precedence, can be null
+     * @return the values of all keys
+     * @throws IOException if a source fails
+     */
+    static Map<String, String> resolve(Class<?> testClass, EnvironmentContext context, Collection<String> keys,
+                                       List<Map<String, String>> overriding) throws IOException {
+        List<PropertySource> sources = getSources();
+        List<Map<String, String>> loaded = new ArrayList<Map<String, String>>(sources.size());
+        Set<String> allKeys = new LinkedHashSet<String>(keys);
+        for (PropertySource source : sources) {
+            Map<String, String> values = load(source, testClass, context);
+            loaded.add(values);
+            if (!source.isOverriding()) {
+                allKeys.addAll(values.keySet());
+            } else if (overriding != null) {
+                overriding.add(values);
+            }
+        }
+        Map<String, String> resolved = new HashMap<String, String>(allKeys.size() * 2);
+        for (String key : allKeys) {
+            for (Map<String, String> values : loaded) {
+                String value = values.get(key);
+                if (value != null) {
+                    resolved.put(key, value);
+                    break;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Drops all cached values of the sources.
+     */
+    public static void clear() {
+        caches.clear();
+    }
+
+    private static Map<String, String> load(PropertySource source, Class<?> testClass, EnvironmentContext context) throws IOException {
+        if (source.getTimeToLive() <= 0) {
+            return source.load(testClass, context);
+        }
+        Cached cached = getCached(source, testClass, context, null);
+        try {
+            return cached.task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading property source " + source.getName());
+        } catch (ExecutionException ee) {
+            // do not cache the failure, the next call tries again
+            caches.get(source).remove(context, cached);
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @param executor runs the loading of a missing or expired value, null to load in the current thread
+     * @return the cached values, maybe still loading
+     */
+    private static Cached getCached(final PropertySource source, final Class<?> testClass, final EnvironmentContext context,
+                                    Executor executor) {
+        ConcurrentMap<EnvironmentContext, Cached> cache = caches.get(source);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<EnvironmentContext, Cached>();
+            ConcurrentMap<EnvironmentContext, Cached> existing = caches.putIfAbsent(source, cache);
+            if (existing != null) {
+                cache = existing;
+            }
+        }
+        while (true) {
+            Cached cached = cache.get(context);
+            long now = System.currentTimeMillis();
+            if (cached != null && now < cached.expires) {
+                return cached;
+            }
+            long ttl = source.getTimeToLive();
+            Cached created = new Cached(new FutureTask<Map<String, String>>(new Callable<Map<String, String>>() {
+                public Map<String, String> call() throws IOException {
+                    return Collections.unmodifiableMap(source.load(testClass, context));
+                }
+            }), ttl == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttl);
+            if (cached == null ? cache.putIfAbsent(context, created) == null : cache.replace(context, cached, created)) {
+                if (executor != null) {
+                    executor.execute(created.task);
+                } else {
+                    created.task.run();
+                }
+                return created;
+            }
+        }
+    }
+
+    private static ExecutorService getPrefetcher() {
+        if (prefetcher == null) {
+            synchronized (PropertySources.class) {
+                if (prefetcher == null) {
+                    prefetcher = Executors.newCachedThreadPool(new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "property-source-prefetch");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return prefetcher;
+    }
+
+    private static String replacePlaceholders(String template, EnvironmentContext context) {
+        String stage = context.getStage() != null ? context.getStage().toLowerCase() : "";
+        String publication = context.getPublication() != null ? context.getPublication().toLowerCase() : "";
+        return template.replace("{stage}", stage).replace("{publication}", publication);
+    }
+
+    private static final class Cached {
+        private final FutureTask<Map<String, String>> task;
+        private final long expires;
+
+        Cached(FutureTask<Map<String, String>> task, long expires) {
+            this.task = task;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Reads a JSON, YAML or properties file.
+     */
+    private static final class FileSource implements PropertySource {
+        private final String path;
+        private final long ttl;
+
+        FileSource(String path, long ttl) {
+            this.path = path;
+            this.ttl = ttl;
+        }
+
+        public String getName() {
+            return "file:" + path;
+        }
+
+        public Map<String, String> load(Class<?> testClass, EnvironmentContext context) throws IOException {
+            File file = new File(replacePlaceholders(path, context));
+            if (!file.isFile()) {
+                return Collections.emptyMap();
+            }
+            return ConfigFormats.parse(Files.readAllBytes(file.toPath()), ConfigFormats.getFormat(file.getName()), file.getPath());
+        }
+
+        public long getTimeToLive() {
+            return ttl;
+        }
+
+        public boolean isOverriding() {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the values from a configuration service.
+     */
+    private static final class HttpSource implements PropertySource {
+        private final String url;
+        private final long ttl;
+
+        HttpSource(String url, long ttl) {
+            this.url = url;
+            this.ttl = ttl;
+        }
+
+        public String getName() {
+            return url;
+        }
+
+        public Map<String, String> load(Class<?> testClass, EnvironmentContext context) throws IOException {
+            URL location = new URL(replacePlaceholders(url, context));
+            HttpURLConnection connection = (HttpURLConnection) location.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Accept", "application/json, application/yaml, text/plain");
+            try {
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return Collections.emptyMap();
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("property source " + location + " answered " + status);
+                }
+                String contentType = connection.getContentType();
+                String format = contentType != null ? ConfigFormats.getContentFormat(contentType) : null;
+                if (format == null) {
+                    format = ConfigFormats.getFormat(location.getPath());
+                }
+                InputStream in = connection.getInputStream();
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[8192];
+                    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                        out.write(buffer, 0, read);
+                    }
+                    return ConfigFormats.parse(out.toByteArray(), format, location.toString());
+                } finally {
+                    in.close();
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        public long getTimeToLive() {
+            return ttl;
+        }
+
+        public boolean isOverriding() {
+            return false;
+        }
+    }
+}
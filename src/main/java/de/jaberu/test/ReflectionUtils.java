@@ -1,13 +1,32 @@
 package de.jaberu.test;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Reflection helpers and the metadata of the test classes derived by reflection. The metadata is resolved once
+ * per class and kept by a {@link ClassValue}, so it is released together with the class.
+ * <p>
  * Created by aherr on 12.11.2015.
  */
 public final class ReflectionUtils {
 
+    private static final ClassValue<ClassMetadata> metadata = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
     private ReflectionUtils() {}
 
     /**
@@ -23,7 +42,7 @@ public final class ReflectionUtils {
     public static Method findMethod(Class<?> clazz, String name, Class<?>... paramTypes) {
         Class<?> searchType = clazz;
         while (searchType != null) {
-            Method[] methods = (searchType.isInterface() ? searchType.getMethods() : clazz.getDeclaredMethods());
+            Method[] methods = (searchType.isInterface() ? searchType.getMethods() : searchType.getDeclaredMethods());
             for (Method method : methods) {
                 if (name.equals(method.getName()) &&
                         (paramTypes == null || Arrays.equals(paramTypes, method.getParameterTypes()))) {
@@ -34,4 +53,139 @@ public final class ReflectionUtils {
         }
         return null;
     }
+
+    /**
+     * Like {@link #findMethod(Class, String, Class[])}, but returns a method handle, also for private methods.
+     * The handle has the declaring class of the method as type of its first parameter.
+     *
+     * @param clazz the class to introspect
+     * @param name the name of the method
+     * @param paramTypes the parameter types of the method
+     * @return the method handle, or {@code null} if no method was found
+     * @throws IllegalAccessException if the method is not accessible
+     */
+    static MethodHandle findMethodHandle(Class<?> clazz, String name, Class<?>... paramTypes) throws IllegalAccessException {
+        Method method = findMethod(clazz, name, paramTypes);
+        if (method == null) {
+            return null;
+        }
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    /**
+     * @param testClass the test class
+     * @return the bundles of the class and its superclasses, the bundles of the test class first
+     */
+    static List<Bundle> getBundles(Class<?> testClass) {
+        return metadata.get(testClass).getBundles();
+    }
+
+    /**
+     * @param testClass the test class
+     * @return the stages and publications the class is ignored for by {@link Ignore}
+     */
+    static Ignored getIgnored(Class<?> testClass) {
+        return metadata.get(testClass).ignored;
+    }
+
+    /**
+     * @param method a method of a test class
+     * @return the stages and publications the method is ignored for by {@link Ignore}
+     */
+    static Ignored getIgnored(Method method) {
+        return metadata.get(method.getDeclaringClass()).getIgnored(method);
+    }
+
+    /**
+     * A bundle name of a {@link ResourceBundle} annotation, with the class annotated.
+     */
+    static final class Bundle {
+        private final Class<?> declaringClass;
+        private final String name;
+
+        Bundle(Class<?> declaringClass, String name) {
+            this.declaringClass = declaringClass;
+            this.name = name;
+        }
+
+        /**
+         * @return the class annotated, to load the bundle with
+         */
+        Class<?> getDeclaringClass() {
+            return declaringClass;
+        }
+
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The stages and publications of an {@link Ignore} annotation.
+     */
+    static final class Ignored {
+
+        static final Ignored NONE = new Ignored(null);
+
+        private final Set<String> stages;
+        private final Set<String> publications;
+
+        Ignored(Ignore ignore) {
+            this.stages = ignore != null ? new HashSet<String>(Arrays.asList(ignore.value())) : Collections.<String>emptySet();
+            this.publications = ignore != null ? new HashSet<String>(Arrays.asList(ignore.publications())) : Collections.<String>emptySet();
+        }
+
+        /**
+         * @param context stage and publication
+         * @return true if ignored on the stage or for the publication
+         */
+        boolean matches(EnvironmentContext context) {
+            return context.getStage() != null && stages.contains(context.getStage())
+                    || context.getPublication() != null && publications.contains(context.getPublication());
+        }
+    }
+
+    private static final class ClassMetadata {
+        private final Class<?> type;
+        private final Ignored ignored;
+        private final ConcurrentMap<Method, Ignored> ignoredMethods = new ConcurrentHashMap<Method, Ignored>();
+        private volatile List<Bundle> bundles;
+
+        ClassMetadata(Class<?> type) {
+            this.type = type;
+            Ignore ignore = type.getAnnotation(Ignore.class);
+            this.ignored = ignore != null ? new Ignored(ignore) : Ignored.NONE;
+        }
+
+        List<Bundle> getBundles() {
+            List<Bundle> result = bundles;
+            if (result == null) {
+                result = new ArrayList<Bundle>();
+                ResourceBundle resource = type.getAnnotation(ResourceBundle.class);
+                if (resource != null) {
+                    for (String bundle : resource.value()) {
+                        result.add(new Bundle(type, bundle));
+                    }
+                }
+                Class<?> superclass = type.getSuperclass();
+                if (superclass != null && !Object.class.equals(superclass)) {
+                    result.addAll(metadata.get(superclass).getBundles());
+                }
+                result = Collections.unmodifiableList(result);
+                bundles = result;
+            }
+            return result;
+        }
+
+        Ignored getIgnored(Method method) {
+            Ignored result = ignoredMethods.get(method);
+            if (result == null) {
+                Ignore ignore = method.getAnnotation(Ignore.class);
+                result = ignore != null ? new Ignored(ignore) : Ignored.NONE;
+                ignoredMethods.put(method, result);
+            }
+            return result;
+        }
+    }
 }
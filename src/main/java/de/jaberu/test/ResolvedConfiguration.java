@@ -0,0 +1,265 @@
+package de.jaberu.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The property values of a test class for one stage and publication, with all overrides already
+ * applied: by default the resource bundles of the class hierarchy including their stage and publication
+ * specific layers, overridden by the system properties. Other {@link PropertySource}s can be configured.
+ * <p>
+ * The configuration is resolved once when the first test method of the stage and publication runs
+ * and then shared by all its test methods. It is immutable, so it can be read by test methods running
+ * in parallel without any locking. Changes of system properties after the configuration was resolved
+ * are not seen. If bundles are reloaded since they changed, the configuration is resolved again.
+ * <p>
+ * Values can reference other keys by <code>${other.key}</code> or <code>${other.key:default}</code>.
+ * References are resolved against the other values and then the values of the overriding sources (like the
+ * system properties) configured, after all overrides are applied, so a base URL defined once is also changed
+ * in all values using it. A reference without value and default stays as it is, <code>$${</code> is the
+ * literal <code>${</code>. Each value is interpolated on first use and then remembered.
+ */
+public final class ResolvedConfiguration {
+
+    private static final String PREFIX = "${";
+    private static final char SUFFIX = '}';
+    private static final char DEFAULT_SEPARATOR = ':';
+
+    private final Map<String, String> values;
+
+    /**
+     * the values of the overriding sources, only to resolve references to keys not in {@link #values}
+     */
+    private final List<Map<String, String>> references;
+
+    /**
+     * the interpolated values, only for those containing references
+     */
+    private final ConcurrentMap<String, String> interpolated = new ConcurrentHashMap<String, String>();
+
+    private volatile Map<String, String> interpolatedMap;
+
+    private final long generation;
+
+    /**
+     * true if the keys read are reported to the {@link PropertyMetrics}
+     */
+    private final boolean metrics;
+
+    private ResolvedConfiguration(Map<String, String> values, List<Map<String, String>> references, long generation) {
+        this.values = Collections.unmodifiableMap(values);
+        this.references = references;
+        this.generation = generation;
+        this.metrics = PropertyMetrics.isEnabled();
+    }
+
+    /**
+     * @param values     the values resolved from the property sources
+     * @param generation the generation of the {@link PropertyCache} the bundles were taken from
+     * @return the resolved configuration
+     */
+    static ResolvedConfiguration resolve(Map<String, String> values, long generation) {
+        return resolve(values, Collections.<Map<String, String>>emptyList(), generation);
+    }
+
+    /**
+     * @param values     the values resolved from the property sources
+     * @param references the values of the overriding sources to resolve references with, in the order of their precedence
+     * @param generation the generation of the {@link PropertyCache} the bundles were taken from
+     * @return the resolved configuration
+     */
+    static ResolvedConfiguration resolve(Map<String, String> values, List<Map<String, String>> references, long generation) {
+        return new ResolvedConfiguration(new HashMap<String, String>(values),
+                new ArrayList<Map<String, String>>(references), generation);
+    }
+
+    /**
+     * Resolves the configuration of a test class from the {@link PropertySources}.
+     *
+     * @param testClass the test class
+     * @param context   stage and publication
+     * @return the resolved configuration
+     * @throws IOException if one of the property sources failed
+     */
+    static ResolvedConfiguration load(Class<?> testClass, EnvironmentContext context) throws IOException {
+        // read the generation first, so changes while loading lead to another resolution
+        long generation = PropertyCache.getGeneration();
+        List<String> keys = InjectionPlan.forClass(testClass).getKeys();
+        List<Map<String, String>> references = new ArrayList<Map<String, String>>();
+        Map<String, String> values = PropertySources.resolve(testClass, context, keys, references);
+        return resolve(values, references, generation);
+    }
+
+    /**
+     * @return true if bundles were changed since the configuration was resolved
+     */
+    boolean isOutdated() {
+        return generation != PropertyCache.getGeneration();
+    }
+
+    /**
+     * @param key property key
+     * @return the interpolated value, null if not defined
+     * @throws IllegalArgumentException if the references of the value are cyclic
+     */
+    public String get(String key) {
+        if (metrics) {
+            PropertyMetrics.read(key);
+        }
+        return getValue(key);
+    }
+
+    private String getValue(String key) {
+        String value = values.get(key);
+        if (value == null || value.indexOf(PREFIX) < 0) {
+            return value;
+        }
+        String result = interpolated.get(key);
+        if (result == null) {
+            result = interpolate(key, value, new ArrayList<String>());
+        }
+        return result;
+    }
+
+    /**
+     * @return all interpolated values as unmodifiable map
+     * @throws IllegalArgumentException if the references of a value are cyclic
+     */
+    public Map<String, String> asMap() {
+        Map<String, String> map = interpolatedMap;
+        if (map == null) {
+            map = new HashMap<String, String>(values.size() * 2);
+            // not reported as read, the map is e.g. used as fingerprint of all values
+            for (String key : values.keySet()) {
+                map.put(key, getValue(key));
+            }
+            map = Collections.unmodifiableMap(map);
+            interpolatedMap = map;
+        }
+        return map;
+    }
+
+    /**
+     * @param path the keys currently interpolated, to detect cycles
+     */
+    private String interpolate(String key, String value, List<String> path) {
+        if (path.contains(key)) {
+            StringBuilder cycle = new StringBuilder();
+            for (String element : path.subList(path.indexOf(key), path.size())) {
+                cycle.append(element).append(" -> ");
+            }
+            throw new IllegalArgumentException("cyclic reference of properties " + cycle + key);
+        }
+        path.add(key);
+        String result = replace(value, path);
+        path.remove(path.size() - 1);
+        interpolated.putIfAbsent(key, result);
+        return result;
+    }
+
+    private String replace(String value, List<String> path) {
+        int start = value.indexOf(PREFIX);
+        if (start < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length() + 32);
+        int position = 0;
+        while (start >= 0) {
+            if (start > 0 && value.charAt(start - 1) == '$') {
+                // escaped, $${ is the literal ${
+                builder.append(value, position, start - 1).append(PREFIX);
+                position = start + PREFIX.length();
+                start = value.indexOf(PREFIX, position);
+                continue;
+            }
+            int end = findEnd(value, start + PREFIX.length());
+            if (end < 0) {
+                break;
+            }
+            builder.append(value, position, start);
+            String reference = value.substring(start + PREFIX.length(), end);
+            String defaultValue = null;
+            int separator = findSeparator(reference);
+            if (separator >= 0) {
+                defaultValue = reference.substring(separator + 1);
+                reference = reference.substring(0, separator);
+            }
+            String replacement = lookup(reference, path);
+            if (replacement == null && defaultValue != null) {
+                replacement = replace(defaultValue, path);
+            }
+            builder.append(replacement != null ? replacement : value.substring(start, end + 1));
+            position = end + 1;
+            start = value.indexOf(PREFIX, position);
+        }
+        builder.append(value, position, value.length());
+        return builder.toString();
+    }
+
+    private String lookup(String reference, List<String> path) {
+        if (metrics) {
+            PropertyMetrics.read(reference);
+        }
+        String value = values.get(reference);
+        if (value == null) {
+            for (Map<String, String> overriding : references) {
+                value = overriding.get(reference);
+                if (value != null) {
+                    // values of overriding sources are taken as they are
+                    return value;
+                }
+            }
+            return null;
+        }
+        if (value.indexOf(PREFIX) < 0) {
+            return value;
+        }
+        String result = interpolated.get(reference);
+        return result != null ? result : interpolate(reference, value, path);
+    }
+
+    /**
+     * @return the index of the closing brace, respecting nested references in defaults, -1 if not closed
+     */
+    private static int findEnd(String value, int from) {
+        int depth = 0;
+        for (int i = from; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '$' && i + 1 < value.length() && value.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == SUFFIX) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the separator of the default value outside of nested references, -1 if none
+     */
+    private static int findSeparator(String reference) {
+        int depth = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c == '$' && i + 1 < reference.length() && reference.charAt(i + 1) == '{') {
+                depth++;
+                i++;
+            } else if (c == SUFFIX) {
+                depth--;
+            } else if (c == DEFAULT_SEPARATOR && depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,252 @@
+package de.jaberu.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Remembers the test methods passed before, identified by a fingerprint of all their inputs. If the
+ * inputs did not change since, a test method does not need to run again.
+ * <p>
+ * The fingerprint covers the byte code of the test class and its superclasses, the test method, the
+ * stage, the publication and all properties resolved for them. Changes of the code under test are
+ * not covered, so the cache should only be used for tests of external systems or together with a
+ * build tool that cleans the cache directory if the code under test changed.
+ * <p>
+ * The cache is stored in the directory given by the {@value Environment#RESULT_CACHE} system property.
+ * It holds the fingerprints with their time of last use, if more than the configured number of
+ * fingerprints are known, the ones not used for the longest time are dropped.
+ */
+class ResultCache {
+
+    private static final Map<File, ResultCache> caches = new HashMap<File, ResultCache>();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final int maxEntries;
+    private final Map<String, Long> passed = new HashMap<String, Long>();
+    private boolean changed;
+
+    private ResultCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * All test classes of a JVM share the cache of a directory, so it is only read once.
+     *
+     * @param directory  the cache directory
+     * @param maxEntries maximum number of stored fingerprints
+     * @return the cache
+     * @throws IOException if an existing cache cannot be read
+     */
+    static ResultCache get(File directory, int maxEntries) throws IOException {
+        File key = directory.getAbsoluteFile();
+        synchronized (caches) {
+            ResultCache cache = caches.get(key);
+            if (cache == null) {
+                cache = new ResultCache(new File(key, FILE_NAME), maxEntries);
+                cache.load();
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @param fingerprint fingerprint of a test method
+     * @return true if the test method passed before with the same fingerprint
+     */
+    synchronized boolean hasPassed(String fingerprint) {
+        if (passed.containsKey(fingerprint)) {
+            passed.put(fingerprint, System.currentTimeMillis());
+            changed = true;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void recordPassed(String fingerprint) {
+        passed.put(fingerprint, System.currentTimeMillis());
+        changed = true;
+    }
+
+    /**
+     * Writes the cache, if something changed since it was loaded. Other JVMs may share the directory (forks,
+     * shards), so the fingerprints they stored meanwhile are merged before writing. The file is written to
+     * a temporary file first and then moved atomically, so a killed JVM never leaves a truncated cache.
+     *
+     * @throws IOException if the cache cannot be written
+     */
+    synchronized void store() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Map<String, Long> stored = new HashMap<String, Long>();
+        read(file, stored);
+        for (Map.Entry<String, Long> entry : stored.entrySet()) {
+            Long used = passed.get(entry.getKey());
+            if (used == null || used < entry.getValue()) {
+                passed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        evict();
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : passed.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("failed to create result cache directory " + directory);
+        }
+        File temp = File.createTempFile(FILE_NAME, ".tmp", directory);
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                properties.store(out, "fingerprints of passed tests");
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+        changed = false;
+    }
+
+    private void evict() {
+        if (passed.size() <= maxEntries) {
+            return;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(passed.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+                return a.getValue().compareTo(b.getValue());
+            }
+        });
+        for (Map.Entry<String, Long> entry : entries.subList(0, entries.size() - maxEntries)) {
+            passed.remove(entry.getKey());
+        }
+    }
+
+    private void load() throws IOException {
+        read(file, passed);
+    }
+
+    /**
+     * @param file   the cache file, might not exist
+     * @param passed where to put the fingerprints with their time of last use
+     * @throws IOException if an existing file cannot be read
+     */
+    private static void read(File file, Map<String, Long> passed) throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        for (String fingerprint : properties.stringPropertyNames()) {
+            try {
+                passed.put(fingerprint, Long.valueOf(properties.getProperty(fingerprint).trim()));
+            } catch (NumberFormatException nfe) {
+                // broken entry, the test method simply runs again
+            }
+        }
+    }
+
+    /**
+     * Creates the digest of the byte code of the test class and all its superclasses. That is the part
+     * of the fingerprint shared by all test methods of a class.
+     *
+     * @param testClass the test class
+     * @return the digest
+     * @throws IOException if the byte code of a class cannot be read
+     */
+    static byte[] digestClasses(Class<?> testClass) throws IOException {
+        MessageDigest digest = createDigest();
+        Class<?> clazz = testClass;
+        byte[] buffer = new byte[8192];
+        do {
+            digest.update(clazz.getName().getBytes(UTF_8));
+            InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+            if (in == null) {
+                throw new IOException("byte code of " + clazz.getName() + " not found");
+            }
+            try {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+            clazz = clazz.getSuperclass();
+        } while (clazz != null && !Object.class.equals(clazz));
+        return digest.digest();
+    }
+
+    /**
+     * @param classes    digest of the test classes
+     * @param method     the test method including its context
+     * @param properties all properties resolved for the context of the method
+     * @return fingerprint of the test method as hex string
+     */
+    static String fingerprint(byte[] classes, EnvironmentFrameworkMethod method, Map<String, String> properties) {
+        MessageDigest digest = createDigest();
+        digest.update(classes);
+        update(digest, method.getMethod().getName());
+        update(digest, method.getStage());
+        update(digest, method.getPublication());
+        SortedMap<String, String> sorted = new TreeMap<String, String>(properties);
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            update(digest, entry.getKey());
+            update(digest, entry.getValue());
+        }
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            digest.update(value.getBytes(UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 must be supported by every JVM", nsae);
+        }
+    }
+
+    private static final String FILE_NAME = "results.properties";
+}
@@ -0,0 +1,124 @@
+package de.jaberu.test;
+
+import org.junit.runners.model.FrameworkMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One part of the test methods, if the tests are split over several JVMs. The split is not done by test class,
+ * but by the single test methods including their publications, so a test class with a lot of publications
+ * does not dominate a single shard.
+ * <p>
+ * Every JVM computes the same split, so all of them only need to know the own shard index and the number
+ * of shards. If the durations of an earlier run are known, the methods are distributed by duration, always
+ * assigning the next longest method to the shard with the least work so far. Otherwise the methods are
+ * simply distributed round robin. In both cases the first shard is chosen by the class name, so small test
+ * classes do not all end up on the first shard. Sharded runs never write the history, so all shards read the
+ * same durations as long as they are given the same (e.g. merged and checked in) timings directory.
+ */
+class Shard {
+
+    private final int index;
+    private final int count;
+
+    Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("invalid shard " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @return the shard given by the {@value Environment#SHARD_INDEX} and {@value Environment#SHARD_COUNT} system
+     * properties, null if they are not given
+     * @throws IllegalArgumentException if only one of the properties is given, or they are invalid
+     */
+    static Shard fromSystemProperties() {
+        String index = System.getProperty(Environment.SHARD_INDEX);
+        String count = System.getProperty(Environment.SHARD_COUNT);
+        if (index == null && count == null) {
+            return null;
+        }
+        if (index == null || count == null) {
+            throw new IllegalArgumentException("both system properties "
+                    + Environment.SHARD_INDEX + " and " + Environment.SHARD_COUNT + " are required");
+        }
+        return new Shard(parseNumber(Environment.SHARD_INDEX, index), parseNumber(Environment.SHARD_COUNT, count));
+    }
+
+    private static int parseNumber(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("invalid value of system property " + name + ": " + value, nfe);
+        }
+    }
+
+    /**
+     * @param testClass  the test class, used to choose the first shard
+     * @param children   all test methods of the class
+     * @param history    durations of earlier runs
+     * @return the test methods of this shard in original order
+     */
+    List<FrameworkMethod> select(Class<?> testClass, List<FrameworkMethod> children, TimingHistory history) {
+        if (count == 1) {
+            return children;
+        }
+        int offset = (testClass.getName().hashCode() & Integer.MAX_VALUE) % count;
+        int[] shards = history.isEmpty()
+                ? byCount(children.size(), offset)
+                : byDuration(children, history, offset);
+        List<FrameworkMethod> selected = new ArrayList<FrameworkMethod>();
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] == index) {
+                selected.add(children.get(i));
+            }
+        }
+        return selected;
+    }
+
+    private int[] byCount(int size, int offset) {
+        int[] shards = new int[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = (offset + i) % count;
+        }
+        return shards;
+    }
+
+    private int[] byDuration(List<FrameworkMethod> children, TimingHistory history, int offset) {
+        final long[] durations = new long[children.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = history.estimate(children.get(i));
+        }
+        List<Integer> order = new ArrayList<Integer>(durations.length);
+        for (int i = 0; i < durations.length; i++) {
+            order.add(i);
+        }
+        // longest first, equal durations keep the original order
+        Collections.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int result = Long.compare(durations[b], durations[a]);
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+        long[] load = new long[count];
+        int[] shards = new int[durations.length];
+        for (Integer child : order) {
+            int lightest = offset;
+            for (int i = 1; i < count; i++) {
+                int shard = (offset + i) % count;
+                if (load[shard] < load[lightest]) {
+                    lightest = shard;
+                }
+            }
+            shards[child] = lightest;
+            // count at least one, otherwise methods with zero duration would all end up on one shard
+            load[lightest] += Math.max(1, durations[child]);
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,78 @@
+package de.jaberu.test;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runner.notification.StoppedByUserException;
+
+/**
+ * The listeners of the different junit runner UIs and build tools are not written to be called
+ * concurrently. If test methods are running in parallel we therefore serialize all notifications
+ * through this wrapper before forwarding them to the original notifier.
+ */
+class SynchronizedRunNotifier extends RunNotifier {
+
+    private final RunNotifier delegate;
+
+    SynchronizedRunNotifier(RunNotifier delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized void addListener(RunListener listener) {
+        delegate.addListener(listener);
+    }
+
+    @Override
+    public synchronized void addFirstListener(RunListener listener) {
+        delegate.addFirstListener(listener);
+    }
+
+    @Override
+    public synchronized void removeListener(RunListener listener) {
+        delegate.removeListener(listener);
+    }
+
+    @Override
+    public synchronized void fireTestRunStarted(Description description) {
+        delegate.fireTestRunStarted(description);
+    }
+
+    @Override
+    public synchronized void fireTestRunFinished(Result result) {
+        delegate.fireTestRunFinished(result);
+    }
+
+    @Override
+    public synchronized void fireTestStarted(Description description) throws StoppedByUserException {
+        delegate.fireTestStarted(description);
+    }
+
+    @Override
+    public synchronized void fireTestFailure(Failure failure) {
+        delegate.fireTestFailure(failure);
+    }
+
+    @Override
+    public synchronized void fireTestAssumptionFailed(Failure failure) {
+        delegate.fireTestAssumptionFailed(failure);
+    }
+
+    @Override
+    public synchronized void fireTestIgnored(Description description) {
+        delegate.fireTestIgnored(description);
+    }
+
+    @Override
+    public synchronized void fireTestFinished(Description description) {
+        delegate.fireTestFinished(description);
+    }
+
+    @Override
+    public void pleaseStop() {
+        // must not wait for a running notification, otherwise a user could not stop the run
+        delegate.pleaseStop();
+    }
+}
@@ -0,0 +1,203 @@
+package de.jaberu.test;
+
+import org.junit.runners.model.FrameworkMethod;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The durations of the test methods recorded by earlier runs. The history is stored as one properties
+ * file per test class in the directory given by the {@value Environment#TIMINGS} system property. The key
+ * of each entry is built from the method name, the stage and the publication, the value is the duration
+ * in milliseconds.
+ * <p>
+ * The durations of the current run are recorded separately and merged into the history when it is stored.
+ * To smooth single outliers, the stored duration is the mean of the recorded and the previous one.
+ */
+class TimingHistory {
+
+    private final Map<String, Long> durations;
+
+    private final ConcurrentMap<String, Long> recorded = new ConcurrentHashMap<String, Long>();
+
+    private final long average;
+
+    private TimingHistory(Map<String, Long> durations) {
+        this.durations = durations;
+        long total = 0;
+        for (Long duration : durations.values()) {
+            total += duration;
+        }
+        average = durations.isEmpty() ? 0 : total / durations.size();
+    }
+
+    /**
+     * Loads the history of the given test class. If there is no history (or it cannot be read) we
+     * return an empty one, since the history is only used to optimize the run.
+     *
+     * @param directory the timings directory, can be null
+     * @param testClass the test class
+     * @return the history, never null
+     */
+    static TimingHistory load(File directory, Class<?> testClass) {
+        if (directory == null) {
+            return empty();
+        }
+        File file = getFile(directory, testClass);
+        if (!file.isFile()) {
+            return empty();
+        }
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException ioe) {
+            return empty();
+        } finally {
+            close(in);
+        }
+        Map<String, Long> durations = new HashMap<String, Long>();
+        for (String key : properties.stringPropertyNames()) {
+            try {
+                durations.put(key, Long.valueOf(properties.getProperty(key).trim()));
+            } catch (NumberFormatException nfe) {
+                // skip broken entries, the method is handled like one without history
+            }
+        }
+        return new TimingHistory(durations);
+    }
+
+    /**
+     * @param method test method
+     * @return the recorded duration in milliseconds, null if there is no history for the method
+     */
+    Long getDuration(FrameworkMethod method) {
+        return durations.get(getKey(method));
+    }
+
+    /**
+     * Methods without history are assumed to take the average duration of the known ones. So new methods
+     * are neither started first nor last.
+     *
+     * @param method test method
+     * @return the recorded duration in milliseconds, or the average if there is no history for the method
+     */
+    long estimate(FrameworkMethod method) {
+        Long duration = getDuration(method);
+        return duration != null ? duration : average;
+    }
+
+    /**
+     * Orders the test methods longest first, so running them in parallel the slowest do not
+     * stretch the end of the run. Methods with equal durations keep their order.
+     *
+     * @param methods test methods
+     * @return new list of the test methods
+     */
+    List<FrameworkMethod> longestFirst(List<FrameworkMethod> methods) {
+        List<FrameworkMethod> ordered = new ArrayList<FrameworkMethod>(methods);
+        Collections.sort(ordered, new Comparator<FrameworkMethod>() {
+            public int compare(FrameworkMethod a, FrameworkMethod b) {
+                return Long.compare(estimate(b), estimate(a));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Records the duration of a test method in the current run.
+     *
+     * @param method   test method
+     * @param duration duration in milliseconds
+     */
+    void record(FrameworkMethod method, long duration) {
+        recorded.put(getKey(method), duration);
+    }
+
+    /**
+     * Writes the history including the durations recorded by the current run. Methods not run this
+     * time (e.g. since they were filtered) keep their previous duration.
+     *
+     * @param directory the timings directory, created if missing
+     * @param testClass the test class
+     * @throws IOException if the history cannot be written
+     */
+    void store(File directory, Class<?> testClass) throws IOException {
+        if (recorded.isEmpty()) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        for (Map.Entry<String, Long> entry : recorded.entrySet()) {
+            Long previous = durations.get(entry.getKey());
+            long duration = previous != null ? (previous + entry.getValue()) / 2 : entry.getValue();
+            properties.setProperty(entry.getKey(), Long.toString(duration));
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("failed to create timings directory " + directory);
+        }
+        OutputStream out = new FileOutputStream(getFile(directory, testClass));
+        try {
+            properties.store(out, "durations of " + testClass.getName() + " in milliseconds");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return true if no duration was recorded for the test class
+     */
+    boolean isEmpty() {
+        return durations.isEmpty();
+    }
+
+    private static TimingHistory empty() {
+        return new TimingHistory(new HashMap<String, Long>());
+    }
+
+    static String getKey(FrameworkMethod method) {
+        StringBuilder builder = new StringBuilder(method.getMethod().getName());
+        String stage = null;
+        String publication = null;
+        if (method instanceof EnvironmentFrameworkMethod) {
+            stage = ((EnvironmentFrameworkMethod) method).getStage();
+            publication = ((EnvironmentFrameworkMethod) method).getPublication();
+        }
+        builder.append(SEPARATOR).append(stage != null ? stage : "");
+        builder.append(SEPARATOR).append(publication != null ? publication : "");
+        return builder.toString();
+    }
+
+    static File getFile(File directory, Class<?> testClass) {
+        return new File(directory, testClass.getName() + PROPERTIES);
+    }
+
+    private static void close(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // nothing to do, we already got what we need
+            }
+        }
+    }
+
+    private static final String SEPARATOR = "|";
+    private static final String PROPERTIES = ".properties";
+}
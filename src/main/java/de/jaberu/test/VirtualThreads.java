@@ -0,0 +1,64 @@
+package de.jaberu.test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to the virtual threads of newer JVMs. The project is still compiled for older java versions,
+ * so the thread builder is looked up by reflection once. On JVMs without virtual threads (or if they
+ * are only available as preview feature) the lookup fails and {@link #isSupported()} is false.
+ */
+final class VirtualThreads {
+
+    private static final Method ofVirtual;
+    private static final Method name;
+    private static final Method factory;
+
+    static {
+        Method ofVirtualMethod = null;
+        Method nameMethod = null;
+        Method factoryMethod = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            nameMethod = builder.getMethod("name", String.class, long.class);
+            factoryMethod = builder.getMethod("factory");
+            // preview versions throw an UnsupportedOperationException here
+            ofVirtualMethod.invoke(null);
+        } catch (Exception ex) {
+            ofVirtualMethod = null;
+        }
+        ofVirtual = ofVirtualMethod;
+        name = nameMethod;
+        factory = factoryMethod;
+    }
+
+    private VirtualThreads() {}
+
+    /**
+     * @return true if the running JVM is able to create virtual threads
+     */
+    static boolean isSupported() {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Creates a factory for virtual threads, named by the given prefix and a counter.
+     *
+     * @param prefix name prefix of the created threads
+     * @return the thread factory
+     * @throws IllegalStateException if virtual threads are not supported
+     */
+    static ThreadFactory factory(String prefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("virtual threads are not supported by this JVM");
+        }
+        try {
+            Object builder = ofVirtual.invoke(null);
+            builder = name.invoke(builder, prefix + "-", 1L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception ex) {
+            throw new IllegalStateException("failed to create virtual thread factory", ex);
+        }
+    }
+}
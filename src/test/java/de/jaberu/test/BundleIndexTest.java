@@ -0,0 +1,77 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+
+import java.util.Arrays;
+
+/**
+ * Tests the index of the bundles on the classpath.
+ */
+public class BundleIndexTest {
+
+    @Test
+    public void testIndex() {
+        BundleIndex index = BundleIndex.forLoader(BundleIndexTest.class.getClassLoader());
+        Assert.assertNotNull(index);
+        Assert.assertTrue(index.contains("/test.properties"));
+        Assert.assertTrue(index.contains("dev/hao/test.properties"));
+        Assert.assertFalse(index.contains("/uat/hao/test.properties"));
+        Assert.assertSame(index, BundleIndex.forLoader(BundleIndexTest.class.getClassLoader()));
+    }
+
+    /**
+     * With a module path the classpath does not cover all resources of the system class loader.
+     */
+    @Test
+    public void testModulePath() {
+        BundleIndex.clear();
+        System.setProperty("jdk.module.path", "modules");
+        try {
+            Assert.assertNull(BundleIndex.forLoader(ClassLoader.getSystemClassLoader()));
+        } finally {
+            System.clearProperty("jdk.module.path");
+            BundleIndex.clear();
+        }
+        Assert.assertNotNull(BundleIndex.forLoader(ClassLoader.getSystemClassLoader()));
+    }
+
+    @Test
+    public void testFindPublications() {
+        Assert.assertEquals(Arrays.asList("hao"), BundleIndex.findPublications(MultiStageTest.StagesTest.class, "DEV"));
+        Assert.assertEquals(Arrays.<String>asList(), BundleIndex.findPublications(MultiStageTest.StagesTest.class, "uat"));
+    }
+
+    /**
+     * The publication <code>*</code> runs all publications found for each stage, stages without publication once.
+     */
+    @Test
+    public void testAllPublications() {
+        String previousStage = System.getProperty(Environment.STAGE);
+        String previousPublication = System.getProperty(Environment.PUBLICATION);
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "*");
+        try {
+            MultiStageTest.StagesTest.values.clear();
+            Result result = new JUnitCore().run(MultiStageTest.StagesTest.class);
+
+            Assert.assertTrue(result.wasSuccessful());
+            Assert.assertEquals(2, result.getRunCount());
+            Assert.assertEquals("hao", MultiStageTest.StagesTest.values.get("dev"));
+            Assert.assertEquals("uat", MultiStageTest.StagesTest.values.get("uat"));
+        } finally {
+            restore(Environment.STAGE, previousStage);
+            restore(Environment.PUBLICATION, previousPublication);
+        }
+    }
+
+    private static void restore(String key, String value) {
+        if (value != null) {
+            System.setProperty(key, value);
+        } else {
+            System.clearProperty(key);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+/**
+ * Tests the reload of changed resource bundles.
+ */
+public class BundleWatcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        System.setProperty(Environment.WATCH_BUNDLES, "true");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        System.clearProperty(Environment.WATCH_BUNDLES);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File directory = folder.getRoot();
+        URL classes = BundleWatcherTest.class.getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader loader = new URLClassLoader(new URL[]{directory.toURI().toURL(), classes},
+                ClassLoader.getSystemClassLoader().getParent());
+        try {
+            Class<?> testClass = Class.forName(BundleWatcherTest.class.getName(), false, loader);
+            Files.write(new File(directory, "watched.properties").toPath(), "watched.key=base".getBytes("ISO-8859-1"));
+            Assert.assertEquals("base", PropertyCache.getProperties(testClass, "watched", "dev", null).getProperty("watched.key"));
+
+            // a stage directory created later is noticed too
+            File stage = folder.newFolder("dev");
+            Files.write(new File(stage, "watched.properties").toPath(), "watched.key=dev".getBytes("ISO-8859-1"));
+            Assert.assertEquals("dev", await(testClass, "dev"));
+
+            Files.write(new File(stage, "watched.properties").toPath(), "watched.key=changed".getBytes("ISO-8859-1"));
+            Assert.assertEquals("changed", await(testClass, "changed"));
+        } finally {
+            loader.close();
+        }
+    }
+
+    private static String await(Class<?> testClass, String expected) throws Exception {
+        long timeout = System.currentTimeMillis() + 30000;
+        String value;
+        do {
+            Thread.sleep(50);
+            value = PropertyCache.getProperties(testClass, "watched", "dev", null).getProperty("watched.key");
+        } while (!expected.equals(value) && System.currentTimeMillis() < timeout);
+        return value;
+    }
+}
@@ -0,0 +1,91 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Here we test that the test methods of a broken publication are skipped. Since the broken tests must
+ * fail, they are run by an own {@link JUnitCore} instance.
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * store previous publication
+     */
+    static Object previousPublication;
+
+    @BeforeClass
+    public static void setEnv() {
+        previousPublication = System.getProperties().setProperty(Environment.PUBLICATION, "broken,working");
+    }
+
+    @AfterClass
+    public static void unsetEnv() {
+        if (previousPublication != null) {
+            System.getProperties().setProperty(Environment.PUBLICATION, previousPublication.toString());
+        } else {
+            System.getProperties().remove(Environment.PUBLICATION);
+        }
+    }
+
+    @Test
+    public void testBrokenPublicationSkipped() {
+        final List<Failure> skipped = new ArrayList<Failure>();
+        JUnitCore core = new JUnitCore();
+        core.addListener(new RunListener() {
+            @Override
+            public void testAssumptionFailure(Failure failure) {
+                skipped.add(failure);
+            }
+        });
+        Result result = core.run(BrokenTest.class);
+
+        Assert.assertEquals(6, result.getRunCount());
+        Assert.assertEquals(2, result.getFailureCount());
+        Assert.assertEquals(1, skipped.size());
+        Assert.assertTrue(skipped.get(0).getDescription().getMethodName().contains("broken"));
+        Assert.assertEquals("backend down", skipped.get(0).getException().getCause().getMessage());
+    }
+
+    /**
+     * All methods fail for the broken publication.
+     */
+    @RunWith(EnvironmentTestRunner.class)
+    @CircuitBreaker(2)
+    public static class BrokenTest {
+
+        @PropertyValue(Environment.PUBLICATION)
+        private String publication;
+
+        @Test
+        public void testFirst() {
+            call();
+        }
+
+        @Test
+        public void testSecond() {
+            call();
+        }
+
+        @Test
+        public void testThird() {
+            call();
+        }
+
+        private void call() {
+            if ("broken".equals(publication)) {
+                throw new IllegalStateException("backend down");
+            }
+        }
+    }
+}
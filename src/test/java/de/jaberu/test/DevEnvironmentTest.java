@@ -30,6 +30,12 @@ public class DevEnvironmentTest {
     @PropertyValue("test.key")
     private String value;
 
+    /**
+     * references the host overridden for dev
+     */
+    @PropertyValue("test.endpoint")
+    private String endpoint;
+
     /**
      * Set the dev environment for testing
      */
@@ -60,6 +66,14 @@ public class DevEnvironmentTest {
         Assert.assertEquals("dev", value);
     }
 
+    /**
+     * The reference in the base bundle is resolved with the value of the dev bundle.
+     */
+    @Test
+    public void testInterpolation() {
+        Assert.assertEquals("http://dev.example.com:8080/api", endpoint);
+    }
+
     /**
      * Tests the ignore annotation.
      * Since we set the dev profile here, it should not be executed. Therefore the test just fails.
@@ -0,0 +1,111 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Here we test that a fixture is created once per publication and closed after the last test method.
+ */
+public class FixtureTest {
+
+    /**
+     * store previous publication
+     */
+    static Object previousPublication;
+
+    @BeforeClass
+    public static void setEnv() {
+        previousPublication = System.getProperties().setProperty(Environment.PUBLICATION, "a,b");
+    }
+
+    @AfterClass
+    public static void unsetEnv() {
+        if (previousPublication != null) {
+            System.getProperties().setProperty(Environment.PUBLICATION, previousPublication.toString());
+        } else {
+            System.getProperties().remove(Environment.PUBLICATION);
+        }
+    }
+
+    @Test
+    public void testSharedPerPublication() {
+        Result result = new JUnitCore().run(SessionTest.class);
+
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertEquals(6, result.getRunCount());
+        Assert.assertEquals(2, Session.created.get());
+        Assert.assertEquals(2, Session.closed.get());
+        Assert.assertEquals(2, SessionTest.sessions.size());
+    }
+
+    /**
+     * expensive resource
+     */
+    public static class Session implements AutoCloseable {
+
+        static final AtomicInteger created = new AtomicInteger();
+        static final AtomicInteger closed = new AtomicInteger();
+
+        final String publication;
+        boolean open = true;
+
+        Session(String publication) {
+            this.publication = publication;
+            created.incrementAndGet();
+        }
+
+        public void close() {
+            open = false;
+            closed.incrementAndGet();
+        }
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    public static class SessionTest {
+
+        static final Set<Session> sessions = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Session, Boolean>()));
+
+        @PropertyValue(Environment.PUBLICATION)
+        private String publication;
+
+        @Fixture
+        private Session session;
+
+        @Fixture("session")
+        static Session login(EnvironmentContext context) {
+            return new Session(context.getPublication());
+        }
+
+        @Test
+        public void testFirst() {
+            use();
+        }
+
+        @Test
+        public void testSecond() {
+            use();
+        }
+
+        @Test
+        public void testThird() {
+            use();
+        }
+
+        private void use() {
+            Assert.assertTrue(session.open);
+            Assert.assertEquals(publication, session.publication);
+            sessions.add(session);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package de.jaberu.test;
+
+/**
+ * Stands in for the injector the annotation processor would generate for {@link GeneratedInjectorTest}.
+ */
+public final class GeneratedInjectorTest$$PropertyInjector implements PropertyInjector {
+
+    public void inject(Object instance, ResolvedConfiguration configuration, EnvironmentContext context) {
+        GeneratedInjectorTest test = (GeneratedInjectorTest) instance;
+        test.testInt = Integer.parseInt(configuration.get("test.int").trim()) + 1000;
+        test.stage = "generated";
+    }
+}
@@ -0,0 +1,26 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests a generated {@link PropertyInjector} is preferred over the reflective injection.
+ */
+@RunWith(EnvironmentTestRunner.class)
+@ResourceBundle("test")
+public class GeneratedInjectorTest {
+
+    @PropertyValue("test.int")
+    int testInt;
+
+    @PropertyValue("stage")
+    String stage;
+
+    @Test
+    public void testGeneratedInjector() {
+        // the injector in GeneratedInjectorTest$$PropertyInjector adds 1000
+        Assert.assertEquals(1001, testInt);
+        Assert.assertEquals("generated", stage);
+    }
+}
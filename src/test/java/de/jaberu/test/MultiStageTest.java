@@ -0,0 +1,85 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Here we test that several stages can be tested in one JVM. The stages must be given before
+ * the test methods are created, so the test class is run by an own {@link JUnitCore} instance.
+ */
+public class MultiStageTest {
+
+    /**
+     * store previous stage
+     */
+    static Object previousStage;
+
+    /**
+     * store previous publication
+     */
+    static Object previousPublication;
+
+    @BeforeClass
+    public static void setEnv() {
+        previousStage = System.getProperties().setProperty(Environment.STAGE, "dev,uat");
+        previousPublication = System.getProperties().setProperty(Environment.PUBLICATION, "hao");
+    }
+
+    @AfterClass
+    public static void unsetEnv() {
+        if (previousPublication != null) {
+            System.getProperties().setProperty(Environment.PUBLICATION, previousPublication.toString());
+        } else {
+            System.getProperties().remove(Environment.PUBLICATION);
+        }
+        if (previousStage != null) {
+            System.getProperties().setProperty(Environment.STAGE, previousStage.toString());
+        } else {
+            System.getProperties().remove(Environment.STAGE);
+        }
+    }
+
+    /**
+     * For dev the hao publication overrides the value, for uat there is no publication specific bundle.
+     */
+    @Test
+    public void testAllStages() {
+        StagesTest.values.clear();
+        Result result = new JUnitCore().run(StagesTest.class);
+
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertEquals(2, result.getRunCount());
+        Assert.assertEquals("hao", StagesTest.values.get("dev"));
+        Assert.assertEquals("uat", StagesTest.values.get("uat"));
+    }
+
+    /**
+     * Collects the injected values per stage. Running in parallel both stages are used at the same time.
+     */
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    @Parallel(2)
+    public static class StagesTest {
+
+        static final Map<String, String> values = new ConcurrentHashMap<String, String>();
+
+        @PropertyValue(Environment.STAGE)
+        private String stage;
+
+        @PropertyValue("test.key")
+        private String value;
+
+        @Test
+        public void testValue() {
+            values.put(stage, value);
+        }
+    }
+}
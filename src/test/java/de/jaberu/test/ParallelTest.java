@@ -0,0 +1,47 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Here we test that the test methods are executed in parallel. All methods are waiting for
+ * each other, so if they are run one after another the barrier breaks by timeout.
+ */
+@RunWith(EnvironmentTestRunner.class)
+@ResourceBundle("test")
+@Parallel(3)
+public class ParallelTest {
+
+    private static final CyclicBarrier barrier = new CyclicBarrier(3);
+
+    /**
+     * injection to test, must be set for each instance
+     */
+    @PropertyValue("test.key")
+    private String value;
+
+    @Test
+    public void testFirst() throws Exception {
+        awaitOthers();
+    }
+
+    @Test
+    public void testSecond() throws Exception {
+        awaitOthers();
+    }
+
+    @Test
+    public void testThird() throws Exception {
+        awaitOthers();
+    }
+
+    private void awaitOthers() throws Exception {
+        Assert.assertNotNull(value);
+        barrier.await(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(value);
+    }
+}
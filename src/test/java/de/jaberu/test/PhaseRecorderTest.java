@@ -0,0 +1,128 @@
+package de.jaberu.test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests the flight recorder events and the report of the test phases.
+ */
+public class PhaseRecorderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        PhaseRecorder.reset();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Environment.STAGE);
+        System.clearProperty(Environment.PHASE_REPORT);
+        PhaseRecorder.reset();
+    }
+
+    @Test
+    public void testDisabled() {
+        Assert.assertFalse(PhaseRecorder.isEnabled());
+        Result result = new JUnitCore().run(PhasesTest.class);
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertTrue(PhaseRecorder.getTotals().isEmpty());
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        System.setProperty(Environment.STAGE, "dev");
+        Path file = folder.newFile("phases.jfr").toPath();
+        Recording recording = new Recording();
+        try {
+            recording.enable("de.jaberu.test.Phase");
+            recording.start();
+            Assert.assertTrue(PhaseRecorder.isEnabled());
+            Result result = new JUnitCore().run(PhasesTest.class);
+            Assert.assertTrue(String.valueOf(result.getFailures()), result.wasSuccessful());
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            recording.close();
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Set<String> phases = new HashSet<String>();
+        for (RecordedEvent event : events) {
+            Assert.assertEquals(PhasesTest.class.getName(), event.getString("testClass"));
+            Assert.assertEquals("testPhases", event.getString("method"));
+            Assert.assertEquals("dev", event.getString("stage"));
+            Assert.assertTrue(event.getLong("exclusive") >= 0);
+            phases.add(event.getString("phase"));
+        }
+        // no after methods, so no after phase
+        Assert.assertEquals(new HashSet<String>(java.util.Arrays.asList("loadProperties", "injection", "rules",
+                "before", "test")), phases);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        System.setProperty(Environment.PHASE_REPORT, new File(folder.getRoot(), "phases.txt").getPath());
+        Result result;
+        try {
+            Assert.assertTrue(PhaseRecorder.isEnabled());
+            result = new JUnitCore().run(PhasesTest.class);
+        } finally {
+            // the shutdown hook only writes the report if the property is still set
+            System.clearProperty(Environment.PHASE_REPORT);
+        }
+        Assert.assertTrue(String.valueOf(result.getFailures()), result.wasSuccessful());
+
+        long[] test = PhaseRecorder.getTotals().get(PhasesTest.class.getName() + " test");
+        Assert.assertEquals(1, test[0]);
+        // the sleep of the before method is not part of the test phase
+        long[] before = PhaseRecorder.getTotals().get(PhasesTest.class.getName() + " before");
+        Assert.assertTrue(before[1] > test[1]);
+
+        StringWriter report = new StringWriter();
+        PhaseRecorder.writeReport(report);
+        Assert.assertTrue(report.toString(), report.toString().contains(PhasesTest.class.getName()));
+        Assert.assertTrue(report.toString(), report.toString().contains("injection"));
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    public static class PhasesTest {
+
+        @PropertyValue("test.int")
+        private int number;
+
+        @Rule
+        public TestRule watcher = new TestWatcher() {};
+
+        @Before
+        public void setUp() throws InterruptedException {
+            Thread.sleep(60);
+        }
+
+        @Test
+        public void testPhases() {
+            Assert.assertEquals(1, number);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Tests the loader reads the same values like {@link Properties}.
+ */
+public class PropertiesLoaderTest {
+
+    @Test
+    public void testFormat() throws Exception {
+        assertSameAsProperties("simple=value\n"
+                + "# comment=no\n"
+                + "   ! another comment\n"
+                + "\n"
+                + "colon:value\r\n"
+                + "space value with  spaces  \r"
+                + "  indented = \t value\n"
+                + "both = : value\n"
+                + "empty\n"
+                + "empty.separator=\n"
+                + "continued = first, \\\n"
+                + "    second, \\\r\n"
+                + "\tthird\n"
+                + "escaped\\ key\\=x = \\tvalue\\nwith\\\\escapes\\u00e4\\q\n"
+                + "comment.continued=a\\\n"
+                + "# b\n"
+                + "backslashes=\\\\\n"
+                + "latin=\u00fc\u00df\n"
+                + "duplicate=first\n"
+                + "duplicate=second\n"
+                + "last=no newline \\");
+    }
+
+    /**
+     * A backslash continuing the last line at the end of the file, and a comment after an empty continued line.
+     */
+    @Test
+    public void testContinuationEdgeCases() throws Exception {
+        assertSameAsProperties("key=value\\\n");
+        assertSameAsProperties("\\\n");
+        assertSameAsProperties("key=value\\\r\n");
+        assertSameAsProperties("key=\\\n# comment=no\nother=value");
+        assertSameAsProperties("\\\n  ! comment=no\r\nother=value\n");
+        assertSameAsProperties("key=\\\n#");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedUnicode() {
+        PropertiesLoader.parse(bytes("key=\\u00g1"), new HashMap<String, String>());
+    }
+
+    private static void assertSameAsProperties(String content) throws Exception {
+        Properties expected = new Properties();
+        expected.load(new ByteArrayInputStream(bytes(content)));
+        Map<String, String> actual = new HashMap<String, String>();
+        PropertiesLoader.parse(bytes(content), actual);
+        Assert.assertEquals(new HashMap<Object, Object>(expected), actual);
+    }
+
+    private static byte[] bytes(String content) {
+        try {
+            return content.getBytes("ISO-8859-1");
+        } catch (java.io.UnsupportedEncodingException uee) {
+            throw new IllegalStateException(uee);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests the cache of the resource bundles.
+ */
+public class PropertyCacheTest {
+
+    @Test
+    public void testCached() throws Exception {
+        PropertyCache.Statistics before = PropertyCache.getStatistics();
+        Properties first = PropertyCache.getProperties(PropertyCacheTest.class, "test", "uat", "cache");
+        Properties second = PropertyCache.getProperties(PropertyCacheTest.class, "test", "uat", "cache");
+        PropertyCache.Statistics after = PropertyCache.getStatistics();
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals("uat", first.getProperty("test.key"));
+        Assert.assertEquals(1, after.getMisses() - before.getMisses());
+        Assert.assertEquals(1, after.getHits() - before.getHits());
+    }
+
+    /**
+     * The same bundle name loaded by another class loader must not be served from cache.
+     */
+    @Test
+    public void testClassLoaders() throws Exception {
+        URL classes = PropertyCacheTest.class.getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader loader = new URLClassLoader(new URL[]{classes}, ClassLoader.getSystemClassLoader().getParent());
+        try {
+            Class<?> other = Class.forName(PropertyCacheTest.class.getName(), false, loader);
+            Assert.assertNotSame(PropertyCacheTest.class, other);
+
+            PropertyCache.Statistics before = PropertyCache.getStatistics();
+            Properties first = PropertyCache.getProperties(PropertyCacheTest.class, "test", "dev", "loader");
+            Properties second = PropertyCache.getProperties(other, "test", "dev", "loader");
+            PropertyCache.Statistics after = PropertyCache.getStatistics();
+
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(first, second);
+            Assert.assertEquals(2, after.getMisses() - before.getMisses());
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Threads missing the same bundle at the same time load it only once.
+     */
+    @Test
+    public void testSingleLoad() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            PropertyCache.Statistics before = PropertyCache.getStatistics();
+            List<Future<Properties>> results = new ArrayList<Future<Properties>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Properties>() {
+                    public Properties call() throws Exception {
+                        start.await();
+                        return PropertyCache.getProperties(PropertyCacheTest.class, "test", "dev", "concurrent");
+                    }
+                }));
+            }
+            start.countDown();
+            Properties expected = results.get(0).get();
+            for (Future<Properties> result : results) {
+                Assert.assertSame(expected, result.get());
+            }
+            Assert.assertEquals(1, PropertyCache.getStatistics().getMisses() - before.getMisses());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * If the cache is full, the bundle used least recently is evicted, not the one just loaded.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        PropertyCache.clear();
+        System.setProperty(Environment.PROPERTY_CACHE_SIZE, "2");
+        try {
+            PropertyCache.getBundle(PropertyCacheTest.class, "test", "dev", "lru1");
+            PropertyCache.getBundle(PropertyCacheTest.class, "test", "dev", "lru2");
+            // the first one is used again, so the second one is the least recently used
+            PropertyCache.getBundle(PropertyCacheTest.class, "test", "dev", "lru1");
+            PropertyCache.Statistics before = PropertyCache.getStatistics();
+            PropertyCache.getBundle(PropertyCacheTest.class, "test", "dev", "lru3");
+            PropertyCache.getBundle(PropertyCacheTest.class, "test", "dev", "lru3");
+            PropertyCache.Statistics after = PropertyCache.getStatistics();
+
+            Assert.assertEquals(1, after.getMisses() - before.getMisses());
+            Assert.assertEquals(1, after.getHits() - before.getHits());
+            Assert.assertEquals(1, after.getEvictions() - before.getEvictions());
+            Assert.assertEquals(2, after.getSize());
+            Assert.assertEquals(1, PropertyCache.getSize("test", "dev", "lru1"));
+            Assert.assertEquals(0, PropertyCache.getSize("test", "dev", "lru2"));
+            Assert.assertEquals(1, PropertyCache.getSize("test", "dev", "lru3"));
+        } finally {
+            System.clearProperty(Environment.PROPERTY_CACHE_SIZE);
+        }
+    }
+}
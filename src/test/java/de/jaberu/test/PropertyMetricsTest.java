@@ -0,0 +1,96 @@
+package de.jaberu.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the metrics of the property cache and the property keys.
+ */
+public class PropertyMetricsTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Environment.STAGE);
+        System.clearProperty(Environment.METRICS);
+        PropertyMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        System.setProperty(Environment.METRICS, "true");
+        System.setProperty(Environment.STAGE, "metrics");
+        PropertyCache.clear();
+        PropertyMetrics.getInstance().reset();
+        for (int i = 0; i < 2; i++) {
+            Result result = new JUnitCore().run(MetricsTest.class);
+            Assert.assertTrue(String.valueOf(result.getFailures()), result.wasSuccessful());
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PropertyMetrics.OBJECT_NAME);
+        Assert.assertEquals(1L, server.getAttribute(name, "Hits"));
+        Assert.assertEquals(1L, server.getAttribute(name, "Misses"));
+        String[] statistics = (String[]) server.getAttribute(name, "BundleStatistics");
+        Assert.assertEquals(1, statistics.length);
+        Assert.assertTrue(statistics[0], statistics[0].startsWith("test metrics -: hits=1, misses=1, "));
+        Assert.assertTrue(statistics[0], statistics[0].endsWith("entries=1"));
+
+        // the keys referenced by test.endpoint are read too
+        Assert.assertArrayEquals(new String[]{"test.bool", "test.endpoint", "test.host", "test.int", "test.port"},
+                (String[]) server.getAttribute(name, "ReadKeys"));
+        List<String> unused = Arrays.asList((String[]) server.getAttribute(name, "UnusedKeys"));
+        Assert.assertTrue(unused.contains("test: test.key"));
+        Assert.assertFalse(unused.contains("test: test.int"));
+        Assert.assertFalse(unused.contains("test: test.host"));
+
+        String json = (String) server.invoke(name, "dump", null, null);
+        Assert.assertTrue(json, json.contains("{\"bundle\": \"test\", \"stage\": \"metrics\", \"publication\": null, "
+                + "\"hits\": 1, \"misses\": 1, "));
+        Assert.assertTrue(json, json.contains("\"readKeys\": [\"test.bool\", \"test.endpoint\", \"test.host\", \"test.int\", \"test.port\"]"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        System.setProperty(Environment.STAGE, "metrics");
+        PropertyMetrics.getInstance().reset();
+        Result result = new JUnitCore().run(MetricsTest.class);
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertEquals(0, PropertyMetrics.getInstance().getMisses());
+        Assert.assertEquals(0, PropertyMetrics.getInstance().getReadKeys().length);
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    public static class MetricsTest {
+
+        @PropertyValue("test.int")
+        private int number;
+
+        @PropertyValue("test.bool")
+        private boolean flag;
+
+        @PropertyValue("test.endpoint")
+        private String endpoint;
+
+        @Test
+        public void testFirst() {
+            Assert.assertEquals(1, number);
+        }
+
+        @Test
+        public void testSecond() {
+            Assert.assertTrue(flag);
+            Assert.assertEquals("http://localhost:8080/api", endpoint);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package de.jaberu.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the property sources, the HTTP source against a local server.
+ */
+public class PropertySourcesTest {
+
+    private static final String JSON = "{\"test\": {\"key\": \"http\", \"list\": [1, 2, 3]}, \"flag\": true, \"none\": null}";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/config", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                byte[] body = JSON.getBytes("UTF-8");
+                boolean found = exchange.getRequestURI().getPath().equals("/config/dev.json");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(found ? 200 : 404, found ? body.length : -1);
+                if (found) {
+                    exchange.getResponseBody().write(body);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        PropertySources.clear();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        System.clearProperty(Environment.SOURCES);
+        PropertySources.clear();
+    }
+
+    @Test
+    public void testDefaultSources() throws IOException {
+        System.setProperty("test.int", "5");
+        try {
+            Map<String, String> values = PropertySources.resolve(TypesTest.class, new EnvironmentContext(null, null),
+                    Collections.singletonList("only.system"));
+            Assert.assertEquals("5", values.get("test.int"));
+            Assert.assertEquals("base", values.get("test.key"));
+            Assert.assertFalse(values.containsKey("java.version"));
+        } finally {
+            System.clearProperty("test.int");
+        }
+    }
+
+    @Test
+    public void testHttp() throws IOException {
+        System.setProperty(Environment.SOURCES, "system, http://localhost:" + server.getAddress().getPort()
+                + "/config/{stage}.json, bundle");
+        Map<String, String> values = PropertySources.resolve(TypesTest.class, new EnvironmentContext("dev", null),
+                Collections.<String>emptyList());
+        Assert.assertEquals("http", values.get("test.key"));
+        Assert.assertEquals("1,2,3", values.get("test.list"));
+        Assert.assertEquals("true", values.get("flag"));
+        Assert.assertFalse(values.containsKey("none"));
+        Assert.assertEquals("1", values.get("test.int"));
+
+        // served from cache
+        PropertySources.resolve(TypesTest.class, new EnvironmentContext("dev", null), Collections.<String>emptyList());
+        Assert.assertEquals(1, requests.get());
+
+        // not found means no values
+        values = PropertySources.resolve(TypesTest.class, new EnvironmentContext("uat", null), Collections.<String>emptyList());
+        Assert.assertEquals("uat", values.get("test.key"));
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        System.setProperty(Environment.SOURCES, "http://localhost:" + server.getAddress().getPort() + "/config/{stage}.json");
+        PropertySources.prefetch(TypesTest.class, Collections.singletonList(new EnvironmentContext("dev", null)));
+        long timeout = System.currentTimeMillis() + 10000;
+        while (requests.get() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, requests.get());
+        Map<String, String> values = PropertySources.resolve(TypesTest.class, new EnvironmentContext("dev", null),
+                Collections.<String>emptyList());
+        Assert.assertEquals("http", values.get("test.key"));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testYamlFile() throws IOException {
+        File directory = folder.getRoot();
+        Files.write(new File(directory, "dev.yaml").toPath(), ("# comment\ntest:\n  key: yaml # value\n  list:\n"
+                + "    - a\n    - 'b'\nother: [x, y]\nquoted: \"a: b\"\n").getBytes("UTF-8"));
+        System.setProperty(Environment.SOURCES, "file:" + directory.getPath() + "/{stage}.yaml,bundle");
+        Map<String, String> values = PropertySources.resolve(TypesTest.class, new EnvironmentContext("dev", null),
+                Collections.<String>emptyList());
+        Assert.assertEquals("yaml", values.get("test.key"));
+        Assert.assertEquals("a,b", values.get("test.list"));
+        Assert.assertEquals("x,y", values.get("other"));
+        Assert.assertEquals("a: b", values.get("quoted"));
+        Assert.assertEquals("1", values.get("test.int"));
+    }
+
+    @Test
+    public void testYamlCollections() throws IOException {
+        Map<String, String> values = ConfigFormats.parse(("flow: {a: 1, 'b': [x, 'y, z'], c: {d: ~}}\n"
+                + "servers:\n"
+                + "  - name: a\n"
+                + "    tags:\n"
+                + "    - x\n"
+                + "  - {name: b}\n"
+                + "  - c\n"
+                + "after: 2\n").getBytes("UTF-8"), "yaml", "test.yaml");
+        Assert.assertEquals("1", values.get("flow.a"));
+        Assert.assertEquals("x,y, z", values.get("flow.b"));
+        Assert.assertFalse(values.containsKey("flow.c.d"));
+        Assert.assertEquals("a", values.get("servers[0].name"));
+        Assert.assertEquals("x", values.get("servers[0].tags"));
+        Assert.assertEquals("b", values.get("servers[1].name"));
+        Assert.assertEquals("c", values.get("servers"));
+        Assert.assertEquals("2", values.get("after"));
+        Assert.assertEquals(7, values.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testYamlBlockScalar() throws IOException {
+        ConfigFormats.parse("text: |\n  line\n".getBytes("UTF-8"), "yaml", "test.yaml");
+    }
+
+    @Test(expected = IOException.class)
+    public void testYamlMultiLineFlow() throws IOException {
+        ConfigFormats.parse("flow: {a: 1,\n  b: 2}\n".getBytes("UTF-8"), "yaml", "test.yaml");
+    }
+
+    @Test
+    public void testJsonListOfObjects() throws IOException {
+        Map<String, String> values = ConfigFormats.parse("{\"servers\": [{\"host\": \"a\"}, {\"host\": \"b\"}]}"
+                .getBytes("UTF-8"), "json", "test.json");
+        Assert.assertEquals("a", values.get("servers[0].host"));
+        Assert.assertEquals("b", values.get("servers[1].host"));
+    }
+
+    @Test
+    public void testFormat() {
+        Assert.assertEquals("json", ConfigFormats.getFormat("dev.JSON"));
+        Assert.assertEquals("properties", ConfigFormats.getFormat("json-dev.properties"));
+        Assert.assertEquals("yaml", ConfigFormats.getContentFormat("application/x-yaml; charset=UTF-8"));
+        Assert.assertEquals("json", ConfigFormats.getContentFormat("application/problem+json"));
+        Assert.assertNull(ConfigFormats.getContentFormat("text/plain"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownSource() {
+        System.setProperty(Environment.SOURCES, "system,unknown");
+        PropertySources.getSources();
+    }
+}
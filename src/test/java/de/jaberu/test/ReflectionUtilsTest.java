@@ -0,0 +1,70 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Tests the method lookup and the cached metadata of the test classes.
+ */
+public class ReflectionUtilsTest {
+
+    @Test
+    public void testFindMethodOfSuperclass() throws Exception {
+        Method method = ReflectionUtils.findMethod(Child.class, "secret", String.class);
+        Assert.assertNotNull(method);
+        Assert.assertEquals(Parent.class, method.getDeclaringClass());
+        Assert.assertNull(ReflectionUtils.findMethod(Child.class, "secret", Integer.class));
+        Assert.assertEquals(Child.class, ReflectionUtils.findMethod(Child.class, "own", (Class<?>[]) null).getDeclaringClass());
+    }
+
+    @Test
+    public void testFindMethodHandle() throws Throwable {
+        MethodHandle handle = ReflectionUtils.findMethodHandle(Child.class, "secret", String.class);
+        Assert.assertEquals("secret a", (String) handle.invokeExact((Parent) new Child(), "a"));
+        Assert.assertNull(ReflectionUtils.findMethodHandle(Child.class, "missing"));
+    }
+
+    @Test
+    public void testBundles() {
+        List<ReflectionUtils.Bundle> bundles = ReflectionUtils.getBundles(Child.class);
+        Assert.assertEquals(3, bundles.size());
+        Assert.assertEquals("child", bundles.get(0).getName());
+        Assert.assertEquals(Child.class, bundles.get(0).getDeclaringClass());
+        Assert.assertEquals("first", bundles.get(1).getName());
+        Assert.assertEquals("second", bundles.get(2).getName());
+        Assert.assertEquals(Parent.class, bundles.get(2).getDeclaringClass());
+        Assert.assertSame(bundles, ReflectionUtils.getBundles(Child.class));
+        Assert.assertTrue(ReflectionUtils.getBundles(Object.class).isEmpty());
+    }
+
+    @Test
+    public void testIgnored() throws Exception {
+        Assert.assertTrue(ReflectionUtils.getIgnored(Child.class).matches(new EnvironmentContext("prod", null)));
+        Assert.assertFalse(ReflectionUtils.getIgnored(Child.class).matches(new EnvironmentContext("dev", "prod")));
+        Assert.assertFalse(ReflectionUtils.getIgnored(Parent.class).matches(new EnvironmentContext("prod", null)));
+
+        Method own = Child.class.getDeclaredMethod("own");
+        Assert.assertTrue(ReflectionUtils.getIgnored(own).matches(new EnvironmentContext("dev", "hao")));
+        Assert.assertFalse(ReflectionUtils.getIgnored(own).matches(new EnvironmentContext("hao", null)));
+        Assert.assertSame(ReflectionUtils.getIgnored(own), ReflectionUtils.getIgnored(own));
+    }
+
+    @ResourceBundle({"first", "second"})
+    static class Parent {
+        private String secret(String value) {
+            return "secret " + value;
+        }
+    }
+
+    @ResourceBundle("child")
+    @Ignore("prod")
+    static class Child extends Parent {
+        @Ignore(publications = "hao")
+        public void own() {
+        }
+    }
+}
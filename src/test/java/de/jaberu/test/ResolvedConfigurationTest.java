@@ -0,0 +1,85 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the interpolation of references in property values.
+ */
+public class ResolvedConfigurationTest {
+
+    @Test
+    public void testReferences() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("host", "example.com");
+        values.put("base", "https://${host}");
+        values.put("url", "${base}/api?port=${port:${default.port}}&user=${user.name}");
+        values.put("default.port", "443");
+        values.put("unknown", "${missing} and ${unclosed");
+        values.put("empty.default", "[${missing:}]");
+        Map<String, String> system = new HashMap<String, String>();
+        system.put("user.name", "tester");
+        system.put("host", "overridden");
+        ResolvedConfiguration configuration = ResolvedConfiguration.resolve(values,
+                Collections.singletonList(system), 0);
+
+        String url = configuration.get("url");
+        Assert.assertEquals("https://example.com/api?port=443&user=tester", url);
+        Assert.assertSame(url, configuration.get("url"));
+        Assert.assertEquals("${missing} and ${unclosed", configuration.get("unknown"));
+        Assert.assertEquals("[]", configuration.get("empty.default"));
+        Assert.assertEquals("https://example.com", configuration.asMap().get("base"));
+    }
+
+    @Test
+    public void testEscape() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("host", "example.com");
+        values.put("template", "$${host} is ${host}, $${missing:x}");
+        values.put("default", "${missing:$${host}}");
+        ResolvedConfiguration configuration = ResolvedConfiguration.resolve(values, 0);
+        Assert.assertEquals("${host} is example.com, ${missing:x}", configuration.get("template"));
+        Assert.assertEquals("${host}", configuration.get("default"));
+    }
+
+    /**
+     * References are only resolved by the configured sources, without <code>system</code> the system properties
+     * are not seen.
+     */
+    @Test
+    public void testReferenceSources() throws Exception {
+        System.setProperty(Environment.SOURCES, "bundle");
+        System.setProperty("test.port", "9090");
+        try {
+            PropertySources.clear();
+            ResolvedConfiguration configuration = ResolvedConfiguration.load(TypesTest.class, new EnvironmentContext(null, null));
+            Assert.assertEquals("http://localhost:8080/api", configuration.get("test.endpoint"));
+            System.setProperty(Environment.SOURCES, "system,bundle");
+            configuration = ResolvedConfiguration.load(TypesTest.class, new EnvironmentContext(null, null));
+            Assert.assertEquals("http://localhost:9090/api", configuration.get("test.endpoint"));
+        } finally {
+            System.clearProperty(Environment.SOURCES);
+            System.clearProperty("test.port");
+            PropertySources.clear();
+        }
+    }
+
+    @Test
+    public void testCycle() {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("a", "${b}");
+        values.put("b", "x${c}");
+        values.put("c", "${a}");
+        ResolvedConfiguration configuration = ResolvedConfiguration.resolve(values, 0);
+        try {
+            configuration.get("a");
+            Assert.fail("cycle not detected");
+        } catch (IllegalArgumentException iae) {
+            Assert.assertEquals("cyclic reference of properties a -> b -> c -> a", iae.getMessage());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.jaberu.test;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Here we test that a passed test is skipped if it runs again with the same inputs.
+ */
+public class ResultCacheTest {
+
+    static File directory;
+
+    @BeforeClass
+    public static void setCache() throws Exception {
+        directory = File.createTempFile("results", "");
+        Assert.assertTrue(directory.delete());
+        System.setProperty(Environment.RESULT_CACHE, directory.getPath());
+    }
+
+    @AfterClass
+    public static void unsetCache() {
+        System.getProperties().remove(Environment.RESULT_CACHE);
+        new File(directory, "results.properties").delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testSkipPassed() {
+        CachedTest.runs.set(0);
+        Assert.assertTrue(new JUnitCore().run(CachedTest.class).wasSuccessful());
+        Assert.assertEquals(1, CachedTest.runs.get());
+        Assert.assertTrue(new File(directory, "results.properties").isFile());
+
+        final List<Failure> skipped = new ArrayList<Failure>();
+        JUnitCore core = new JUnitCore();
+        core.addListener(new RunListener() {
+            @Override
+            public void testAssumptionFailure(Failure failure) {
+                skipped.add(failure);
+            }
+        });
+        Result result = core.run(CachedTest.class);
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertEquals(1, CachedTest.runs.get());
+        Assert.assertEquals(1, skipped.size());
+        Assert.assertTrue(skipped.get(0).getMessage().startsWith("cached"));
+    }
+
+    /**
+     * If the timings cannot be written, the passed tests are still stored and the error is reported on its own.
+     */
+    @Test
+    public void testStoreFailure() throws Exception {
+        File timings = File.createTempFile("timings", "");
+        System.setProperty(Environment.TIMINGS, new File(timings, "sub").getPath());
+        try {
+            Result result = new JUnitCore().run(StoredTest.class);
+            Assert.assertEquals(1, result.getRunCount());
+            Assert.assertEquals(1, result.getFailureCount());
+            Assert.assertTrue(result.getFailures().get(0).getException() instanceof IOException);
+        } finally {
+            System.getProperties().remove(Environment.TIMINGS);
+            timings.delete();
+        }
+        Result result = new JUnitCore().run(StoredTest.class);
+        Assert.assertTrue(result.wasSuccessful());
+        Assert.assertEquals(1, StoredTest.runs.get());
+    }
+
+    /**
+     * The fingerprints stored meanwhile by another JVM sharing the directory are kept.
+     */
+    @Test
+    public void testMergeStored() throws Exception {
+        File shared = File.createTempFile("shared", "");
+        Assert.assertTrue(shared.delete());
+        File file = new File(shared, "results.properties");
+        try {
+            ResultCache cache = ResultCache.get(shared, 10);
+            cache.recordPassed("own");
+            Assert.assertTrue(shared.mkdir());
+            Properties other = new Properties();
+            other.setProperty("other", "1");
+            OutputStream out = new FileOutputStream(file);
+            try {
+                other.store(out, null);
+            } finally {
+                out.close();
+            }
+            cache.store();
+
+            Properties stored = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                stored.load(in);
+            } finally {
+                in.close();
+            }
+            Assert.assertEquals(new HashSet<String>(Arrays.asList("own", "other")), stored.stringPropertyNames());
+            // no temporary file left
+            Assert.assertEquals(Collections.singletonList("results.properties"), Arrays.asList(shared.list()));
+        } finally {
+            file.delete();
+            shared.delete();
+        }
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    public static class CachedTest {
+
+        static final AtomicInteger runs = new AtomicInteger();
+
+        @PropertyValue("test.key")
+        private String value;
+
+        @Test
+        public void testValue() {
+            runs.incrementAndGet();
+            Assert.assertEquals("base", value);
+        }
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    public static class StoredTest {
+
+        static final AtomicInteger runs = new AtomicInteger();
+
+        @Test
+        public void testStored() {
+            runs.incrementAndGet();
+        }
+    }
+}
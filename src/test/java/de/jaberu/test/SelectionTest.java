@@ -0,0 +1,169 @@
+package de.jaberu.test;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Tests that ignored and not selected stages and publications are not even created.
+ */
+public class SelectionTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Environment.STAGE);
+        System.clearProperty(Environment.PUBLICATION);
+        System.clearProperty(Environment.SELECT);
+    }
+
+    @Test
+    public void testIgnore() throws Exception {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        MatrixTest.runs.clear();
+        Request request = Request.aClass(MatrixTest.class);
+
+        // first is ignored for publication b, second on uat
+        Assert.assertEquals(2 + 2, request.getRunner().getDescription().getChildren().size());
+        Result result = new JUnitCore().run(request);
+        Assert.assertEquals(4, result.getRunCount());
+        Assert.assertEquals(0, result.getIgnoreCount());
+        Assert.assertTrue(MatrixTest.runs.contains("first dev/a"));
+        Assert.assertFalse(MatrixTest.runs.contains("first dev/b"));
+        Assert.assertFalse(MatrixTest.runs.contains("second uat/a"));
+    }
+
+    @Test
+    public void testClassIgnore() throws Exception {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        Result result = new JUnitCore().run(IgnoredTest.class);
+        Assert.assertEquals(1, result.getRunCount());
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        System.setProperty(Environment.STAGE, "dev,uat");
+        System.setProperty(Environment.PUBLICATION, "a,b");
+        System.setProperty(Environment.SELECT, "stage = dev & !(publication in (b, c)) | method~sec* & publication='b'");
+        MatrixTest.runs.clear();
+        Result result = new JUnitCore().run(MatrixTest.class);
+        Assert.assertEquals(3, result.getRunCount());
+        Assert.assertEquals(new ConcurrentSkipListSet<String>(Arrays.asList("first dev/a", "second dev/a", "second dev/b")),
+                MatrixTest.runs);
+    }
+
+    /**
+     * Without stage system property the stage is only known when the test class runs, here set by the class itself.
+     */
+    @Test
+    public void testSelectLateStage() throws Exception {
+        System.setProperty(Environment.SELECT, "stage=dev & method!=second");
+        LateStageTest.runs.clear();
+        Request request = Request.aClass(LateStageTest.class);
+        Assert.assertEquals(1, request.getRunner().getDescription().getChildren().size());
+        Result result = new JUnitCore().run(request);
+        Assert.assertEquals(1, result.getRunCount());
+        Assert.assertEquals(Collections.singleton("first dev"), LateStageTest.runs);
+
+        System.setProperty(Environment.SELECT, "stage=uat");
+        LateStageTest.runs.clear();
+        result = new JUnitCore().run(LateStageTest.class);
+        Assert.assertEquals(0, result.getRunCount());
+        Assert.assertEquals(2, result.getIgnoreCount());
+    }
+
+    @Test
+    public void testMalformedSelect() throws Exception {
+        System.setProperty(Environment.SELECT, "stage = dev &");
+        Result result = new JUnitCore().run(MatrixTest.class);
+        Assert.assertEquals(1, result.getFailureCount());
+    }
+
+    @Test
+    public void testFilter() {
+        MatrixFilter filter = MatrixFilter.parse("class~*.SelectionTest & (stage=dev | stage != prod) & publication=''");
+        Assert.assertTrue(filter.matches(SelectionTest.class, "test", new EnvironmentContext("uat", null)));
+        Assert.assertFalse(filter.matches(SelectionTest.class, "test", new EnvironmentContext("prod", null)));
+        Assert.assertFalse(filter.matches(SelectionTest.class, "test", new EnvironmentContext("dev", "a")));
+        Assert.assertFalse(filter.matches(MatrixTest.class, "test", new EnvironmentContext("dev", null)));
+
+        Assert.assertTrue(filter.mayMatch(SelectionTest.class, "test"));
+        Assert.assertFalse(filter.mayMatch(MatrixTest.class, "test"));
+        Assert.assertTrue(MatrixFilter.parse("!(stage=dev) | method=x").mayMatch(SelectionTest.class, "test"));
+        Assert.assertFalse(MatrixFilter.parse("!(stage=dev | method=test)").mayMatch(SelectionTest.class, "test"));
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    public static class MatrixTest {
+
+        static final Set<String> runs = new ConcurrentSkipListSet<String>();
+
+        @PropertyValue(Environment.STAGE)
+        private String stage;
+
+        @PropertyValue(Environment.PUBLICATION)
+        private String publication;
+
+        @Test
+        @Ignore(value = "prod", publications = "b")
+        public void first() {
+            runs.add("first " + stage + "/" + publication);
+        }
+
+        @Test
+        @Ignore("uat")
+        public void second() {
+            runs.add("second " + stage + "/" + publication);
+        }
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    public static class LateStageTest {
+
+        static final Set<String> runs = new ConcurrentSkipListSet<String>();
+
+        @PropertyValue(Environment.STAGE)
+        private String stage;
+
+        @BeforeClass
+        public static void setStage() {
+            System.setProperty(Environment.STAGE, "dev");
+        }
+
+        @AfterClass
+        public static void clearStage() {
+            System.clearProperty(Environment.STAGE);
+        }
+
+        @Test
+        public void first() {
+            runs.add("first " + stage);
+        }
+
+        @Test
+        public void second() {
+            runs.add("second " + stage);
+        }
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @Ignore("uat")
+    public static class IgnoredTest {
+
+        @Test
+        public void test() {
+            Assert.assertEquals(Collections.emptyList(), Collections.emptyList());
+        }
+    }
+}
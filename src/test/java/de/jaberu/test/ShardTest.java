@@ -0,0 +1,121 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.FrameworkMethod;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Tests the split of test methods over several JVMs.
+ */
+public class ShardTest {
+
+    private static final String[] PUBLICATIONS = {"a", "b", "c", "d", "e", "f", "g"};
+
+    /**
+     * Each test method must be run by exactly one shard.
+     */
+    @Test
+    public void testByCount() throws Exception {
+        List<FrameworkMethod> children = createChildren();
+        Set<FrameworkMethod> selected = new HashSet<FrameworkMethod>();
+        for (int i = 0; i < 3; i++) {
+            List<FrameworkMethod> shard = new Shard(i, 3).select(ShardTest.class, children, TimingHistory.load(null, ShardTest.class));
+            Assert.assertTrue(shard.size() >= 2 && shard.size() <= 3);
+            for (FrameworkMethod method : shard) {
+                Assert.assertTrue(selected.add(method));
+            }
+        }
+        Assert.assertEquals(children.size(), selected.size());
+    }
+
+    /**
+     * The publication <code>a</code> takes as long as all others together, so it should be alone on its shard.
+     */
+    @Test
+    public void testByDuration() throws Exception {
+        File directory = createTimings();
+        List<FrameworkMethod> children = createChildren();
+        TimingHistory history = TimingHistory.load(directory, ShardTest.class);
+        int total = 0;
+        for (int i = 0; i < 2; i++) {
+            List<FrameworkMethod> shard = new Shard(i, 2).select(ShardTest.class, children, history);
+            if (shard.contains(children.get(0))) {
+                Assert.assertEquals(1, shard.size());
+            }
+            total += shard.size();
+        }
+        Assert.assertEquals(children.size(), total);
+    }
+
+    /**
+     * Sharded runs must not write the history, otherwise the shards would split by different durations next time.
+     */
+    @Test
+    public void testHistoryReadOnly() throws Exception {
+        File directory = createTimings();
+        File file = TimingHistory.getFile(directory, ShardedTest.class);
+        System.setProperty(Environment.SHARD_INDEX, "0");
+        System.setProperty(Environment.SHARD_COUNT, "2");
+        System.setProperty(Environment.TIMINGS, directory.getPath());
+        try {
+            Assert.assertTrue(new JUnitCore().run(ShardedTest.class).wasSuccessful());
+        } finally {
+            System.getProperties().remove(Environment.SHARD_INDEX);
+            System.getProperties().remove(Environment.SHARD_COUNT);
+            System.getProperties().remove(Environment.TIMINGS);
+        }
+        Assert.assertFalse(file.exists());
+    }
+
+    private List<FrameworkMethod> createChildren() throws Exception {
+        FrameworkMethod method = new FrameworkMethod(ShardTest.class.getMethod("testByCount"));
+        List<FrameworkMethod> children = new ArrayList<FrameworkMethod>();
+        for (String publication : PUBLICATIONS) {
+            children.add(new EnvironmentFrameworkMethod(method, "dev", publication));
+        }
+        return children;
+    }
+
+    private File createTimings() throws Exception {
+        File directory = File.createTempFile("timings", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+        directory.deleteOnExit();
+        Properties timings = new Properties();
+        for (String publication : PUBLICATIONS) {
+            timings.setProperty("testByCount|dev|" + publication, "a".equals(publication) ? "600" : "100");
+        }
+        File file = TimingHistory.getFile(directory, ShardTest.class);
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            timings.store(out, null);
+        } finally {
+            out.close();
+        }
+        return directory;
+    }
+
+    @RunWith(EnvironmentTestRunner.class)
+    @ResourceBundle("test")
+    public static class ShardedTest {
+
+        @Test
+        public void testFirst() {
+        }
+
+        @Test
+        public void testSecond() {
+        }
+    }
+}
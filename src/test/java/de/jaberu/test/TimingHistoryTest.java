@@ -0,0 +1,48 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests recording the test durations and ordering the test methods by them.
+ */
+public class TimingHistoryTest {
+
+    @Test
+    public void testLongestFirst() throws Exception {
+        File directory = File.createTempFile("timings", "");
+        Assert.assertTrue(directory.delete());
+        directory.deleteOnExit();
+        TimingHistory.getFile(directory, TimingHistoryTest.class).deleteOnExit();
+
+        FrameworkMethod method = new FrameworkMethod(TimingHistoryTest.class.getMethod("testLongestFirst"));
+        FrameworkMethod fast = new EnvironmentFrameworkMethod(method, "dev", "fast");
+        FrameworkMethod slow = new EnvironmentFrameworkMethod(method, "dev", "slow");
+        FrameworkMethod medium = new EnvironmentFrameworkMethod(method, "dev", "medium");
+        FrameworkMethod unknown = new EnvironmentFrameworkMethod(method, "dev", "unknown");
+
+        TimingHistory history = TimingHistory.load(directory, TimingHistoryTest.class);
+        Assert.assertTrue(history.isEmpty());
+        history.record(fast, 10);
+        history.record(medium, 100);
+        history.record(slow, 400);
+        history.store(directory, TimingHistoryTest.class);
+
+        history = TimingHistory.load(directory, TimingHistoryTest.class);
+        Assert.assertEquals(Long.valueOf(400), history.getDuration(slow));
+        Assert.assertNull(history.getDuration(unknown));
+        // without history the average is assumed, so the new method is placed between medium and slow
+        List<FrameworkMethod> ordered = history.longestFirst(Arrays.asList(fast, unknown, medium, slow));
+        Assert.assertEquals(Arrays.asList(slow, unknown, medium, fast), ordered);
+
+        // a new duration is merged with the previous one
+        history.record(slow, 200);
+        history.store(directory, TimingHistoryTest.class);
+        Assert.assertEquals(Long.valueOf(300), TimingHistory.load(directory, TimingHistoryTest.class).getDuration(slow));
+    }
+}
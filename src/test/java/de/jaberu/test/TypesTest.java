@@ -8,6 +8,13 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Tests the basic java types.
  */
@@ -45,6 +52,54 @@ public class TypesTest {
     @PropertyValue("test.long")
     private long testLong;
 
+    /**
+     * test.enum=seconds
+     */
+    @PropertyValue("test.enum")
+    private TimeUnit testEnum;
+
+    /**
+     * test.duration=PT10S
+     */
+    @PropertyValue("test.duration")
+    private Duration testDuration;
+
+    /**
+     * test.uri=http://localhost:8080/api
+     */
+    @PropertyValue("test.uri")
+    private URI testUri;
+
+    /**
+     * test.decimal=12.50
+     */
+    @PropertyValue("test.decimal")
+    private BigDecimal testDecimal;
+
+    /**
+     * test.array=a, b,c
+     */
+    @PropertyValue("test.array")
+    private String[] testArray;
+
+    /**
+     * test.list=1,2,3
+     */
+    @PropertyValue("test.list")
+    private List<Integer> testList;
+
+    /**
+     * test.host=localhost, a supertype of String gets the value itself
+     */
+    @PropertyValue("test.host")
+    private CharSequence testCharSequence;
+
+    /**
+     * not defined, so the default must be kept
+     */
+    @PropertyValue("test.missing")
+    private int testMissing = 7;
+
     @Test
     public void testInt() {
         Assert.assertEquals(1, testInt);
@@ -69,4 +124,44 @@ public class TypesTest {
     public void testLong() {
         Assert.assertEquals(1234567890l, testLong);
     }
+
+    @Test
+    public void testEnum() {
+        Assert.assertEquals(TimeUnit.SECONDS, testEnum);
+    }
+
+    @Test
+    public void testDuration() {
+        Assert.assertEquals(Duration.ofSeconds(10), testDuration);
+    }
+
+    @Test
+    public void testUri() {
+        Assert.assertEquals(URI.create("http://localhost:8080/api"), testUri);
+    }
+
+    @Test
+    public void testDecimal() {
+        Assert.assertEquals(new BigDecimal("12.50"), testDecimal);
+    }
+
+    @Test
+    public void testArray() {
+        Assert.assertArrayEquals(new String[]{"a", "b", "c"}, testArray);
+    }
+
+    @Test
+    public void testList() {
+        Assert.assertEquals(Arrays.asList(1, 2, 3), testList);
+    }
+
+    @Test
+    public void testCharSequence() {
+        Assert.assertEquals("localhost", testCharSequence);
+    }
+
+    @Test
+    public void testMissing() {
+        Assert.assertEquals(7, testMissing);
+    }
 }
@@ -0,0 +1,56 @@
+package de.jaberu.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Here we test the virtual thread mode, what falls back to platform threads on older JVMs.
+ * The stage limit allows two methods at the same time only, what is checked by counting
+ * the running methods.
+ */
+@RunWith(EnvironmentTestRunner.class)
+@ResourceBundle("test")
+@Parallel(value = 4, virtual = true, maxPerStage = 2)
+public class VirtualThreadTest {
+
+    private static final CountDownLatch twoStarted = new CountDownLatch(2);
+
+    private static final AtomicInteger running = new AtomicInteger();
+
+    @Test
+    public void testFirst() throws Exception {
+        runLimited();
+    }
+
+    @Test
+    public void testSecond() throws Exception {
+        runLimited();
+    }
+
+    @Test
+    public void testThird() throws Exception {
+        runLimited();
+    }
+
+    @Test
+    public void testFourth() throws Exception {
+        runLimited();
+    }
+
+    private void runLimited() throws Exception {
+        try {
+            Assert.assertTrue("stage limit exceeded", running.incrementAndGet() <= 2);
+            // make sure the methods are really running in parallel
+            twoStarted.countDown();
+            Assert.assertTrue(twoStarted.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+}